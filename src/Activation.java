@@ -0,0 +1,112 @@
+/**
+ * The ways a Network can calculate the sigmoid activation function of its hidden neurons.
+ * EXACT uses Math.exp, as <code>Network.getSigmoid</code> does.
+ * The other two avoid Math.exp and trade a small, bounded error for speed:
+ * <ul>
+ * <li>TABLE interpolates linearly in a table of the sigmoid from -16 to 16 in steps of 1/64.
+ *     Its largest absolute error is below 3.0e-6.</li>
+ * <li>RATIONAL uses the (7,6) Pade approximant of tanh, since sigmoid(x) = (1 + tanh(x / 2)) / 2.
+ *     Its largest absolute error is below 5.0e-5.</li>
+ * </ul>
+ * The errors can be checked by running the main method.
+ * Training finds the derivative at a hidden neuron from its output y as y * (1 - y), whichever way y was found,
+ * so TABLE and RATIONAL train with the derivative of the exact sigmoid taken at the approximate output,
+ * not with the derivative of the approximation.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+public enum Activation
+{
+    EXACT
+    {
+	public double getSigmoid(double _d)
+	{
+	    return Network.getSigmoid(_d);
+	}
+    },
+
+    TABLE
+    {
+	public double getSigmoid(double _d)
+	{
+	    if (_d <= -TABLE_RANGE)
+		return Table.values[0];
+	    if (_d >= TABLE_RANGE)
+		return Table.values[Table.values.length - 1];
+
+	    double p = (_d + TABLE_RANGE) * TABLE_STEPS;
+	    int i = (int)p;
+	    double f = p - i;
+
+	    return Table.values[i] + (f * (Table.values[i + 1] - Table.values[i]));
+	}
+    },
+
+    RATIONAL
+    {
+	public double getSigmoid(double _d)
+	{
+	    double y = 0.5 * _d;
+
+	    // Beyond here the approximant leaves [-1, 1]; the sigmoid is within 5.0e-5 of 0 or 1
+	    if (y >= 4.97)
+		return 1.0;
+	    if (y <= -4.97)
+		return 0.0;
+
+	    double y2 = y * y;
+	    double t = y * (135135.0 + y2 * (17325.0 + y2 * (378.0 + y2)))
+		/ (135135.0 + y2 * (62370.0 + y2 * (3150.0 + y2 * 28.0)));
+
+	    return 0.5 + (0.5 * t);
+	}
+    };
+
+    // The extent and resolution of the table used by TABLE
+    private static final double TABLE_RANGE = 16.0;
+    private static final int TABLE_STEPS = 64;
+
+    /**
+     * Holds the table for TABLE, so that it is only built if it is used.
+     */
+    private static class Table
+    {
+	static final double[] values = new double[(int)(2 * TABLE_RANGE * TABLE_STEPS) + 1];
+
+	static
+	{
+	    for (int i = 0; i < values.length; i++)
+		{
+		    values[i] = Network.getSigmoid(-TABLE_RANGE + ((double)i / TABLE_STEPS));
+		}
+	}
+    }
+
+    /**
+     * Returns the sigmoid of a number.
+     * @param _d The input
+     * @return The sigmoid of _d
+     */
+    public abstract double getSigmoid(double _d);
+
+    /**
+     * Prints the largest absolute error of each approximation, found on a fine grid.
+     */
+    public static void main(String[] args)
+    {
+	Activation[] modes = Activation.values();
+	double x, e;
+
+	for (int m = 0; m < modes.length; m++)
+	    {
+		e = 0.0;
+		for (int i = -4000000; i <= 4000000; i++)
+		    {
+			x = i / 100000.0;
+			e = Math.max(e, Math.abs(modes[m].getSigmoid(x) - Network.getSigmoid(x)));
+		    }
+		System.out.println(modes[m] + "\t" + e);
+	    }
+    }
+}
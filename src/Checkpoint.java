@@ -0,0 +1,164 @@
+/**
+ * Where and how often a network saves its training so that it can be resumed.
+ * The training thread writes the state into a buffer, which is compact binary
+ * (see <code>TrainingRecord</code>), and a background thread writes the buffer to disk,
+ * so training does not wait for the disk.
+ * If a checkpoint is still waiting to be written when the next is made, only the newer one is written.
+ * Each file is written beside the checkpoint and then moved over it,
+ * so the checkpoint on disk is always a whole one.
+ * A Checkpoint belongs to one network and is not saved with it.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class Checkpoint
+{
+    private final File file;
+    private final int every;
+    private final AtomicReference<byte[]> pending = new AtomicReference<byte[]>(); // The newest checkpoint not yet written
+    private Future<Void> lastWrite; // null until the first checkpoint
+
+    /**
+     * Creates a new Checkpoint.
+     * @param _f The file to save to
+     * @param _every The number of epochs between checkpoints
+     */
+    public Checkpoint(File _f, int _every)
+    {
+	if (_every < 1)
+	    throw new IllegalArgumentException("There must be at least one epoch between checkpoints");
+
+	file = _f;
+	every = _every;
+    }
+
+    /**
+     * @return The file the checkpoints are saved to
+     */
+    public File getFile()
+    {
+	return file;
+    }
+
+    /**
+     * @return The number of epochs between checkpoints
+     */
+    public int getEvery()
+    {
+	return every;
+    }
+
+    /**
+     * @param _epochs The number of epochs that have been run
+     * @param _e The number of epochs to train for
+     * @return Whether a checkpoint is due
+     */
+    public boolean isDue(int _epochs, int _e)
+    {
+	return (_epochs % every == 0) && (_epochs < _e);
+    }
+
+    // The thread that writes the checkpoints of every network
+    private static ExecutorService writer;
+
+    /**
+     * Returns the thread shared by all checkpoints, starting it if need be.
+     * It is a daemon, so it does not keep the program running; call <code>flush</code> to be sure of the last write.
+     * @return The writer
+     */
+    private static synchronized ExecutorService getWriter()
+    {
+	if (writer == null)
+	    writer = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+		    public Thread newThread(Runnable _r)
+		    {
+			Thread t = new Thread(_r, "Checkpoint writer");
+			t.setDaemon(true);
+			return t;
+		    }
+		});
+
+	return writer;
+    }
+
+    /**
+     * Hands a checkpoint to the writer and returns at once.
+     * @param _data The checkpoint
+     */
+    public synchronized void save(byte[] _data)
+    {
+	// A write is only queued when none is waiting; a waiting one picks up the newest data
+	if (pending.getAndSet(_data) == null)
+	    lastWrite = getWriter().submit(new Callable<Void>()
+		{
+		    public Void call() throws IOException
+		    {
+			write(pending.getAndSet(null));
+			return null;
+		    }
+		});
+    }
+
+    /**
+     * Writes a checkpoint beside the file and moves it into place.
+     * @param _data The checkpoint, or null if it has already been written
+     */
+    private void write(byte[] _data) throws IOException
+    {
+	if (_data == null)
+	    return;
+
+	File temp = new File(file.getPath() + ".tmp");
+	try (FileOutputStream out = new FileOutputStream(temp))
+	    {
+		out.write(_data);
+		out.getFD().sync();
+	    }
+	Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Waits for the checkpoints handed to the writer to reach the disk.
+     * @throws IOException If the last of them could not be written
+     */
+    public void flush() throws IOException
+    {
+	Future<Void> f;
+
+	synchronized (this)
+	    {
+		f = lastWrite;
+	    }
+	if (f == null)
+	    return;
+
+	try
+	    {
+		f.get();
+	    }
+	catch (InterruptedException e)
+	    {
+		Thread.currentThread().interrupt();
+		throw new InterruptedIOException();
+	    }
+	catch (ExecutionException e)
+	    {
+		throw (e.getCause() instanceof IOException) ? (IOException)e.getCause() : new IOException(e.getCause());
+	    }
+    }
+
+    /**
+     * @return The saved checkpoint
+     * @throws IOException If there is none or it cannot be read
+     */
+    public DataInputStream open() throws IOException
+    {
+	return new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * A trained network turned into code by ModelCompiler.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+public interface CompiledModel
+{
+    /**
+     * Finds the outputs of the network for some inputs.
+     * The hidden values are kept in a scratch array of the calling thread's own,
+     * so one model can be shared between threads.
+     * @param _in The inputs
+     * @param _out For the outputs
+     */
+    public void predict(double[] _in, double[] _out);
+
+    /**
+     * Finds the outputs of the network for some inputs without allocating or looking up a scratch array.
+     * @param _in The inputs
+     * @param _out For the outputs
+     * @param _scratch For the hidden values, at least getScratchSize long, used by one call at a time
+     */
+    public void predict(double[] _in, double[] _out, double[] _scratch);
+
+    /**
+     * @return The length of the scratch array that predict needs
+     */
+    public int getScratchSize();
+}
@@ -5,6 +5,8 @@
  * @author Rob Impey
  */
 
+import java.util.*;
+
 public class DataSet
 {
     // instance fields
@@ -68,6 +70,25 @@ public class DataSet
 	return t;
     }
 
+    /**
+     * Returns an array of Tuples picked with a given source of random numbers,
+     * so that the same sample can be drawn again from the same seed.
+     * @param _n The number of Tuples requested.
+     * @param _r The source of random numbers.
+     * @return An array of _n Tuples.
+     */
+    public Tuple[] getSample(int _n, Random _r)
+    {
+	Tuple[] t = new Tuple[_n];
+
+	for (int i = 0; i < _n; i++)
+	    {
+		t[i] = data[_r.nextInt(data.length)];
+	    }
+
+	return t;
+    }
+
     /**
      * Represents the DataSet as a String.
      * @return A String to represent the DataSet
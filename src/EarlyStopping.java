@@ -0,0 +1,188 @@
+/**
+ * When to stop training a network before all its epochs have run.
+ * Training stops once the test SSE has gone a number of epochs, the patience,
+ * without falling by more than a minimum improvement below the best seen so far.
+ * The network can then be given back the weights it had when its test SSE was best.
+ * An EarlyStopping holds only the settings, so one can be shared by many networks;
+ * each call to train keeps its own Run.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.io.*;
+
+public class EarlyStopping implements Serializable
+{
+    private final int patience;
+    private final double minImprovement;
+    private final boolean restoreBest;
+
+    /**
+     * Creates a new EarlyStopping.
+     * @param _p The number of epochs without improvement after which training stops
+     * @param _m How far the SSE must fall below the best so far to count as an improvement
+     * @param _r Whether to give the network back its best weights when training stops
+     */
+    public EarlyStopping(int _p, double _m, boolean _r)
+    {
+	if (_p < 1)
+	    throw new IllegalArgumentException("The patience must be at least one epoch");
+
+	patience = _p;
+	minImprovement = _m;
+	restoreBest = _r;
+    }
+
+    /**
+     * @return The number of epochs without improvement after which training stops
+     */
+    public int getPatience()
+    {
+	return patience;
+    }
+
+    /**
+     * @return How far the SSE must fall below the best so far to count as an improvement
+     */
+    public double getMinImprovement()
+    {
+	return minImprovement;
+    }
+
+    /**
+     * @return Whether the network is given back its best weights when training stops
+     */
+    public boolean getRestoreBest()
+    {
+	return restoreBest;
+    }
+
+    /**
+     * @return The settings in the short form used in the names of saved files
+     */
+    public String toString()
+    {
+	return "P" + patience + "M" + minImprovement + (restoreBest ? "R" : "");
+    }
+
+    /**
+     * Starts following one run of training.
+     * @param _n The network being trained
+     * @return The Run
+     */
+    public Run start(NeuralNetwork _n)
+    {
+	return new Run(_n);
+    }
+
+    /**
+     * Follows the test SSEs of one run of training.
+     * The SSEs need not be found every epoch; the patience is counted in epochs since the best SSE was found.
+     */
+    public class Run
+    {
+	private final NeuralNetwork network;
+	private final double[] bestWeights; // null unless the best weights are to be restored
+	private double best = Double.POSITIVE_INFINITY, last;
+	private int bestEpoch, stopEpoch = -1;
+
+	private Run(NeuralNetwork _n)
+	{
+	    network = _n;
+	    bestWeights = restoreBest ? new double[_n.getNumWeights()] : null;
+	}
+
+	/**
+	 * Looks at the test SSE found at the end of an epoch.
+	 * @param _epoch The epoch
+	 * @param _sSE The test SSE
+	 * @return Whether training should stop
+	 */
+	public boolean stop(int _epoch, double _sSE)
+	{
+	    last = _sSE;
+	    if (_sSE < best - minImprovement)
+		{
+		    best = _sSE;
+		    bestEpoch = _epoch;
+		    if (bestWeights != null)
+			{
+			    for (int i = 0; i < bestWeights.length; i++)
+				{
+				    bestWeights[i] = network.getWeight(i);
+				}
+			}
+		    return false;
+		}
+
+	    if (_epoch - bestEpoch < patience)
+		return false;
+
+	    if (bestWeights != null)
+		{
+		    for (int i = 0; i < bestWeights.length; i++)
+			{
+			    network.setWeight(i, bestWeights[i]);
+			}
+		    last = best;
+		}
+
+	    stopEpoch = _epoch + 1;
+	    return true;
+	}
+
+	/**
+	 * @return Whether training was stopped early
+	 */
+	public boolean stopped()
+	{
+	    return stopEpoch >= 0;
+	}
+
+	/**
+	 * @return The number of epochs that were run, if training was stopped early
+	 */
+	public int getStopEpoch()
+	{
+	    return stopEpoch;
+	}
+
+	/**
+	 * @return The test SSE of the weights that the network was left with, if training was stopped early
+	 */
+	public double getFinalSSE()
+	{
+	    return last;
+	}
+
+	/**
+	 * Writes how far the run has got, for a Checkpoint.
+	 * @param _out Where to write it
+	 */
+	public void writeState(DataOutput _out) throws IOException
+	{
+	    _out.writeDouble(best);
+	    _out.writeDouble(last);
+	    _out.writeInt(bestEpoch);
+	    for (int i = 0; (bestWeights != null) && (i < bestWeights.length); i++)
+		{
+		    _out.writeDouble(bestWeights[i]);
+		}
+	}
+
+	/**
+	 * Reads back the state written by writeState, for a run with the same settings.
+	 * @param _in Where to read it from
+	 */
+	public void readState(DataInput _in) throws IOException
+	{
+	    best = _in.readDouble();
+	    last = _in.readDouble();
+	    bestEpoch = _in.readInt();
+	    for (int i = 0; (bestWeights != null) && (i < bestWeights.length); i++)
+		{
+		    bestWeights[i] = _in.readDouble();
+		}
+	}
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * When a network is tested during training.
+ * Testing with the whole test set every epoch can cost as much as the training itself,
+ * so the full test can instead be run every k epochs, or at epochs that grow geometrically
+ * (1, 2, 4, 8, ... for a ratio of 2).
+ * The first and last epochs are always tested in full.
+ * Between full tests, the network can be tested every epoch on a fixed subsample,
+ * the first few Tuples of the test set, which is cheaper but noisier.
+ * The subsample results are kept apart from the full ones, and only the full ones
+ * make the test curve and go to EarlyStopping.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.io.*;
+
+public class EvaluationSchedule implements Serializable
+{
+    private final int interval; // Test in full every this many epochs, 0 when the ratio is used
+    private final double ratio; // The ratio between the epochs tested in full
+    private final int subsample; // The number of Tuples tested between full tests, 0 for none
+
+    private EvaluationSchedule(int _k, double _r, int _s)
+    {
+	interval = _k;
+	ratio = _r;
+	subsample = _s;
+    }
+
+    /**
+     * @param _k The number of epochs between full tests
+     * @return A schedule that tests in full every _k epochs
+     */
+    public static EvaluationSchedule every(int _k)
+    {
+	if (_k < 1)
+	    throw new IllegalArgumentException("The interval must be at least one epoch");
+
+	return new EvaluationSchedule(_k, 0.0, 0);
+    }
+
+    /**
+     * @param _r The ratio between the numbers of epochs run at successive full tests
+     * @return A schedule that tests in full at geometrically spaced epochs
+     */
+    public static EvaluationSchedule geometric(double _r)
+    {
+	if (_r <= 1.0)
+	    throw new IllegalArgumentException("The ratio must be greater than one");
+
+	return new EvaluationSchedule(0, _r, 0);
+    }
+
+    /**
+     * @param _s The number of Tuples from the start of the test set to test on between full tests
+     * @return A copy of this schedule that tests on a subsample between full tests
+     */
+    public EvaluationSchedule withSubsample(int _s)
+    {
+	return new EvaluationSchedule(interval, ratio, _s);
+    }
+
+    /**
+     * @return The number of Tuples tested between full tests, 0 for none
+     */
+    public int getSubsample()
+    {
+	return subsample;
+    }
+
+    /**
+     * Says whether the network should be tested in full at the end of an epoch.
+     * @param _epoch The epoch, from 0
+     * @param _epochs The number of epochs being run
+     * @return Whether to test with the whole test set
+     */
+    public boolean isFull(int _epoch, int _epochs)
+    {
+	if ((_epoch == 0) || (_epoch == _epochs - 1))
+	    return true;
+
+	if (interval > 0)
+	    return (_epoch + 1) % interval == 0;
+
+	// Step through the numbers of epochs run at the full tests
+	int n = 1;
+	while (n < _epoch + 1)
+	    {
+		n = Math.max(n + 1, (int)Math.ceil(n * ratio));
+	    }
+
+	return n == _epoch + 1;
+    }
+
+    /**
+     * @return The schedule in the short form used in the names of saved files
+     */
+    public String toString()
+    {
+	return ((interval > 0) ? ("K" + interval) : ("G" + ratio)) + ((subsample > 0) ? ("S" + subsample) : "");
+    }
+}
@@ -0,0 +1,588 @@
+/**
+ * Hands out the training and validation of networks to worker processes, on this machine or others,
+ * for an EvolutionEngine. The workers are EvaluationWorkers, which connect over TCP and may come and go.
+ * When a worker connects it is sent the settings its networks are to be made with.
+ * Each task is a network's genome, its starting weights, the epochs to train it for and a seed,
+ * from which the worker draws the training, test and validation sets; a task that is run again
+ * is run with the same weights and data sets.
+ * Small tasks are sent in batches, to save round trips, and each worker has one batch at a time.
+ * A worker that disconnects, or does not answer within the timeout if there is one, is dropped
+ * and the tasks of its batch are put back at the head of the queue for the others.
+ * A task that has been sent to maxAttempts workers, each of which failed, is not sent again;
+ * evaluate fails instead, so a task that kills its workers cannot take down the whole pool.
+ * The weights and SSE that come back are only given to the networks once the whole batch has arrived.
+ * <p>
+ * The protocol is binary. A worker is first sent the number of settings, then each as the name and value
+ * understood by EvolutionConfig.set, then whether to send the trained weights back.
+ * Before each batch the server sends BATCH, or DONE when it is stopping, then the number of tasks and the tasks.
+ * A task is its id, the epochs, the seed, the sizes and bits of the genome and the starting weights,
+ * as written by ParameterServer.writeWeights.
+ * For each task the worker sends back the task's id, the validation SSE, the processor time it took,
+ * whether the weights follow and, if so, the trained weights.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+public class EvaluationServer
+{
+    // What the server sends before each batch
+    public static final int BATCH = 1, DONE = 0;
+
+    /**
+     * A network to be evaluated, with what has come back for it.
+     */
+    private static class Task
+    {
+	final int id;
+	final NeuralNetwork network;
+	final int epochs;
+	final long seed;
+	double sSE;
+	double[] weights; // null unless the weights come back
+	long nanos;
+	int attempts; // The workers it has been sent to
+
+	Task(int _id, NeuralNetwork _n, int _epochs, long _seed)
+	{
+	    id = _id;
+	    network = _n;
+	    epochs = _epochs;
+	    seed = _seed;
+	}
+    }
+
+    /**
+     * A connected worker, served by a thread of its own.
+     */
+    private class Connection implements Runnable
+    {
+	private final Socket socket;
+
+	Connection(Socket _s)
+	{
+	    socket = _s;
+	}
+
+	public void run()
+	{
+	    List<Task> batch = null;
+
+	    try
+		{
+		    socket.setTcpNoDelay(true);
+		    synchronized (EvaluationServer.this)
+			{
+			    socket.setSoTimeout(timeout);
+			}
+		    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+		    writeSettings(out);
+		    out.flush();
+		    while ((batch = take()) != null)
+			{
+			    out.writeInt(BATCH);
+			    out.writeInt(batch.size());
+			    for (Task t : batch)
+				{
+				    writeTask(out, t);
+				}
+			    out.flush();
+			    for (Task t : batch)
+				{
+				    readResult(in, t);
+				}
+			    finish(batch);
+			    batch = null;
+			}
+		    out.writeInt(DONE);
+		    out.flush();
+		}
+	    catch (Throwable e)
+		{
+		    // Whatever went wrong, the tasks of the batch must be put back or failed
+		    lose(batch);
+		}
+	    finally
+		{
+		    // Whether it finished or failed, the worker is gone
+		    synchronized (EvaluationServer.this)
+			{
+			    workers--;
+			}
+		    try
+			{
+			    socket.close();
+			}
+		    catch (IOException e)
+			{
+			}
+		}
+	}
+    }
+
+    private final EvolutionConfig config;
+    private final LinkedList<Task> queue = new LinkedList<Task>(); // The tasks waiting for a worker
+    private final Random random = new Random();
+    private ServerSocket serverSocket;
+    private int batchSize;
+    private boolean returnWeights = true;
+    private int timeout; // In milliseconds, 0 to wait for ever
+    private int maxAttempts = 3;
+    private boolean stopped;
+    private int remaining; // The tasks of the current call to evaluate that have not come back
+    private int firstId; // The id of the first task of the current call to evaluate
+    private String failure; // Why the current call to evaluate failed, or null
+    private int nextId;
+    private int workers, lost, reassigned;
+    private long batches, tasks;
+
+    /**
+     * Creates a new EvaluationServer.
+     * @param _c The settings the workers make their networks with
+     * @param _batchSize The most tasks sent to a worker at once
+     */
+    public EvaluationServer(EvolutionConfig _c, int _batchSize)
+    {
+	if (_batchSize < 1)
+	    throw new IllegalArgumentException("A batch must hold at least one task");
+
+	config = _c;
+	batchSize = _batchSize;
+    }
+
+    /**
+     * @param _b The most tasks sent to a worker at once
+     */
+    public synchronized void setBatchSize(int _b)
+    {
+	batchSize = _b;
+    }
+
+    /**
+     * Sets whether the workers send back the trained weights.
+     * Without them, only the SSEs are set, so networks saved, inherited from or cached keep their starting weights.
+     * It applies to workers that connect afterwards.
+     * @param _r Whether the weights are sent back
+     */
+    public synchronized void setReturnWeights(boolean _r)
+    {
+	returnWeights = _r;
+    }
+
+    /**
+     * @param _t How long to wait for a worker's batch, in milliseconds, before dropping the worker,
+     * or 0 to wait for ever; it applies to workers that connect afterwards
+     */
+    public synchronized void setTimeout(int _t)
+    {
+	timeout = _t;
+    }
+
+    /**
+     * @param _a The most workers a task is sent to before evaluate gives up on it
+     */
+    public synchronized void setMaxAttempts(int _a)
+    {
+	if (_a < 1)
+	    throw new IllegalArgumentException("A task must be sent at least once");
+
+	maxAttempts = _a;
+    }
+
+    /**
+     * Starts listening for workers and taking them on as they connect.
+     * @param _port The port to listen on, or 0 for any free port
+     * @param _local Whether to listen on the loopback address only, rather than for other machines too
+     * @return The port being listened on
+     * @throws IOException if the port cannot be opened
+     */
+    public int start(int _port, boolean _local) throws IOException
+    {
+	serverSocket = new ServerSocket(_port, 50, _local ? InetAddress.getLoopbackAddress() : null);
+
+	Thread acceptor = new Thread(new Runnable()
+	    {
+		public void run()
+		{
+		    Socket s;
+
+		    try
+			{
+			    while (true)
+				{
+				    s = serverSocket.accept();
+				    synchronized (EvaluationServer.this)
+					{
+					    workers++;
+					}
+				    Thread t = new Thread(new Connection(s), "Worker " + s.getRemoteSocketAddress());
+				    t.setDaemon(true);
+				    t.start();
+				}
+			}
+		    catch (IOException e)
+			{
+			    // The server socket has been closed
+			}
+		}
+	    }, "Worker acceptor");
+	acceptor.setDaemon(true);
+	acceptor.start();
+
+	return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Trains networks and finds their SSEs on the workers, waiting until they have all come back.
+     * Their SSEs are cached and, if the workers send them, their weights set to the trained weights.
+     * If there are no workers, it waits for some to connect.
+     * @param _n The networks
+     * @param _epochs The epochs to train each for
+     * @param _nanos For the processor time each took on its worker
+     * @throws IOException if the server is stopped first, or a task has failed on maxAttempts workers
+     */
+    public synchronized void evaluate(NeuralNetwork[] _n, int[] _epochs, long[] _nanos) throws IOException
+    {
+	Task[] t = new Task[_n.length];
+
+	firstId = nextId;
+	failure = null;
+	for (int i = 0; i < _n.length; i++)
+	    {
+		t[i] = new Task(nextId++, _n[i], _epochs[i], random.nextLong());
+		queue.add(t[i]);
+	    }
+	remaining = _n.length;
+	notifyAll();
+
+	try
+	    {
+		while ((remaining > 0) && !stopped && (failure == null))
+		    {
+			wait();
+		    }
+	    }
+	catch (InterruptedException e)
+	    {
+		Thread.currentThread().interrupt();
+		throw new InterruptedIOException();
+	    }
+	if (failure != null)
+	    {
+		// The other tasks are dropped; any still out on workers are ignored when they come back
+		for (Iterator<Task> i = queue.iterator(); i.hasNext(); )
+		    {
+			if (i.next().id >= firstId)
+			    i.remove();
+		    }
+		remaining = 0;
+		throw new IOException(failure);
+	    }
+	if (remaining > 0)
+	    throw new IOException("The server was stopped");
+
+	for (int i = 0; i < _n.length; i++)
+	    {
+		_nanos[i] = t[i].nanos;
+	    }
+    }
+
+    /**
+     * Waits for tasks and takes a batch of them.
+     * @return The batch, or null when the server is stopping
+     */
+    private synchronized List<Task> take()
+    {
+	try
+	    {
+		while (queue.isEmpty() && !stopped)
+		    {
+			wait();
+		    }
+	    }
+	catch (InterruptedException e)
+	    {
+		return null;
+	    }
+	if (stopped)
+	    return null;
+
+	List<Task> batch = new ArrayList<Task>();
+	while (!queue.isEmpty() && (batch.size() < batchSize))
+	    {
+		Task t = queue.removeFirst();
+		t.attempts++;
+		batch.add(t);
+	    }
+	return batch;
+    }
+
+    /**
+     * Gives the networks of a batch that has come back their results.
+     * @param _batch The batch
+     */
+    private synchronized void finish(List<Task> _batch)
+    {
+	for (Task t : _batch)
+	    {
+		// A task of an earlier call to evaluate, or of one that has failed
+		if ((t.id < firstId) || (failure != null))
+		    continue;
+
+		if (t.weights != null)
+		    {
+			for (int i = 0; i < t.weights.length; i++)
+			    {
+				if (t.network.isActive(i))
+				    t.network.setWeight(i, t.weights[i]);
+			    }
+		    }
+		t.network.setCachedSSE(t.sSE);
+		remaining--;
+	    }
+	batches++;
+	tasks += _batch.size();
+	notifyAll();
+    }
+
+    /**
+     * Drops a worker that has failed, putting the tasks it had back for the others.
+     * @param _batch The batch it had, or null
+     */
+    private synchronized void lose(List<Task> _batch)
+    {
+	if (stopped)
+	    return;
+
+	lost++;
+	if (_batch != null)
+	    {
+		for (int i = _batch.size() - 1; i >= 0; i--)
+		    {
+			Task t = _batch.get(i);
+			if ((t.id < firstId) || (failure != null))
+			    continue;
+
+			if (t.attempts >= maxAttempts)
+			    {
+				failure = "Task " + t.id + " failed on " + t.attempts + " workers";
+			    }
+			else
+			    {
+				queue.addFirst(t);
+				reassigned++;
+			    }
+		    }
+		notifyAll();
+	    }
+    }
+
+    /**
+     * Writes the settings the worker makes its networks with.
+     * @param _out Where to write them
+     */
+    private void writeSettings(DataOutputStream _out) throws IOException
+    {
+	Optimizer o = config.getOptimizer();
+	String[] settings =
+	    {
+		"hiddenLayers", "" + config.getHiddenLayers(),
+		"neuronsInHidden", "" + config.getNeuronsInHidden(),
+		"learningRate", "" + config.getLearningRate(),
+		"trainSize", "" + config.getTrainSize(),
+		"testSize", "" + config.getTestSize(),
+		"validSize", "" + config.getValidSize(),
+		"activation", config.getActivation().name(),
+		"singlePrecision", "" + config.getSinglePrecision(),
+		"optimizer", (o == null) ? "sgd" : o.toString(),
+		"patience", "" + config.getPatience(),
+		"minImprovement", "" + config.getMinImprovement(),
+		"restoreBest", "" + config.getRestoreBest(),
+		"testEvery", "" + config.getTestEvery()
+	    };
+
+	_out.writeInt(settings.length / 2);
+	for (int i = 0; i < settings.length; i++)
+	    {
+		_out.writeUTF(settings[i]);
+	    }
+	synchronized (this)
+	    {
+		_out.writeBoolean(returnWeights);
+	    }
+    }
+
+    /**
+     * Writes a task.
+     * @param _out Where to write it
+     * @param _t The task
+     */
+    private static void writeTask(DataOutputStream _out, Task _t) throws IOException
+    {
+	Genome g = _t.network.getGenome();
+
+	_out.writeInt(_t.id);
+	_out.writeInt(_t.epochs);
+	_out.writeLong(_t.seed);
+	_out.writeInt(g.getInputs());
+	_out.writeInt(g.getNeuronsInHiddenLayer());
+	_out.writeInt(g.getHiddenLayers());
+	_out.writeInt(g.getOutputs());
+	for (int i = 0; i < g.getBinStringLength(); i++)
+	    {
+		_out.writeBoolean(g.getBit(i));
+	    }
+	ParameterServer.writeWeights(_out, _t.network);
+    }
+
+    /**
+     * Reads the result of a task, keeping it in the task until the batch is finished.
+     * @param _in Where to read it from
+     * @param _t The task
+     */
+    private void readResult(DataInputStream _in, Task _t) throws IOException
+    {
+	if (_in.readInt() != _t.id)
+	    throw new IOException("A result came back out of order");
+
+	_t.sSE = _in.readDouble();
+	_t.nanos = _in.readLong();
+	if (_in.readBoolean())
+	    {
+		_t.weights = new double[_t.network.getNumWeights()];
+		ParameterServer.addWeights(_in, _t.network, _t.weights, 1.0);
+	    }
+    }
+
+    /**
+     * @return The number of workers connected
+     */
+    public synchronized int getWorkers()
+    {
+	return workers;
+    }
+
+    /**
+     * @return The number of workers dropped because they failed
+     */
+    public synchronized int getLost()
+    {
+	return lost;
+    }
+
+    /**
+     * @return The number of tasks put back after their workers failed
+     */
+    public synchronized int getReassigned()
+    {
+	return reassigned;
+    }
+
+    /**
+     * @return The numbers of workers, batches and tasks, and of the workers lost and tasks reassigned
+     */
+    public synchronized String getStatistics()
+    {
+	return "workers " + workers + ", batches " + batches + ", tasks " + tasks
+	    + ", lost workers " + lost + ", reassigned tasks " + reassigned;
+    }
+
+    /**
+     * Stops listening and tells the workers that are waiting for tasks to finish.
+     */
+    public void stop()
+    {
+	synchronized (this)
+	    {
+		stopped = true;
+		notifyAll();
+	    }
+	try
+	    {
+		serverSocket.close();
+	    }
+	catch (IOException e)
+	    {
+	    }
+    }
+
+    /**
+     * Runs an evolution whose networks are evaluated by workers.
+     * With a number of workers, they are started in JVMs on this machine and the server listens on the loopback address.
+     * With none, the server listens for workers on other machines, started with EvaluationWorker host port.
+     * Usage: EvaluationServer [workers batchSize port] [name=value ...]
+     * The names are those of EvolutionConfig.set.
+     */
+    public static void main(String[] args) throws Exception
+    {
+	EvolutionConfig c = new EvolutionConfig();
+	List<String> numbers = new ArrayList<String>();
+	int eq;
+
+	System.setProperty("java.awt.headless", "true");
+
+	for (int i = 0; i < args.length; i++)
+	    {
+		eq = args[i].indexOf('=');
+		if (eq < 0)
+		    numbers.add(args[i]);
+		else
+		    c.set(args[i].substring(0, eq), args[i].substring(eq + 1));
+	    }
+	if (!c.isValid())
+	    {
+		System.out.println("Check inputs!");
+		return;
+	    }
+	int workers = (numbers.size() > 0) ? Integer.parseInt(numbers.get(0)) : 2;
+	int batchSize = (numbers.size() > 1) ? Integer.parseInt(numbers.get(1)) : 4;
+	int port = (numbers.size() > 2) ? Integer.parseInt(numbers.get(2)) : 0;
+
+	final EvaluationServer server = new EvaluationServer(c, batchSize);
+	port = server.start(port, workers > 0);
+
+	// Start the workers with the same class path as this JVM
+	Process[] processes = new Process[workers];
+	for (int w = 0; w < workers; w++)
+	    {
+		processes[w] = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+						  "-cp", System.getProperty("java.class.path"),
+						  "EvaluationWorker", "localhost", "" + port, "1")
+		    .inheritIO().start();
+	    }
+	if (workers == 0)
+	    System.out.println("Listening on port " + port + "; start workers with EvaluationWorker host " + port);
+
+	long startTime = System.currentTimeMillis();
+	final EvolutionEngine engine = new EvolutionEngine(c);
+	engine.setServer(server);
+	engine.setListener(new EvolutionListener()
+	    {
+		public void generationEnded(int _generation, NeuralNetwork[] _ranked)
+		{
+		    System.out.println("Generation " + _generation + ": best SSE " + _ranked[0].getCachedSSE()
+				       + ", " + (int)engine.getGenerationMillis(_generation) + " ms, speedup "
+				       + (float)engine.getSpeedup(_generation) + ", " + server.getStatistics());
+		}
+
+		public void evolutionEnded(EvolutionEngine _e)
+		{
+		}
+	    });
+	engine.run();
+	server.stop();
+	for (int w = 0; w < workers; w++)
+	    {
+		processes[w].waitFor();
+	    }
+
+	engine.printTable(System.out);
+	System.out.println(server.getStatistics());
+	System.out.println("Completed in " + (System.currentTimeMillis() - startTime) + " milliseconds.");
+    }
+}
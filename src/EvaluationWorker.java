@@ -0,0 +1,169 @@
+/**
+ * A worker for EvaluationServer, run in its own JVM, on the server's machine or another.
+ * It reads the settings its networks are made with, then trains and validates the networks of each batch
+ * it is sent, on a pool of its own, and sends back their SSEs and, if asked for, their trained weights.
+ * Each network's data sets are drawn from the seed of its task, so they are the same wherever it is run.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.io.*;
+import java.lang.management.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class EvaluationWorker
+{
+    /**
+     * A task of a batch.
+     */
+    private class Job extends RecursiveAction
+    {
+	final int id;
+	final NeuralNetwork network;
+	final int epochs;
+	final long seed;
+	long nanos; // The processor time the job took
+
+	Job(int _id, NeuralNetwork _n, int _epochs, long _seed)
+	{
+	    id = _id;
+	    network = _n;
+	    epochs = _epochs;
+	    seed = _seed;
+	}
+
+	protected void compute()
+	{
+	    long start = getTime();
+	    Random r = new Random(seed);
+	    Tuple[] train = dS.getSample(config.getTrainSize(), r);
+	    Tuple[] test = dS.getSample(config.getTestSize(), r);
+	    Tuple[] valid = dS.getSample(config.getValidSize(), r);
+
+	    network.train(train, test, epochs);
+	    network.cacheSSE(valid);
+	    nanos = getTime() - start;
+	}
+    }
+
+    private final DataSet dS = new SecondYearData();
+    private EvolutionConfig config; // The settings the networks are made with, read from the server
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final ForkJoinPool pool;
+
+    /**
+     * Connects to a server.
+     * @param _host The machine the server is on
+     * @param _port The port of the server
+     * @param _threads The number of networks trained at once, or 0 for one per core
+     * @throws IOException if the server cannot be reached
+     */
+    public EvaluationWorker(String _host, int _port, int _threads) throws IOException
+    {
+	socket = new Socket(_host, _port);
+	socket.setTcpNoDelay(true);
+	in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+	out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+	pool = new ForkJoinPool((_threads > 0) ? _threads : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Returns the processor time of the current thread, or the wall time if that cannot be had,
+     * as EvolutionEngine times its evaluations.
+     * @return The time in nanoseconds
+     */
+    private static long getTime()
+    {
+	ThreadMXBean b = ManagementFactory.getThreadMXBean();
+
+	return b.isCurrentThreadCpuTimeSupported() ? b.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Reads the settings, then evaluates batches until the server says it is done.
+     * @return The number of networks evaluated
+     * @throws IOException if the server fails
+     */
+    public int run() throws IOException
+    {
+	config = new EvolutionConfig();
+	int settings = in.readInt();
+	for (int i = 0; i < settings; i++)
+	    {
+		config.set(in.readUTF(), in.readUTF());
+	    }
+	boolean returnWeights = in.readBoolean();
+	int evaluated = 0;
+
+	while (in.readInt() == EvaluationServer.BATCH)
+	    {
+		final Job[] jobs = new Job[in.readInt()];
+		for (int j = 0; j < jobs.length; j++)
+		    {
+			int id = in.readInt();
+			int epochs = in.readInt();
+			long seed = in.readLong();
+			Genome g = new Genome(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+			for (int i = 0; i < g.getBinStringLength(); i++)
+			    {
+				g.setBit(i, in.readBoolean());
+			    }
+			NeuralNetwork n = config.makeNetwork(g, 0);
+			ParameterServer.readWeights(in, n);
+			jobs[j] = new Job(id, n, epochs, seed);
+		    }
+
+		pool.invoke(new RecursiveAction()
+		    {
+			protected void compute()
+			{
+			    invokeAll(jobs);
+			}
+		    });
+
+		for (int j = 0; j < jobs.length; j++)
+		    {
+			out.writeInt(jobs[j].id);
+			out.writeDouble(jobs[j].network.getCachedSSE());
+			out.writeLong(jobs[j].nanos);
+			out.writeBoolean(returnWeights);
+			if (returnWeights)
+			    ParameterServer.writeWeights(out, jobs[j].network);
+		    }
+		out.flush();
+		evaluated += jobs.length;
+	    }
+
+	return evaluated;
+    }
+
+    /**
+     * Disconnects from the server.
+     */
+    public void close() throws IOException
+    {
+	pool.shutdown();
+	socket.close();
+    }
+
+    /**
+     * Usage: EvaluationWorker host port [threads]
+     */
+    public static void main(String[] args) throws Exception
+    {
+	if (args.length < 2)
+	    {
+		System.out.println("Usage: EvaluationWorker host port [threads]");
+		return;
+	    }
+
+	EvaluationWorker w = new EvaluationWorker(args[0], Integer.parseInt(args[1]),
+						  (args.length > 2) ? Integer.parseInt(args[2]) : 0);
+	w.run();
+	w.close();
+    }
+}
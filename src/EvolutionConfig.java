@@ -0,0 +1,703 @@
+/**
+ * The parameters of an evolutionary run, for EvolutionEngine.
+ * The defaults are those that WorldFrame starts with.
+ * Parameters can be set by name, as they are given on the command line, for example "popSize=50".
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.io.*;
+
+public class EvolutionConfig implements Serializable, Cloneable
+{
+    private int popSize = 100, genNum = 100, hiddenLayers = 3, neuronsInHidden = 6, epochs = 100;
+    private double learningRate = 0.05;
+    private int trainSize = 100, testSize = 100, validSize = 100, selectRate = 50, mutateRate = 5;
+    private Activation activation = Activation.EXACT; // Used while training and finding fitness; saved networks are set back to EXACT
+    private boolean singlePrecision; // Whether to evolve FloatNetworks rather than Networks
+    private Optimizer optimizer; // Copied for each network, null for plain steps
+    private int patience; // 0 to train for every epoch
+    private double minImprovement;
+    private boolean restoreBest;
+    private int testEvery = 1; // The number of epochs between tests while training
+    private boolean inheritWeights; // Whether children start from the trained weights of their parents
+    private int inheritedEpochs = 50; // The epochs for which a child that inherited weights is trained
+    private boolean fullyConnected = true; // Whether to train a fully connected network at the end for comparison
+    private File saveDirectory = new File("nets"); // Where the networks are saved, null to save nothing
+    private int threads; // The number of networks evaluated at once, 0 for one per core
+    private int cacheSize; // The most genomes whose fitness is remembered, 0 for no FitnessCache
+    private FitnessCache.Eviction cacheEviction = FitnessCache.Eviction.LRU;
+    private String selection = "top"; // The name of the Selection that chooses parents
+    private int islands = 1; // The number of populations evolved at once by IslandModel
+    private int migrationInterval = 10; // The generations between migrations
+    private int migrants = 1; // The best networks each island sends at a migration
+    private IslandModel.Topology topology = IslandModel.Topology.RING;
+
+    /**
+     * Sets a parameter from its name and a string, as given on the command line.
+     * The names are those of the getters without "get", starting with a small letter.
+     * @param _name The name of the parameter
+     * @param _value Its value
+     */
+    public void set(String _name, String _value)
+    {
+	if (_name.equals("popSize"))
+	    popSize = Integer.parseInt(_value);
+	else if (_name.equals("genNum"))
+	    genNum = Integer.parseInt(_value);
+	else if (_name.equals("hiddenLayers"))
+	    hiddenLayers = Integer.parseInt(_value);
+	else if (_name.equals("neuronsInHidden"))
+	    neuronsInHidden = Integer.parseInt(_value);
+	else if (_name.equals("epochs"))
+	    epochs = Integer.parseInt(_value);
+	else if (_name.equals("learningRate"))
+	    learningRate = Double.parseDouble(_value);
+	else if (_name.equals("trainSize"))
+	    trainSize = Integer.parseInt(_value);
+	else if (_name.equals("testSize"))
+	    testSize = Integer.parseInt(_value);
+	else if (_name.equals("validSize"))
+	    validSize = Integer.parseInt(_value);
+	else if (_name.equals("selectRate"))
+	    selectRate = Integer.parseInt(_value);
+	else if (_name.equals("mutateRate"))
+	    mutateRate = Integer.parseInt(_value);
+	else if (_name.equals("activation"))
+	    activation = Activation.valueOf(_value.toUpperCase());
+	else if (_name.equals("singlePrecision"))
+	    singlePrecision = Boolean.parseBoolean(_value);
+	else if (_name.equals("optimizer"))
+	    optimizer = Optimizer.forName(_value);
+	else if (_name.equals("patience"))
+	    patience = Integer.parseInt(_value);
+	else if (_name.equals("minImprovement"))
+	    minImprovement = Double.parseDouble(_value);
+	else if (_name.equals("restoreBest"))
+	    restoreBest = Boolean.parseBoolean(_value);
+	else if (_name.equals("testEvery"))
+	    testEvery = Integer.parseInt(_value);
+	else if (_name.equals("inheritWeights"))
+	    inheritWeights = Boolean.parseBoolean(_value);
+	else if (_name.equals("inheritedEpochs"))
+	    inheritedEpochs = Integer.parseInt(_value);
+	else if (_name.equals("fullyConnected"))
+	    fullyConnected = Boolean.parseBoolean(_value);
+	else if (_name.equals("saveDirectory"))
+	    saveDirectory = _value.isEmpty() ? null : new File(_value);
+	else if (_name.equals("threads"))
+	    threads = Integer.parseInt(_value);
+	else if (_name.equals("cacheSize"))
+	    cacheSize = Integer.parseInt(_value);
+	else if (_name.equals("cacheEviction"))
+	    cacheEviction = FitnessCache.Eviction.valueOf(_value.toUpperCase());
+	else if (_name.equals("selection"))
+	    setSelection(_value);
+	else if (_name.equals("islands"))
+	    islands = Integer.parseInt(_value);
+	else if (_name.equals("migrationInterval"))
+	    migrationInterval = Integer.parseInt(_value);
+	else if (_name.equals("migrants"))
+	    migrants = Integer.parseInt(_value);
+	else if (_name.equals("topology"))
+	    topology = IslandModel.Topology.valueOf(_value.toUpperCase());
+	else
+	    throw new IllegalArgumentException("No parameter called " + _name);
+    }
+
+    /**
+     * @return Whether the parameters can be used, which is what WorldFrame checked before a run
+     */
+    public boolean isValid()
+    {
+	return (popSize >= 1)
+	    && (genNum >= 1)
+	    && (hiddenLayers >= 2)
+	    && (neuronsInHidden >= 1)
+	    && (epochs >= 1)
+	    && (patience >= 0)
+	    && (testEvery >= 1)
+	    && (!inheritWeights || (inheritedEpochs >= 1))
+	    && (trainSize >= 1) && (trainSize <= 200)
+	    && (testSize >= 1) && (testSize <= 200)
+	    && (validSize >= 1) && (validSize <= 200)
+	    && (selectRate >= 1) && (selectRate <= 100)
+	    && (mutateRate >= 1) && (mutateRate <= 100)
+	    && (threads >= 0)
+	    && (cacheSize >= 0)
+	    && (islands >= 1)
+	    && (migrationInterval >= 1)
+	    && (migrants >= 0) && (migrants <= popSize);
+    }
+
+    /**
+     * @return A copy of these parameters, which can be changed without changing them
+     */
+    public EvolutionConfig copy()
+    {
+	try
+	    {
+		return (EvolutionConfig)clone();
+	    }
+	catch (CloneNotSupportedException e)
+	    {
+		throw new AssertionError(e);
+	    }
+    }
+
+    /**
+     * @return The start of the names of the files saved by a run, as WorldFrame has always named them
+     */
+    public String getName()
+    {
+	return popSize + "P"
+	    + genNum + "G"
+	    + hiddenLayers + "HL"
+	    + neuronsInHidden + "NIH"
+	    + epochs + "E"
+	    + learningRate + "LR"
+	    + trainSize + "TR"
+	    + testSize + "TE"
+	    + selectRate + "S"
+	    + mutateRate + "M";
+    }
+
+    /**
+     * @return The early stopping for the networks, null when the patience is 0
+     */
+    public EarlyStopping getEarlyStopping()
+    {
+	return (patience > 0) ? new EarlyStopping(patience, minImprovement, restoreBest) : null;
+    }
+
+    /**
+     * Makes a network ready to be trained, with these settings.
+     * @param _g The genome
+     * @param _generation The generation
+     * @return The network
+     */
+    public NeuralNetwork makeNetwork(Genome _g, int _generation)
+    {
+	NeuralNetwork n;
+
+	if (singlePrecision)
+	    n = new FloatNetwork(_g, _generation, learningRate);
+	else
+	    n = new Network(_g, _generation, learningRate);
+	n.setActivation(activation);
+	n.setEarlyStopping(getEarlyStopping());
+	n.setEvaluationSchedule(getSchedule());
+	n.setOptimizer((optimizer == null) ? null : optimizer.copy());
+
+	return n;
+    }
+
+    /**
+     * @return The evaluation schedule for the networks, null when testing every epoch
+     */
+    public EvaluationSchedule getSchedule()
+    {
+	return (testEvery > 1) ? EvaluationSchedule.every(testEvery) : null;
+    }
+
+    /**
+     * @return The number of networks in each generation
+     */
+    public int getPopSize()
+    {
+	return popSize;
+    }
+
+    /**
+     * @param _p The number of networks in each generation
+     */
+    public void setPopSize(int _p)
+    {
+	popSize = _p;
+    }
+
+    /**
+     * @return The number of generations
+     */
+    public int getGenNum()
+    {
+	return genNum;
+    }
+
+    /**
+     * @param _g The number of generations
+     */
+    public void setGenNum(int _g)
+    {
+	genNum = _g;
+    }
+
+    /**
+     * @return The number of hidden layers
+     */
+    public int getHiddenLayers()
+    {
+	return hiddenLayers;
+    }
+
+    /**
+     * @param _h The number of hidden layers
+     */
+    public void setHiddenLayers(int _h)
+    {
+	hiddenLayers = _h;
+    }
+
+    /**
+     * @return The number of neurons in each hidden layer
+     */
+    public int getNeuronsInHidden()
+    {
+	return neuronsInHidden;
+    }
+
+    /**
+     * @param _n The number of neurons in each hidden layer
+     */
+    public void setNeuronsInHidden(int _n)
+    {
+	neuronsInHidden = _n;
+    }
+
+    /**
+     * @return The number of epochs each network is trained for
+     */
+    public int getEpochs()
+    {
+	return epochs;
+    }
+
+    /**
+     * @param _e The number of epochs each network is trained for
+     */
+    public void setEpochs(int _e)
+    {
+	epochs = _e;
+    }
+
+    /**
+     * @return The learning rate
+     */
+    public double getLearningRate()
+    {
+	return learningRate;
+    }
+
+    /**
+     * @param _lR The learning rate
+     */
+    public void setLearningRate(double _lR)
+    {
+	learningRate = _lR;
+    }
+
+    /**
+     * @return The size of each training set
+     */
+    public int getTrainSize()
+    {
+	return trainSize;
+    }
+
+    /**
+     * @param _t The size of each training set
+     */
+    public void setTrainSize(int _t)
+    {
+	trainSize = _t;
+    }
+
+    /**
+     * @return The size of each test set
+     */
+    public int getTestSize()
+    {
+	return testSize;
+    }
+
+    /**
+     * @param _t The size of each test set
+     */
+    public void setTestSize(int _t)
+    {
+	testSize = _t;
+    }
+
+    /**
+     * @return The size of each validation set
+     */
+    public int getValidSize()
+    {
+	return validSize;
+    }
+
+    /**
+     * @param _v The size of each validation set
+     */
+    public void setValidSize(int _v)
+    {
+	validSize = _v;
+    }
+
+    /**
+     * @return The percentage of each generation that may be parents
+     */
+    public int getSelectRate()
+    {
+	return selectRate;
+    }
+
+    /**
+     * @param _s The percentage of each generation that may be parents
+     */
+    public void setSelectRate(int _s)
+    {
+	selectRate = _s;
+    }
+
+    /**
+     * @return The mutation rate, as a percentage
+     */
+    public int getMutateRate()
+    {
+	return mutateRate;
+    }
+
+    /**
+     * @param _m The mutation rate, as a percentage
+     */
+    public void setMutateRate(int _m)
+    {
+	mutateRate = _m;
+    }
+
+    /**
+     * @return How the networks calculate the sigmoid while evolving
+     */
+    public Activation getActivation()
+    {
+	return activation;
+    }
+
+    /**
+     * @param _a How the networks calculate the sigmoid while evolving
+     */
+    public void setActivation(Activation _a)
+    {
+	activation = _a;
+    }
+
+    /**
+     * @return Whether to evolve FloatNetworks rather than Networks
+     */
+    public boolean getSinglePrecision()
+    {
+	return singlePrecision;
+    }
+
+    /**
+     * @param _s Whether to evolve FloatNetworks rather than Networks
+     */
+    public void setSinglePrecision(boolean _s)
+    {
+	singlePrecision = _s;
+    }
+
+    /**
+     * @return The Optimizer copied for each network, or null for plain steps
+     */
+    public Optimizer getOptimizer()
+    {
+	return optimizer;
+    }
+
+    /**
+     * @param _o The Optimizer copied for each network, or null for plain steps
+     */
+    public void setOptimizer(Optimizer _o)
+    {
+	optimizer = _o;
+    }
+
+    /**
+     * @return The patience of early stopping, or 0 to train for every epoch
+     */
+    public int getPatience()
+    {
+	return patience;
+    }
+
+    /**
+     * @param _p The patience of early stopping, or 0 to train for every epoch
+     */
+    public void setPatience(int _p)
+    {
+	patience = _p;
+    }
+
+    /**
+     * @return The minimum improvement for early stopping
+     */
+    public double getMinImprovement()
+    {
+	return minImprovement;
+    }
+
+    /**
+     * @param _m The minimum improvement for early stopping
+     */
+    public void setMinImprovement(double _m)
+    {
+	minImprovement = _m;
+    }
+
+    /**
+     * @return Whether early stopping gives networks back their best weights
+     */
+    public boolean getRestoreBest()
+    {
+	return restoreBest;
+    }
+
+    /**
+     * @param _r Whether early stopping gives networks back their best weights
+     */
+    public void setRestoreBest(boolean _r)
+    {
+	restoreBest = _r;
+    }
+
+    /**
+     * @return The number of epochs between tests while training
+     */
+    public int getTestEvery()
+    {
+	return testEvery;
+    }
+
+    /**
+     * @param _t The number of epochs between tests while training
+     */
+    public void setTestEvery(int _t)
+    {
+	testEvery = _t;
+    }
+
+    /**
+     * @return Whether children start from the trained weights of their parents
+     */
+    public boolean getInheritWeights()
+    {
+	return inheritWeights;
+    }
+
+    /**
+     * @param _i Whether children start from the trained weights of their parents
+     */
+    public void setInheritWeights(boolean _i)
+    {
+	inheritWeights = _i;
+    }
+
+    /**
+     * @return The epochs for which a child that inherited weights is trained
+     */
+    public int getInheritedEpochs()
+    {
+	return inheritedEpochs;
+    }
+
+    /**
+     * @param _e The epochs for which a child that inherited weights is trained
+     */
+    public void setInheritedEpochs(int _e)
+    {
+	inheritedEpochs = _e;
+    }
+
+    /**
+     * @return Whether a fully connected network is trained at the end for comparison
+     */
+    public boolean getFullyConnected()
+    {
+	return fullyConnected;
+    }
+
+    /**
+     * @param _f Whether a fully connected network is trained at the end for comparison
+     */
+    public void setFullyConnected(boolean _f)
+    {
+	fullyConnected = _f;
+    }
+
+    /**
+     * @return Where the networks are saved, or null to save nothing
+     */
+    public File getSaveDirectory()
+    {
+	return saveDirectory;
+    }
+
+    /**
+     * @param _d Where the networks are saved, or null to save nothing
+     */
+    public void setSaveDirectory(File _d)
+    {
+	saveDirectory = _d;
+    }
+
+    /**
+     * @return The number of networks evaluated at once, or 0 for one per core
+     */
+    public int getThreads()
+    {
+	return threads;
+    }
+
+    /**
+     * @param _t The number of networks evaluated at once, or 0 for one per core
+     */
+    public void setThreads(int _t)
+    {
+	threads = _t;
+    }
+
+    /**
+     * @return The most genomes whose fitness is remembered, or 0 for no FitnessCache
+     */
+    public int getCacheSize()
+    {
+	return cacheSize;
+    }
+
+    /**
+     * @param _s The most genomes whose fitness is remembered, or 0 for no FitnessCache
+     */
+    public void setCacheSize(int _s)
+    {
+	cacheSize = _s;
+    }
+
+    /**
+     * @return Which entry the FitnessCache drops when it is full
+     */
+    public FitnessCache.Eviction getCacheEviction()
+    {
+	return cacheEviction;
+    }
+
+    /**
+     * @param _e Which entry the FitnessCache drops when it is full
+     */
+    public void setCacheEviction(FitnessCache.Eviction _e)
+    {
+	cacheEviction = _e;
+    }
+
+    /**
+     * @return The name of the Selection that chooses parents
+     */
+    public String getSelection()
+    {
+	return selection;
+    }
+
+    /**
+     * @param _s The name of the Selection that chooses parents, as understood by Selection.forName
+     */
+    public void setSelection(String _s)
+    {
+	Selection.forName(_s);
+	selection = _s;
+    }
+
+    /**
+     * @return The number of populations evolved at once by IslandModel
+     */
+    public int getIslands()
+    {
+	return islands;
+    }
+
+    /**
+     * @param _i The number of populations evolved at once by IslandModel
+     */
+    public void setIslands(int _i)
+    {
+	islands = _i;
+    }
+
+    /**
+     * @return The number of generations between migrations
+     */
+    public int getMigrationInterval()
+    {
+	return migrationInterval;
+    }
+
+    /**
+     * @param _m The number of generations between migrations
+     */
+    public void setMigrationInterval(int _m)
+    {
+	migrationInterval = _m;
+    }
+
+    /**
+     * @return The number of best networks each island sends at a migration
+     */
+    public int getMigrants()
+    {
+	return migrants;
+    }
+
+    /**
+     * @param _m The number of best networks each island sends at a migration
+     */
+    public void setMigrants(int _m)
+    {
+	migrants = _m;
+    }
+
+    /**
+     * @return Which island each island sends its migrants to
+     */
+    public IslandModel.Topology getTopology()
+    {
+	return topology;
+    }
+
+    /**
+     * @param _t Which island each island sends its migrants to
+     */
+    public void setTopology(IslandModel.Topology _t)
+    {
+	topology = _t;
+    }
+
+    /**
+     * Describes the settings that a network's fitness depends on, apart from its genome,
+     * for the key of a FitnessCache.
+     * @param _inherited Whether the network inherited weights and is trained for the inherited epochs
+     * @return The settings
+     */
+    public String getTrainingSettings(boolean _inherited)
+    {
+	return (_inherited ? ("inherited " + inheritedEpochs) : ("" + epochs)) + "E"
+	    + learningRate + "LR"
+	    + trainSize + "TR"
+	    + testSize + "TE"
+	    + validSize + "V "
+	    + activation + " "
+	    + (singlePrecision ? "float " : "double ")
+	    + optimizer + " "
+	    + getEarlyStopping() + " "
+	    + getSchedule();
+    }
+}
@@ -0,0 +1,614 @@
+/**
+ * Runs the evolution of networks with the parameters of an EvolutionConfig,
+ * without a display.
+ * Each generation, networks are built from the parent genomes, trained, ranked by their SSE
+ * on a validation set, and the best of them bred by crossover and mutation.
+ * Every 20 generations and at the last, the best network is saved.
+ * At the end the progress is saved and, if asked for, a fully connected network is trained for comparison.
+ * The networks of a generation are trained and validated at the same time on a ForkJoinPool,
+ * since each is independent of the others; their data sets are drawn beforehand, in order.
+ * The time each generation takes is kept, with the speedup over evaluating the networks one after another.
+ * With a FitnessCache, a genome that has been trained before with the same settings is given
+ * the weights and SSE it had then instead of being trained again,
+ * and a genome that turns up more than once in a generation is trained once.
+ * An EvolutionListener hears about each generation; WorldFrame uses one to show the networks.
+ * With an EvaluationServer, the networks are trained and validated by worker processes instead,
+ * which draw their data sets from seeds.
+ * A Migration may bring in networks from elsewhere each generation; IslandModel uses one to run several engines together.
+ * The main method runs the engine from the command line.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class EvolutionEngine
+{
+    private final EvolutionConfig config;
+    private final DataSet dS = new SecondYearData();
+    private EvolutionListener listener; // null for none
+    private Migration migration; // null for none
+    private NeuralNetwork[] bestNets; // The best network from each generation
+    private double[] bestSSEs; // The SSEs of the best network in each generation
+    private NeuralNetwork fullNet; // null unless a fully connected network was trained
+    private NetworkPerformance fullPerformance;
+    private ForkJoinPool pool; // The threads that evaluate the networks, null to start a pool for each run
+    private FitnessCache cache; // The fitness of genomes trained before, null for none
+    private EvaluationServer server; // The workers that evaluate the networks, null to evaluate them here
+    private long[] generationNanos; // The wall time of each generation
+    private double[] speedups; // The total time spent evaluating networks in each generation over its wall time
+    private long trained; // The networks trained, leaving out those whose results were copied or came from the cache
+
+    /**
+     * Creates a new EvolutionEngine.
+     * @param _c The parameters of the run
+     */
+    public EvolutionEngine(EvolutionConfig _c)
+    {
+	if (!_c.isValid())
+	    throw new IllegalArgumentException("Check inputs!");
+
+	config = _c;
+    }
+
+    /**
+     * @param _l The listener to tell about each generation, or null for none
+     */
+    public void setListener(EvolutionListener _l)
+    {
+	listener = _l;
+    }
+
+    /**
+     * @param _m What brings networks in from elsewhere each generation, or null for nothing
+     */
+    public void setMigration(Migration _m)
+    {
+	migration = _m;
+    }
+
+    /**
+     * Sets the pool that evaluates the networks.
+     * Without one, each run starts a pool with as many threads as the config says.
+     * @param _p The pool, or null
+     */
+    public void setPool(ForkJoinPool _p)
+    {
+	pool = _p;
+    }
+
+    /**
+     * Sets the cache of the fitness of genomes trained before, which may be shared between runs.
+     * Without one, each run makes one as big as the config says, if it says to.
+     * @param _c The cache, or null
+     */
+    public void setCache(FitnessCache _c)
+    {
+	cache = _c;
+    }
+
+    /**
+     * Sets the server whose workers evaluate the networks, in place of the pool.
+     * @param _s The server, or null to evaluate the networks in this JVM
+     */
+    public void setServer(EvaluationServer _s)
+    {
+	server = _s;
+    }
+
+    /**
+     * @return The cache of the fitness of genomes trained before, or null if there is none
+     */
+    public FitnessCache getCache()
+    {
+	return cache;
+    }
+
+    /**
+     * @return The parameters of the run
+     */
+    public EvolutionConfig getConfig()
+    {
+	return config;
+    }
+
+    /**
+     * @return The best network from each generation, once the run has finished
+     */
+    public NeuralNetwork[] getBestNets()
+    {
+	return bestNets;
+    }
+
+    /**
+     * @return The SSEs of the best network in each generation, once the run has finished
+     */
+    public double[] getBestSSEs()
+    {
+	return bestSSEs;
+    }
+
+    /**
+     * @param _generation A generation that has ended
+     * @return The time the generation took, in milliseconds
+     */
+    public double getGenerationMillis(int _generation)
+    {
+	return generationNanos[_generation] / 1e6;
+    }
+
+    /**
+     * @param _generation A generation that has ended
+     * @return The processor time spent evaluating its networks, added up over the networks, over the time the evaluation took
+     */
+    public double getSpeedup(int _generation)
+    {
+	return speedups[_generation];
+    }
+
+    /**
+     * @return The number of networks trained so far in the run, leaving out those whose results came from the FitnessCache
+     */
+    public long getTrained()
+    {
+	return trained;
+    }
+
+    /**
+     * @return The fully connected network, or null if none was trained
+     */
+    public NeuralNetwork getFullNet()
+    {
+	return fullNet;
+    }
+
+    /**
+     * @return The performance of the fully connected network, or null if none was trained
+     */
+    public NetworkPerformance getFullPerformance()
+    {
+	return fullPerformance;
+    }
+
+    /**
+     * @return The title of the run, for graphs and tables
+     */
+    public String getTitle()
+    {
+	return "Evolution of " + config.getHiddenLayers() + " by " + config.getNeuronsInHidden() + " Networks";
+    }
+
+    /**
+     * Saves an object in the save directory, if there is one.
+     * @param _o The object
+     * @param _name The name of the file
+     */
+    private void save(Object _o, String _name)
+    {
+	if (config.getSaveDirectory() == null)
+	    return;
+
+	try
+	    {
+		ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(new File(config.getSaveDirectory(), _name)));
+		out.writeObject(_o);
+		out.close();
+	    }
+	catch (Exception e)
+	    {
+		System.err.println("Could not save " + _name + ": " + e);
+	    }
+    }
+
+    /**
+     * Returns the processor time of the current thread, or the wall time if that cannot be had.
+     * Processor time is used so that threads sharing a core do not count their waiting as work.
+     * @return The time in nanoseconds
+     */
+    private static long getTime()
+    {
+	ThreadMXBean b = ManagementFactory.getThreadMXBean();
+
+	return b.isCurrentThreadCpuTimeSupported() ? b.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Trains a network and finds its SSE on a validation set.
+     */
+    private static class Evaluation extends RecursiveAction
+    {
+	NeuralNetwork network;
+	Tuple[] train, test, valid;
+	int epochs;
+	long nanos; // The processor time the evaluation took
+
+	protected void compute()
+	{
+	    long start = getTime();
+
+	    network.train(train, test, epochs);
+	    network.cacheSSE(valid);
+	    nanos = getTime() - start;
+	}
+    }
+
+    /**
+     * Has the server's workers run evaluations, which they do with data sets of their own drawing.
+     * @param _e The evaluations
+     */
+    private void evaluateRemotely(Evaluation[] _e)
+    {
+	NeuralNetwork[] networks = new NeuralNetwork[_e.length];
+	int[] epochs = new int[_e.length];
+	long[] nanos = new long[_e.length];
+
+	for (int i = 0; i < _e.length; i++)
+	    {
+		networks[i] = _e[i].network;
+		epochs[i] = _e[i].epochs;
+	    }
+	try
+	    {
+		server.evaluate(networks, epochs, nanos);
+	    }
+	catch (IOException e)
+	    {
+		throw new IllegalStateException("The workers could not evaluate the networks", e);
+	    }
+	for (int i = 0; i < _e.length; i++)
+	    {
+		_e[i].nanos = nanos[i];
+	    }
+    }
+
+    /**
+     * Runs the evolution.
+     */
+    public void run()
+    {
+	int popSize = config.getPopSize();
+	int genNum = config.getGenNum();
+	int selectRate = config.getSelectRate();
+	boolean inheritWeights = config.getInheritWeights();
+	ForkJoinPool p = pool;
+	final Evaluation[] evaluations = new Evaluation[popSize];
+	int[] copyFrom = new int[popSize]; // The earlier network of the generation with the same genome, or -1
+	Map<Genome, Integer> firsts = new HashMap<Genome, Integer>(); // The first network of the generation with each genome
+	FitnessCache.Entry entry;
+	String settings = null;
+	long start, evaluationStart, work;
+	int n;
+
+	if ((cache == null) && (config.getCacheSize() > 0))
+	    cache = new FitnessCache(config.getCacheSize(), config.getCacheEviction());
+
+	if (p == null)
+	    p = new ForkJoinPool((config.getThreads() > 0) ? config.getThreads() : Runtime.getRuntime().availableProcessors());
+
+	Genome[] parentGenomes, childrenGenomes;
+	NeuralNetwork[] candidateNets;
+	NeuralNetwork[] parentA, parentB; // The trained parents of each child
+	boolean[][] fromA; // Whether each bit of a child's genome came from parentA
+	bestNets = new NeuralNetwork[genNum];
+	bestSSEs = new double[genNum];
+	generationNanos = new long[genNum];
+	speedups = new double[genNum];
+	trained = 0;
+
+	// GENERATE THE INITIAL POPULATION OF NETWORKS
+
+	// Create initial genomes
+	parentGenomes = new Genome[popSize];
+	for (int i = 0; i < popSize; i++)
+	    {
+		parentGenomes[i] = new Genome(3, config.getNeuronsInHidden(), config.getHiddenLayers(), 1);
+	    }
+
+	childrenGenomes = new Genome[popSize];
+	candidateNets = new NeuralNetwork[popSize];
+
+	// Set up the arrays that say where the children's weights come from
+	parentA = new NeuralNetwork[popSize];
+	parentB = new NeuralNetwork[popSize];
+	fromA = new boolean[popSize][parentGenomes[0].getBinStringLength()];
+
+	// Variables used to choose parents
+	Selection selection = Selection.forName(config.getSelection());
+	double[] sSEs = new double[popSize];
+	int best, p1, p2;
+
+	for (int i = 0; i < popSize; i++)
+	    {
+		evaluations[i] = new Evaluation();
+	    }
+
+	for (int generation = 0; generation < genNum; generation++) // Loop of generations
+	    {
+		start = System.nanoTime();
+
+		// Create the networks from the current parent genomes
+		for (int i = 0; i < popSize; i++)
+		    {
+			candidateNets[i] = config.makeNetwork(parentGenomes[i], generation);
+
+			// Lamarckian evolution; the first generation has no parents
+			if (inheritWeights && (generation > 0))
+			    candidateNets[i].inheritWeights(parentA[i], parentB[i], fromA[i]);
+		    }
+
+		// Train the networks and find their SSE for a validation set of Tuples, all at once
+		// The best fitness is the lowest SSE for an array of Tuples
+		// Note that the training, test and validation sets are different random selections
+		// for each network
+		// Children that inherited weights start part trained, so need fewer epochs
+		// Networks whose genomes are in the cache, or earlier in this generation, are not trained
+		if (cache != null)
+		    settings = config.getTrainingSettings(inheritWeights && (generation > 0));
+		firsts.clear();
+		n = 0;
+		for (int net = 0; net < popSize; net++)
+		    {
+			copyFrom[net] = -1;
+			if (cache != null)
+			    {
+				if (firsts.containsKey(candidateNets[net].getGenome()))
+				    {
+					copyFrom[net] = firsts.get(candidateNets[net].getGenome());
+					cache.countHit();
+					continue;
+				    }
+				entry = cache.get(candidateNets[net].getGenome(), settings);
+				if (entry != null)
+				    {
+					entry.restore(candidateNets[net]);
+					continue;
+				    }
+				firsts.put(candidateNets[net].getGenome(), net);
+			    }
+
+			evaluations[n].reinitialize();
+			evaluations[n].network = candidateNets[net];
+			if (server == null)
+			    {
+				evaluations[n].train = dS.getSample(config.getTrainSize());
+				evaluations[n].test = dS.getSample(config.getTestSize());
+				evaluations[n].valid = dS.getSample(config.getValidSize());
+			    }
+			evaluations[n].epochs = (inheritWeights && (generation > 0)) ? config.getInheritedEpochs() : config.getEpochs();
+			n++;
+		    }
+		final Evaluation[] misses = Arrays.copyOf(evaluations, n); // The evaluations that have to be run
+		evaluationStart = System.nanoTime();
+		if (server != null)
+		    evaluateRemotely(misses);
+		else
+		    p.invoke(new RecursiveAction()
+			{
+			    protected void compute()
+			    {
+				invokeAll(misses);
+			    }
+			});
+		work = 0;
+		for (int e = 0; e < misses.length; e++)
+		    {
+			work += misses[e].nanos;
+			if (cache != null)
+			    cache.put(misses[e].network, settings);
+		    }
+		speedups[generation] = (double)work / (System.nanoTime() - evaluationStart);
+		trained += misses.length;
+
+		// Copy the results of genomes met earlier in the generation
+		for (int net = 0; net < popSize; net++)
+		    {
+			if (copyFrom[net] >= 0)
+			    {
+				for (int i = 0; i < candidateNets[net].getNumWeights(); i++)
+				    {
+					candidateNets[net].setWeight(i, candidateNets[copyFrom[net]].getWeight(i));
+				    }
+				candidateNets[net].setCachedSSE(candidateNets[copyFrom[net]].getCachedSSE());
+			    }
+		    }
+
+		// Find the best network; the networks are not sorted, the Selection works from the SSEs
+		best = 0;
+		for (int net = 0; net < popSize; net++)
+		    {
+			sSEs[net] = candidateNets[net].getCachedSSE();
+			if (sSEs[net] < sSEs[best])
+			    best = net;
+		    }
+		selection.prepare(sSEs, selectRate);
+
+		// Store the best network in this generation
+		bestNets[generation] = candidateNets[best];
+		bestSSEs[generation] = sSEs[best];
+
+		// Every 20 generations and the final generation, save the best network
+		if ((generation % 20 == 0) || (generation + 1 == genNum))
+		    {
+			candidateNets[best].setActivation(Activation.EXACT);
+			save(candidateNets[best], config.getName() + generation + "G" + ".net");
+		    }
+
+		generationNanos[generation] = System.nanoTime() - start;
+
+		if (listener != null)
+		    {
+			NeuralNetwork[] networks = candidateNets.clone();
+			networks[best] = networks[0];
+			networks[0] = candidateNets[best];
+			listener.generationEnded(generation, networks);
+		    }
+
+		// Apply crossover to create children
+		// The Selection chooses the parents, which combine at random
+		for (int i = 0; i < popSize; i++)
+		    {
+			p1 = selection.next();
+			p2 = selection.next();
+
+			childrenGenomes[i] = candidateNets[p1].getGenome()
+			    .uniformCross(candidateNets[p2].getGenome(), fromA[i]);
+			parentA[i] = candidateNets[p1];
+			parentB[i] = candidateNets[p2];
+		    }
+
+		// Mutate the children's genomes
+		for (int i = 0; i < childrenGenomes.length; i++)
+		    {
+			childrenGenomes[i].mutate(config.getMutateRate());
+		    }
+
+		// Replace the first children, which are in no order, with copies of networks arriving from elsewhere
+		// Immigrants are not mutated, and with inheritance a copy takes all of its weights
+		if (migration != null)
+		    {
+			NeuralNetwork[] immigrants = migration.migrate(generation, candidateNets, sSEs);
+			for (int i = 0; (i < immigrants.length) && (i < popSize); i++)
+			    {
+				childrenGenomes[i] = new Genome(immigrants[i].getGenome());
+				parentA[i] = immigrants[i];
+				parentB[i] = immigrants[i];
+			    }
+		    }
+
+		// The children become the parents of the next generation
+		for (int i = 0; i < popSize; i++)
+		    {
+			parentGenomes[i] = childrenGenomes[i];
+		    }
+	    }
+
+	if (pool == null)
+	    p.shutdown();
+
+	// Save the evolutionary progress
+	save(new EvolutionPerformance(getTitle(), bestSSEs), config.getName() + ".evo");
+
+	if (config.getFullyConnected())
+	    trainFullyConnected();
+
+	if (listener != null)
+	    listener.evolutionEnded(this);
+    }
+
+    /**
+     * Sets up a fully connected network, trains it and saves it with its performance.
+     */
+    private void trainFullyConnected()
+    {
+	Genome fullGenome = new Genome(3, config.getNeuronsInHidden(), config.getHiddenLayers(), 1);
+	for (int i = 0; i < fullGenome.getBinStringLength(); i++)
+	    {
+		fullGenome.setBit(i, true);
+	    }
+
+	fullNet = config.makeNetwork(fullGenome, -1);
+	fullPerformance = fullNet.train(dS.getSample(config.getTrainSize()), dS.getSample(config.getTestSize()), config.getEpochs());
+	fullNet.setActivation(Activation.EXACT);
+
+	String name = config.getHiddenLayers() + "HL"
+	    + config.getNeuronsInHidden() + "NIH"
+	    + config.getEpochs() + "E"
+	    + config.getLearningRate() + "LR"
+	    + config.getTrainSize() + "TR"
+	    + config.getTestSize() + "TE"
+	    + "full";
+	save(fullNet, name + ".net");
+	save(fullPerformance, name + ".per");
+    }
+
+    /**
+     * Prints a table of the SSEs over generations
+     * and the number of active links in the best network of each generation.
+     * The print out is Latex friendly.
+     * @param _out Where to print it
+     */
+    public void printTable(PrintStream _out)
+    {
+	_out.println();
+	_out.println("\\begin{table}");
+	_out.println("\\begin{center}");
+	_out.println("\\begin{tabular}{|c|c|c|}");
+	_out.println("\\hline");
+	_out.println("Generation & SSE & \\% Active Links \\\\");
+	_out.println("\\hline");
+	for (int i = 0; i < bestNets.length; i++)
+	    {
+		_out.println("" + i + " & "
+			     + bestNets[i].getCachedSSE() + " & "
+			     + (int)(bestNets[i].getPercentActWeights() * 100)
+			     + " \\\\");
+	    }
+	_out.println("\\hline");
+	_out.println("\\end{tabular}");
+	_out.println("\\end{center}");
+	_out.println("\\caption{Evolution of " + config.getHiddenLayers() + " by " + config.getNeuronsInHidden() + " networks}");
+	_out.println("\\end{table}");
+	_out.println();
+    }
+
+    /**
+     * Runs an evolution with no display, printing a line for each generation and the table at the end.
+     * Usage: EvolutionEngine [name=value ...]
+     * The names are those of EvolutionConfig.set, for example popSize=20 genNum=10 saveDirectory=
+     * (an empty directory saves nothing).
+     */
+    public static void main(String[] args)
+    {
+	final EvolutionConfig c = new EvolutionConfig();
+	int eq;
+
+	// Nothing here opens a window; saving networks reads the Swing classes they name but never starts a toolkit
+	System.setProperty("java.awt.headless", "true");
+
+	for (int i = 0; i < args.length; i++)
+	    {
+		eq = args[i].indexOf('=');
+		if (eq < 0)
+		    {
+			System.out.println("Usage: EvolutionEngine [name=value ...]");
+			return;
+		    }
+		c.set(args[i].substring(0, eq), args[i].substring(eq + 1));
+	    }
+	if (!c.isValid())
+	    {
+		System.out.println("Check inputs!");
+		return;
+	    }
+
+	long startTime = System.currentTimeMillis();
+	final EvolutionEngine engine = new EvolutionEngine(c);
+	final int threads = (c.getThreads() > 0) ? c.getThreads() : Runtime.getRuntime().availableProcessors();
+	engine.setListener(new EvolutionListener()
+	    {
+		public void generationEnded(int _generation, NeuralNetwork[] _ranked)
+		{
+		    System.out.println("Generation " + _generation + ": best SSE " + _ranked[0].getCachedSSE()
+				       + ", " + (int)(_ranked[0].getPercentActWeights() * 100) + "% active links, "
+				       + (int)engine.getGenerationMillis(_generation) + " ms, speedup "
+				       + (float)engine.getSpeedup(_generation) + " on " + threads + " threads of "
+				       + Runtime.getRuntime().availableProcessors() + " cores");
+		}
+
+		public void evolutionEnded(EvolutionEngine _e)
+		{
+		    if (_e.getFullNet() != null)
+			System.out.println("Fully connected: SSE " + _e.getFullNet().getSSE(_e.dS.getSample(c.getValidSize())));
+		}
+	    });
+	engine.run();
+	engine.printTable(System.out);
+	if (engine.getCache() != null)
+	    System.out.println("Fitness cache: " + engine.getCache());
+
+	System.out.println("Completed in " + (System.currentTimeMillis() - startTime) + " milliseconds.");
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * Hears about the progress of an EvolutionEngine.
+ * The calls are made on the thread running the engine.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+public interface EvolutionListener
+{
+    /**
+     * Called at the end of each generation, once its networks have been evaluated
+     * and before they are bred.
+     * @param _generation The generation
+     * @param _ranked The networks of the generation, best first; the others are in no order
+     */
+    public void generationEnded(int _generation, NeuralNetwork[] _ranked);
+
+    /**
+     * Called when the run has finished, after the fully connected network has been trained if there is one.
+     * @param _e The engine, from which the results can be had
+     */
+    public void evolutionEnded(EvolutionEngine _e);
+}
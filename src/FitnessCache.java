@@ -0,0 +1,190 @@
+/**
+ * Remembers the fitness of genomes that have been trained, so that a genome met again
+ * is not trained again.
+ * An entry is found by the genome's fingerprint and a string of the training settings,
+ * and keeps the validation SSE and the trained weights of the network.
+ * The genome is kept too and compared on a hit, so two genomes with the same fingerprint are never confused.
+ * The cache holds a bounded number of entries; when it is full,
+ * the entry used least recently (LRU) or the entry put in first (FIFO) is dropped.
+ * The numbers of hits and misses are counted.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.util.*;
+
+public class FitnessCache
+{
+    /**
+     * Which entry to drop when the cache is full.
+     */
+    public enum Eviction
+    {
+	LRU, FIFO
+    }
+
+    /**
+     * What is kept about a trained genome.
+     */
+    public static class Entry
+    {
+	private final Genome genome;
+	private final double[] weights;
+	private final double sSE;
+
+	private Entry(NeuralNetwork _n)
+	{
+	    genome = _n.getGenome();
+	    weights = new double[_n.getNumWeights()];
+	    for (int i = 0; i < weights.length; i++)
+		{
+		    weights[i] = _n.getWeight(i);
+		}
+	    sSE = _n.getCachedSSE();
+	}
+
+	/**
+	 * Gives a network the trained weights and validation SSE of this entry.
+	 * @param _n A network made from an equal genome
+	 */
+	public void restore(NeuralNetwork _n)
+	{
+	    for (int i = 0; i < weights.length; i++)
+		{
+		    _n.setWeight(i, weights[i]);
+		}
+	    _n.setCachedSSE(sSE);
+	}
+
+	/**
+	 * @return The validation SSE
+	 */
+	public double getSSE()
+	{
+	    return sSE;
+	}
+    }
+
+    /**
+     * The key of an entry.
+     */
+    private static class Key
+    {
+	final long fingerprint;
+	final String settings;
+
+	Key(Genome _g, String _s)
+	{
+	    fingerprint = _g.getFingerprint();
+	    settings = _s;
+	}
+
+	public boolean equals(Object _o)
+	{
+	    return (_o instanceof Key) && (((Key)_o).fingerprint == fingerprint) && ((Key)_o).settings.equals(settings);
+	}
+
+	public int hashCode()
+	{
+	    return (int)(fingerprint ^ (fingerprint >>> 32)) ^ settings.hashCode();
+	}
+    }
+
+    private final int capacity;
+    private final Eviction eviction;
+    private final LinkedHashMap<Key, Entry> entries;
+    private long hits, misses;
+
+    /**
+     * Creates a new, empty FitnessCache.
+     * @param _capacity The most entries to keep
+     * @param _e Which entry to drop when the cache is full
+     */
+    public FitnessCache(int _capacity, Eviction _e)
+    {
+	if (_capacity < 1)
+	    throw new IllegalArgumentException("The cache must hold at least one entry");
+
+	capacity = _capacity;
+	eviction = _e;
+
+	// A LinkedHashMap in access order drops the least recently used entry, in insertion order the first put
+	entries = new LinkedHashMap<Key, Entry>(16, 0.75f, _e == Eviction.LRU)
+	    {
+		protected boolean removeEldestEntry(Map.Entry<Key, FitnessCache.Entry> _eldest)
+		{
+		    return size() > capacity;
+		}
+	    };
+    }
+
+    /**
+     * Looks for a genome that has been trained with the same settings, counting a hit or a miss.
+     * @param _g The genome
+     * @param _settings The training settings
+     * @return The entry, or null
+     */
+    public synchronized Entry get(Genome _g, String _settings)
+    {
+	Entry e = entries.get(new Key(_g, _settings));
+
+	if ((e != null) && e.genome.equals(_g))
+	    {
+		hits++;
+		return e;
+	    }
+
+	misses++;
+	return null;
+    }
+
+    /**
+     * Counts a hit that was found without the cache, as for a genome met twice in one generation.
+     */
+    public synchronized void countHit()
+    {
+	hits++;
+    }
+
+    /**
+     * Keeps the fitness of a network that has been trained and validated.
+     * @param _n The network
+     * @param _settings The settings it was trained with
+     */
+    public synchronized void put(NeuralNetwork _n, String _settings)
+    {
+	entries.put(new Key(_n.getGenome(), _settings), new Entry(_n));
+    }
+
+    /**
+     * @return The number of lookups that found an entry
+     */
+    public synchronized long getHits()
+    {
+	return hits;
+    }
+
+    /**
+     * @return The number of lookups that did not
+     */
+    public synchronized long getMisses()
+    {
+	return misses;
+    }
+
+    /**
+     * @return The number of entries
+     */
+    public synchronized int size()
+    {
+	return entries.size();
+    }
+
+    /**
+     * @return The counts and the size, as a line
+     */
+    public synchronized String toString()
+    {
+	return "hits " + hits + " misses " + misses + " entries " + entries.size() + " of " + capacity + " (" + eviction + ")";
+    }
+}
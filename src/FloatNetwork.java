@@ -0,0 +1,481 @@
+/**
+ * A Network that keeps its weights and activations as floats.
+ * It has the same layout of links as Network and trains with the same rule, through the same Kernels,
+ * but reads and writes half as many bytes.
+ * Its scratch arrays come from the FloatWorkspace of the calling thread.
+ * Tuples still hold doubles; their inputs are rounded to floats as they come in.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.io.*;
+import java.util.*;
+
+public class FloatNetwork implements NeuralNetwork
+{
+    // The bounds used by adjustWeight to stop the weights getting extreme values
+    private static final float WEIGHT_LIMIT = 100000f;
+
+    /**
+     * The instance fields.
+     */
+    private Genome genome;
+    private int generation;
+    private float[] weights; // The weights of the links
+    private long[] activity; // The activity of the links, one bit per link
+    private int[] layerStarts; // The index of the first link leading into each hidden layer and the output layer
+    private double learningRate, sumSqError;
+    private Activation activation; // How the hidden neurons calculate the sigmoid
+    private EarlyStopping earlyStopping; // When to stop training early, null to run every epoch
+    private EvaluationSchedule evaluationSchedule; // When to test while training, null to test in full every epoch
+    private Optimizer optimizer; // Turns the back propagation steps into changes to the weights, null for plain steps
+    private transient Checkpoint checkpoint; // Where training is saved, null for nowhere
+
+    /**
+     * Creates a new FloatNetwork with random weights between 1.0 and -1.0.
+     * @param _g The Genome.
+     * @param _generation The generation in which this Network occurs.
+     * @param _lR The learning rate
+     */
+    public FloatNetwork(Genome _g, int _generation, double _lR)
+    {
+	genome = _g;
+	generation = _generation;
+	learningRate = _lR;
+	activation = Activation.EXACT;
+
+	weights = new float[genome.getBinStringLength()];
+	activity = new long[(weights.length + 63) >>> 6];
+
+	for (int i = 0; i < weights.length; i++)
+	    {
+		weights[i] = (float)((Math.random() * 2.0) - 1.0);
+		setActivity(i, genome.getBit(i));
+	    }
+
+	layerStarts = new int[genome.getHiddenLayers() + 1];
+	layerStarts[0] = 0;
+	for (int i = 1; i <= genome.getHiddenLayers(); i++)
+	    {
+		layerStarts[i] = layerStarts[i - 1] + (getFanIn(i - 1) * genome.getNeuronsInHiddenLayer());
+	    }
+    }
+
+    /**
+     * Creates a FloatNetwork with the same genome, settings and (rounded) weights as another network.
+     * @param _n The network to copy
+     * @param _generation The generation in which this Network occurs.
+     */
+    public FloatNetwork(NeuralNetwork _n, int _generation)
+    {
+	this(_n.getGenome(), _generation, _n.getLearningRate());
+	activation = _n.getActivation();
+
+	for (int i = 0; i < weights.length; i++)
+	    {
+		weights[i] = (float)_n.getWeight(i);
+		setActivity(i, _n.isActive(i));
+	    }
+    }
+
+    public Genome getGenome()
+    {
+	return genome;
+    }
+
+    public int getNumWeights()
+    {
+	return weights.length;
+    }
+
+    public double getWeight(int _i)
+    {
+	return weights[_i];
+    }
+
+    public void setWeight(int _i, double _w)
+    {
+	weights[_i] = (float)_w;
+    }
+
+    public boolean isActive(int _i)
+    {
+	return (activity[_i >>> 6] & (1L << _i)) != 0;
+    }
+
+    public void setActivity(int _i, boolean _a)
+    {
+	if (_a)
+	    activity[_i >>> 6] |= (1L << _i);
+	else
+	    activity[_i >>> 6] &= ~(1L << _i);
+    }
+
+    public void inheritWeights(NeuralNetwork _a, NeuralNetwork _b, boolean[] _fromA)
+    {
+	NeuralNetwork parent;
+
+	for (int i = 0; i < _fromA.length; i++)
+	    {
+		parent = _fromA[i] ? _a : _b;
+		if (parent.isActive(i))
+		    setWeight(i, parent.getWeight(i));
+	    }
+    }
+
+    public double getPercentActWeights()
+    {
+	double w = 0;
+
+	for (int i = 0; i < activity.length; i++)
+	    {
+		w += Long.bitCount(activity[i]);
+	    }
+
+	return w / weights.length;
+    }
+
+    /**
+     * Adjusts the weight of the _ith Link by _w, keeping it within bounds.
+     * @param _i The index of the weight to change.
+     * @param _w The change for weight _i.
+     */
+    private void adjustWeight(int _i, float _w)
+    {
+	float w = weights[_i] + _w;
+
+	if (w > WEIGHT_LIMIT)
+	    w = WEIGHT_LIMIT;
+	else if (w < -WEIGHT_LIMIT)
+	    w = -WEIGHT_LIMIT;
+
+	weights[_i] = w;
+    }
+
+    /**
+     * Changes a weight by a back propagation step, through the Optimizer if there is one.
+     * @param _i The index of the weight
+     * @param _s The plain step for weight _i
+     * @param _o The update being made, for the Optimizer
+     */
+    private void step(int _i, float _s, Optimizer.Step _o)
+    {
+	if (optimizer == null)
+	    adjustWeight(_i, _s);
+	else
+	    adjustWeight(_i, (float)optimizer.getChange(_i, _s, _o));
+    }
+
+    public double getLearningRate()
+    {
+	return learningRate;
+    }
+
+    public void setLearningRate(double _lR)
+    {
+	learningRate = _lR;
+    }
+
+    public Activation getActivation()
+    {
+	return activation;
+    }
+
+    public void setActivation(Activation _a)
+    {
+	activation = _a;
+    }
+
+    public void setEarlyStopping(EarlyStopping _s)
+    {
+	earlyStopping = _s;
+    }
+
+    public EarlyStopping getEarlyStopping()
+    {
+	return earlyStopping;
+    }
+
+    public void setEvaluationSchedule(EvaluationSchedule _s)
+    {
+	evaluationSchedule = _s;
+    }
+
+    public EvaluationSchedule getEvaluationSchedule()
+    {
+	return evaluationSchedule;
+    }
+
+    public void setOptimizer(Optimizer _o)
+    {
+	optimizer = _o;
+    }
+
+    public Optimizer getOptimizer()
+    {
+	return optimizer;
+    }
+
+    public void setCheckpoint(Checkpoint _c)
+    {
+	checkpoint = _c;
+    }
+
+    public Checkpoint getCheckpoint()
+    {
+	return checkpoint;
+    }
+
+    /**
+     * @param _l The layer (hiddenLayers for the output layer)
+     * @return The number of neurons in the layer before _l
+     */
+    private int getFanIn(int _l)
+    {
+	if (_l == 0)
+	    return genome.getInputs();
+	else
+	    return genome.getNeuronsInHiddenLayer();
+    }
+
+    /**
+     * @param _l The layer that the link leads into (hiddenLayers for the output layer)
+     * @param _n The neuron in layer _l
+     * @param _f The neuron in the previous layer
+     * @return The index of the link in the array of weights
+     */
+    private int getLinkIndex(int _l, int _n, int _f)
+    {
+	return layerStarts[_l] + (_n * getFanIn(_l)) + _f;
+    }
+
+    /**
+     * Runs a Tuple forwards through the network, as Network does, in single precision.
+     * @param _t The Tuple
+     * @param _in For the outputs of the input neurons
+     * @param _hidden For the outputs of the hidden neurons
+     * @param _out For the outputs of the output neurons
+     */
+    private void propagate(Tuple _t, float[] _in, float[][] _hidden, float[] _out)
+    {
+	int nH = genome.getNeuronsInHiddenLayer();
+	int nL = genome.getHiddenLayers();
+
+	for (int cIN = 0; cIN < _in.length; cIN++)
+	    {
+		_in[cIN] = (float)_t.getInput(cIN);
+	    }
+
+	for (int cHN = 0; cHN < nH; cHN++)
+	    {
+		_hidden[0][cHN] = (float)activation.getSigmoid(Kernels.maskedDot(weights, activity, getLinkIndex(0, cHN, 0), _in, _in.length));
+	    }
+
+	for (int cHL = 1; cHL < nL; cHL++)
+	    {
+		for (int cHN = 0; cHN < nH; cHN++)
+		    {
+			_hidden[cHL][cHN] = (float)activation.getSigmoid(Kernels.maskedDot(weights, activity, getLinkIndex(cHL, cHN, 0), _hidden[cHL - 1], nH));
+		    }
+	    }
+
+	for (int cON = 0; cON < _out.length; cON++)
+	    {
+		_out[cON] = Kernels.maskedDot(weights, activity, getLinkIndex(nL, cON, 0), _hidden[nL - 1], nH);
+	    }
+    }
+
+    public double[] getOutput(Tuple _t)
+    {
+	FloatWorkspace w = FloatWorkspace.get(genome);
+	double[] o = new double[genome.getOutputs()];
+
+	propagate(_t, w.in, w.hidden, w.out);
+
+	for (int i = 0; i < o.length; i++)
+	    {
+		o[i] = w.out[i];
+	    }
+
+	return o;
+    }
+
+    public double[] getError(Tuple _t)
+    {
+	double[] e = getOutput(_t);
+
+	for (int i = 0; i < e.length; i++)
+	    {
+		e[i] = _t.getOutput(i) - e[i];
+	    }
+
+	return e;
+    }
+
+    /**
+     * Calculates the average sum of squared errors of the network for a given array of Tuples.
+     * The outputs are found in single precision; the squared errors are added up as doubles.
+     * @param _v The set of Tuples
+     * @return The SSE
+     */
+    public double getSSE(Tuple[] _v)
+    {
+	FloatWorkspace w = FloatWorkspace.get(genome);
+	double sSE = 0.0;
+	double e;
+
+	for (int i = 0; i < _v.length; i++)
+	    {
+		propagate(_v[i], w.in, w.hidden, w.out);
+
+		for (int j = 0; j < w.out.length; j++)
+		    {
+			e = _v[i].getOutput(j) - w.out[j];
+			sSE += e * e;
+		    }
+	    }
+
+	return sSE / _v.length;
+    }
+
+    public void cacheSSE(Tuple[] _v)
+    {
+	sumSqError = getSSE(_v);
+    }
+
+    public double getCachedSSE()
+    {
+	return sumSqError;
+    }
+
+    public void setCachedSSE(double _sSE)
+    {
+	sumSqError = _sSE;
+    }
+
+    /**
+     * Trains the network with the same rule as <code>Network.train</code>, in single precision.
+     * @param _tr The training set.
+     * @param _te The test set.
+     * @param _e The number of epochs to train for.
+     * @return a NetworkPerformance object to show how well the Network trained
+     */
+    public NetworkPerformance train(Tuple[] _tr, Tuple[] _te, int _e)
+    {
+	return train(_tr, new TrainingRecord(this, _te, _e));
+    }
+
+    public NetworkPerformance resume(Tuple[] _tr, Tuple[] _te) throws IOException
+    {
+	return train(_tr, TrainingRecord.resume(this, _te));
+    }
+
+    /**
+     * Runs one example forwards through the network and its errors back, stepping each weight,
+     * as <code>Network.backPropagate</code> does in double precision.
+     * @param _t The example
+     * @param _w The scratch space to use
+     * @param _o The update, for the Optimizer
+     */
+    private void backPropagate(Tuple _t, FloatWorkspace _w, Optimizer.Step _o)
+    {
+	int nH = genome.getNeuronsInHiddenLayer();
+	int nL = genome.getHiddenLayers();
+	int nO = genome.getOutputs();
+	float lR = (float)learningRate;
+	float[] deltas, previous;
+	float delta;
+	int row;
+
+	propagate(_t, _w.in, _w.hidden, _w.out);
+
+	for (int cON = 0; cON < nO; cON++)
+	    {
+		_w.outDeltas[cON] = (float)(_t.getOutput(cON) - _w.out[cON]);
+	    }
+
+	// Back a layer at a time, as in Network.backPropagate
+	for (int cL = nL; cL >= 0; cL--)
+	    {
+		deltas = (cL == nL) ? _w.outDeltas : _w.hiddenDeltas[cL];
+		previous = (cL == 0) ? _w.in : _w.hidden[cL - 1];
+
+		if (cL > 0)
+		    {
+			Arrays.fill(_w.hiddenDeltas[cL - 1], 0f);
+			for (int cN = 0; cN < deltas.length; cN++)
+			    {
+				Kernels.maskedAxpy(deltas[cN], weights, activity, getLinkIndex(cL, cN, 0), _w.hiddenDeltas[cL - 1], nH);
+			    }
+			Kernels.sigmoidDerivative(_w.hiddenDeltas[cL - 1], previous, nH);
+		    }
+
+		for (int cN = 0; cN < deltas.length; cN++)
+		    {
+			row = getLinkIndex(cL, cN, 0);
+			delta = deltas[cN];
+			for (int fN = 0; fN < previous.length; fN++)
+			    {
+				if (isActive(row + fN))
+				    step(row + fN, lR * delta * previous[fN], _o);
+			    }
+		    }
+	    }
+    }
+
+    /**
+     * Trains the network from the first epoch of a record to its last.
+     * @param _tr The training set.
+     * @param _record Tests the network at the end of each epoch
+     * @return a NetworkPerformance object to show how well the Network trained
+     */
+    private NetworkPerformance train(Tuple[] _tr, TrainingRecord _record)
+    {
+	FloatWorkspace w = FloatWorkspace.get(genome);
+	Optimizer.Step update = new Optimizer.Step();
+
+	if (optimizer != null)
+	    optimizer.start(weights.length);
+
+	for (int currentEpoch = _record.getFirstEpoch(); currentEpoch < _record.getEpochs(); currentEpoch++)
+	    {
+		for (int currentExample = 0; currentExample < _tr.length; currentExample++)
+		    {
+			if (optimizer != null)
+			    optimizer.beginStep(learningRate, update);
+
+			backPropagate(_tr[currentExample], w, update);
+		    }
+
+		if (_record.endEpoch(currentEpoch))
+		    break;
+	    }
+
+	return _record.getPerformance(generation, _tr.length, learningRate);
+    }
+
+    /**
+     * @return Copies of the weights as Links so that the network can be drawn
+     */
+    private Link[] getLinks()
+    {
+	Link[] links = new Link[weights.length];
+
+	for (int i = 0; i < links.length; i++)
+	    {
+		links[i] = new Link(weights[i], isActive(i));
+	    }
+
+	return links;
+    }
+
+    public NetworkFrame getDiagram(String _t)
+    {
+	return new NetworkFrame(_t, genome, getLinks());
+    }
+
+    public NetworkFrame getDiagram()
+    {
+	return new NetworkFrame(("Float network from generation " + generation), genome, getLinks());
+    }
+}
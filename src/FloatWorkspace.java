@@ -0,0 +1,74 @@
+/**
+ * The scratch arrays that a FloatNetwork needs to run and train, as Workspace is for a Network.
+ * A FloatWorkspace is sized from the dimensions in a Genome
+ * and can be used with any FloatNetwork of the same shape, one call at a time.
+ * The FloatNetwork methods borrow the FloatWorkspace of the calling thread from <code>get</code>.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+public class FloatWorkspace
+{
+    // Each thread keeps the last FloatWorkspace it was lent
+    private static final ThreadLocal<FloatWorkspace> local = new ThreadLocal<FloatWorkspace>();
+
+    // The shape of the networks this FloatWorkspace is for
+    private final int inputs, neuronsInHiddenLayer, hiddenLayers, outputs;
+
+    // The scratch arrays
+    final float[] in; // The outputs of the input neurons
+    final float[][] hidden; // The outputs of the hidden neurons
+    final float[] out; // The outputs of the output neurons
+    final float[] outDeltas; // The delta values of the output neurons
+    final float[][] hiddenDeltas; // The delta values of the hidden neurons
+
+    /**
+     * Creates a new FloatWorkspace for networks with the dimensions of a Genome.
+     * @param _g The Genome
+     */
+    public FloatWorkspace(Genome _g)
+    {
+	inputs = _g.getInputs();
+	neuronsInHiddenLayer = _g.getNeuronsInHiddenLayer();
+	hiddenLayers = _g.getHiddenLayers();
+	outputs = _g.getOutputs();
+
+	in = new float[inputs];
+	hidden = new float[hiddenLayers][neuronsInHiddenLayer];
+	out = new float[outputs];
+	outDeltas = new float[outputs];
+	hiddenDeltas = new float[hiddenLayers][neuronsInHiddenLayer];
+    }
+
+    /**
+     * Says whether this FloatWorkspace is the right size for the networks of a Genome.
+     * @param _g The Genome
+     * @return Whether this FloatWorkspace can be used with _g
+     */
+    public boolean fits(Genome _g)
+    {
+	return (inputs == _g.getInputs())
+	    && (neuronsInHiddenLayer == _g.getNeuronsInHiddenLayer())
+	    && (hiddenLayers == _g.getHiddenLayers())
+	    && (outputs == _g.getOutputs());
+    }
+
+    /**
+     * Returns the FloatWorkspace of the calling thread, making a new one if the last one does not fit.
+     * The FloatWorkspace must not be used by two calls at once, so it should not be held on to.
+     * @param _g The Genome of the network that needs the FloatWorkspace
+     * @return A FloatWorkspace that fits _g
+     */
+    public static FloatWorkspace get(Genome _g)
+    {
+	FloatWorkspace w = local.get();
+
+	if ((w == null) || !w.fits(_g))
+	    {
+		w = new FloatWorkspace(_g);
+		local.set(w);
+	    }
+
+	return w;
+    }
+}
@@ -6,17 +6,23 @@
  * the number of hidden layers &
  * the number of output neurons.
  * The mutatable part of the genome is a binary string that encodes the links between the neurons.
+ * A 64 bit fingerprint of the genome is kept up to date as bits change:
+ * it is the exclusive or of a key for the shape and a key for each bit that is set,
+ * so setting or flipping a bit changes it by one exclusive or (Zobrist hashing).
+ * The keys are the same in every JVM.
  * @author Rob Impey
  * @date 30-i-03
  */
 
 import java.io.*;
+import java.util.*;
 
 public class Genome implements Serializable
 {
     // The instance fields
     private final int inputs, neuronsInHiddenLayer, hiddenLayers, outputs;
     private boolean[] binString;
+    private long fingerprint;
     
     /**
      * Creates a new instance of Genome.
@@ -37,11 +43,52 @@ public class Genome implements Serializable
 			       + (neuronsInHiddenLayer * neuronsInHiddenLayer * (hiddenLayers - 1))
 			       + (neuronsInHiddenLayer * outputs)];
 
+	fingerprint = getKey(-1 - (((((inputs * 31) + neuronsInHiddenLayer) * 31) + hiddenLayers) * 31 + outputs));
 	for (int i = 0; i < binString.length; i++)
 	    {	
-		binString[i] = Math.random() > 0.5;
+		setBit(i, Math.random() > 0.5);
 	    }
     }
+
+    /**
+     * Creates a copy of a Genome, with the same shape and binary string.
+     * @param _g The Genome to copy
+     */
+    public Genome(Genome _g)
+    {
+	inputs = _g.inputs;
+	neuronsInHiddenLayer = _g.neuronsInHiddenLayer;
+	hiddenLayers = _g.hiddenLayers;
+	outputs = _g.outputs;
+	binString = _g.binString.clone();
+	fingerprint = _g.fingerprint;
+    }
+
+    /**
+     * Gives the key of a bit for the fingerprint, by the SplitMix64 mixing function,
+     * so that the keys need no table and do not depend on a random seed.
+     * @param _b The index of the bit, or a negative number for the key of a shape
+     * @return The key
+     */
+    private static long getKey(int _b)
+    {
+	long z = (_b + 1L) * 0x9E3779B97F4A7C15L;
+
+	z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+	z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+	return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns a 64 bit hash of the shape and the binary string.
+     * Genomes that are equal have the same fingerprint,
+     * and genomes that differ are very unlikely to.
+     * @return The fingerprint
+     */
+    public long getFingerprint()
+    {
+	return fingerprint;
+    }
     
     /**
      * @return The number of input neurons      
@@ -99,6 +146,8 @@ public class Genome implements Serializable
      */
     public void setBit(int _b, boolean _v)
     {
+	if (binString[_b] != _v)
+	    fingerprint ^= getKey(_b);
 	binString[_b] = _v; 
     }
 
@@ -112,6 +161,33 @@ public class Genome implements Serializable
 	    binString[_b] = false;
 	else
 	    binString[_b] = true;
+	fingerprint ^= getKey(_b);
+    }
+
+    /**
+     * @param _o The object to compare with
+     * @return Whether _o is a genome of the same shape with the same binary string
+     */
+    public boolean equals(Object _o)
+    {
+	if (!(_o instanceof Genome))
+	    return false;
+
+	Genome g = (Genome)_o;
+	return (g.fingerprint == fingerprint)
+	    && (g.inputs == inputs)
+	    && (g.neuronsInHiddenLayer == neuronsInHiddenLayer)
+	    && (g.hiddenLayers == hiddenLayers)
+	    && (g.outputs == outputs)
+	    && Arrays.equals(g.binString, binString);
+    }
+
+    /**
+     * @return A hash code taken from the fingerprint
+     */
+    public int hashCode()
+    {
+	return (int)(fingerprint ^ (fingerprint >>> 32));
     }
 
     /**
@@ -163,15 +239,31 @@ public class Genome implements Serializable
      * @return The child genome
      */
     public Genome uniformCross(Genome _g)
+    {
+	return uniformCross(_g, null);
+    }
+
+    /**
+     * A method for uniform crossover that records where each bit came from,
+     * so that the child's network can inherit the weights of its parents.
+     * @param _g The genome to cross with this genome
+     * @param _fromThis For whether each bit came from this genome rather than _g, or null
+     * @return The child genome
+     */
+    public Genome uniformCross(Genome _g, boolean[] _fromThis)
     {
 	Genome child = new Genome(inputs, neuronsInHiddenLayer, hiddenLayers, outputs);
+	boolean fromThis;
 	
 	for (int i = 0; i < binString.length; i++)
 	    {
-		if (Math.random() > 0.5)
+		fromThis = Math.random() > 0.5;
+		if (fromThis)
 		    child.setBit(i, binString[i]);
 		else
 		    child.setBit(i, _g.getBit(i));
+		if (_fromThis != null)
+		    _fromThis[i] = fromThis;
 	    }
 	return child;	
     }
@@ -0,0 +1,168 @@
+/**
+ * A client for InferenceServer, and a main method that loads it from several threads.
+ * Running the main method with no arguments starts a server on the loopback address with a random network,
+ * so the batching can be tried on one machine with nothing saved.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.io.*;
+import java.net.*;
+
+public class InferenceClient
+{
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * Connects to a server on this machine.
+     * @param _port The port of the server
+     * @throws IOException if the server cannot be reached
+     */
+    public InferenceClient(int _port) throws IOException
+    {
+	socket = new Socket(InetAddress.getLoopbackAddress(), _port);
+	socket.setTcpNoDelay(true);
+	in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+	out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Asks the server for the outputs of a network.
+     * @param _model The index of the network on the server
+     * @param _inputs The inputs
+     * @return The outputs
+     * @throws IOException if the server cannot serve the request
+     */
+    public double[] getOutput(int _model, double[] _inputs) throws IOException
+    {
+	out.writeInt(_model);
+	out.writeInt(_inputs.length);
+	for (int i = 0; i < _inputs.length; i++)
+	    {
+		out.writeDouble(_inputs[i]);
+	    }
+	out.flush();
+
+	int n = in.readInt();
+	if (n < 0)
+	    throw new IOException(in.readUTF());
+
+	double[] o = new double[n];
+	for (int i = 0; i < n; i++)
+	    {
+		o[i] = in.readDouble();
+	    }
+
+	return o;
+    }
+
+    /**
+     * Asks the server for its statistics.
+     * @return A line of statistics
+     * @throws IOException if the server cannot be reached
+     */
+    public String getStatistics() throws IOException
+    {
+	out.writeInt(InferenceServer.STATS_REQUEST);
+	out.flush();
+
+	return in.readUTF();
+    }
+
+    /**
+     * Disconnects from the server.
+     */
+    public void close() throws IOException
+    {
+	socket.close();
+    }
+
+    /**
+     * Sends requests to a server from several threads and checks the answers.
+     * Usage: InferenceClient [port threads requestsPerThread]
+     * With no port, a server is started here with a random 3 by 20 network.
+     */
+    public static void main(String[] args) throws Exception
+    {
+	final int threads = (args.length > 1) ? Integer.parseInt(args[1]) : 8;
+	final int perThread = (args.length > 2) ? Integer.parseInt(args[2]) : 2000;
+	final Network local = new Network(new Genome(3, 20, 3, 1), 0, 0.01);
+	InferenceServer server = null;
+	final int port;
+
+	if (args.length > 0)
+	    {
+		port = Integer.parseInt(args[0]);
+	    }
+	else
+	    {
+		server = new InferenceServer(new Network[] {local}, 32, 200);
+		port = server.start(0);
+	    }
+
+	final DataSet ds = new SecondYearData();
+	final int[] mismatches = new int[1];
+	Thread[] workers = new Thread[threads];
+	long start = System.nanoTime();
+
+	for (int t = 0; t < threads; t++)
+	    {
+		workers[t] = new Thread(new Runnable()
+		    {
+			public void run()
+			{
+			    try
+				{
+				    InferenceClient c = new InferenceClient(port);
+				    Tuple x;
+				    double[] in = new double[3];
+				    double[] o;
+				    for (int i = 0; i < perThread; i++)
+					{
+					    x = ds.getTuple(i % ds.getLength());
+					    for (int j = 0; j < in.length; j++)
+						{
+						    in[j] = x.getInput(j);
+						}
+					    o = c.getOutput(0, in);
+
+					    // Only meaningful when the server is running our own network
+					    synchronized (mismatches)
+						{
+						    if (Math.abs(o[0] - local.getOutput(x)[0]) > 1e-9)
+							mismatches[0]++;
+						}
+					}
+				    c.close();
+				}
+			    catch (IOException e)
+				{
+				    System.out.println(e);
+				}
+			}
+		    });
+		workers[t].start();
+	    }
+
+	for (int t = 0; t < threads; t++)
+	    {
+		workers[t].join();
+	    }
+
+	double seconds = (System.nanoTime() - start) / 1e9;
+	System.out.println("" + (threads * perThread) + " requests in " + seconds + " s, "
+			   + (threads * perThread / seconds) + " per second");
+
+	InferenceClient c = new InferenceClient(port);
+	System.out.println(c.getStatistics());
+	c.close();
+
+	if (server != null)
+	    {
+		System.out.println("Mismatched outputs: " + mismatches[0]);
+		server.stop();
+	    }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * A frozen copy of a Network for inference.
+ * A Network mixes the state used for training with the code for inference,
+ * so it cannot be shared between threads while it is still being trained.
+ * An InferenceModel copies the weights of the active links once, in the time it takes to read them,
+ * and never changes after that.
+ * Its fields are final, so once it is built it can be handed to any number of threads
+ * without locks, and a new one can be swapped in through an AtomicReference or a volatile field
+ * while the old one is still being read.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.util.concurrent.atomic.*;
+
+public final class InferenceModel
+{
+    private final Genome genome; // Only the dimensions are used, and they do not change
+    private final SparseNetwork compiled; // Never updated, so only ever read
+    private final double cachedSSE;
+
+    /**
+     * Takes a snapshot of a Network, or a FloatNetwork.
+     * @param _n The network
+     */
+    public InferenceModel(NeuralNetwork _n)
+    {
+	genome = _n.getGenome();
+	compiled = new SparseNetwork(_n);
+	cachedSSE = _n.getCachedSSE();
+    }
+
+    /**
+     * @return The number of inputs that the model takes
+     */
+    public int getInputs()
+    {
+	return genome.getInputs();
+    }
+
+    /**
+     * @return The number of outputs that the model gives
+     */
+    public int getOutputs()
+    {
+	return genome.getOutputs();
+    }
+
+    /**
+     * @return The SSE that the Network had cached when the snapshot was taken
+     */
+    public double getCachedSSE()
+    {
+	return cachedSSE;
+    }
+
+    /**
+     * Returns the outputs of the model for some inputs.
+     * The scratch space comes from the Workspace of the calling thread.
+     * @param _in The inputs
+     * @return The outputs
+     */
+    public double[] getOutput(double[] _in)
+    {
+	double[] out = new double[genome.getOutputs()];
+
+	getOutput(_in, Workspace.get(genome), out);
+
+	return out;
+    }
+
+    /**
+     * Finds the outputs of the model for some inputs without allocating.
+     * @param _in The inputs
+     * @param _w The scratch space to use
+     * @param _out For the outputs
+     */
+    public void getOutput(double[] _in, Workspace _w, double[] _out)
+    {
+	compiled.getOutput(_in, _w.hidden, _out);
+    }
+
+    /**
+     * Finds the outputs of the model for an array of Tuples, in blocks as <code>Network.getOutputs</code> does.
+     * @param _v The Tuples
+     * @param _w The scratch space to use
+     * @param _out For the outputs; _out[i] receives the output for Tuple _v[i]
+     */
+    public void getOutputs(Tuple[] _v, Workspace _w, double[][] _out)
+    {
+	double[] o;
+	int rows;
+
+	for (int first = 0; first < _v.length; first += SparseNetwork.BLOCK_SIZE)
+	    {
+		rows = Math.min(SparseNetwork.BLOCK_SIZE, _v.length - first);
+		o = compiled.getOutputs(_v, first, rows, _w.blockA, _w.blockB);
+
+		for (int r = 0; r < rows; r++)
+		    {
+			for (int cON = 0; cON < genome.getOutputs(); cON++)
+			    {
+				_out[first + r][cON] = o[(cON * rows) + r];
+			    }
+		    }
+	    }
+    }
+
+    /**
+     * Finds the outputs of the model for an array of Tuples,
+     * using the Workspace of the calling thread.
+     * @param _v The Tuples
+     * @param _out For the outputs; _out[i] receives the output for Tuple _v[i]
+     */
+    public void getOutputs(Tuple[] _v, double[][] _out)
+    {
+	getOutputs(_v, Workspace.get(genome), _out);
+    }
+
+    /**
+     * For testing.
+     * Trains a network on one thread while others read snapshots of it,
+     * a new snapshot being swapped in after every epoch.
+     */
+    public static void main(String[] args) throws Exception
+    {
+	final DataSet ds = new SecondYearData();
+	final Tuple[] tr = ds.getSample(200);
+	final Tuple[] te = ds.getSample(200);
+	final Network n = new Network(new Genome(3, 20, 3, 1), 0, 0.01);
+	final AtomicReference<InferenceModel> current = new AtomicReference<InferenceModel>(n.snapshot());
+	final long[] reads = new long[4];
+	final AtomicBoolean training = new AtomicBoolean(true);
+	Thread[] readers = new Thread[reads.length];
+
+	for (int t = 0; t < readers.length; t++)
+	    {
+		final int id = t;
+		readers[t] = new Thread(new Runnable()
+		    {
+			public void run()
+			{
+			    double[][] out = new double[te.length][1];
+			    while (training.get())
+				{
+				    current.get().getOutputs(te, out);
+				    reads[id]++;
+				}
+			}
+		    });
+		readers[t].start();
+	    }
+
+	for (int e = 0; e < 50; e++)
+	    {
+		n.train(tr, te, 1);
+		current.set(n.snapshot());
+	    }
+	training.set(false);
+
+	long total = 0;
+	for (int t = 0; t < readers.length; t++)
+	    {
+		readers[t].join();
+		total += reads[t];
+	    }
+
+	// The last snapshot gives the same outputs as the network
+	double[] in = new double[3];
+	double diff = 0.0;
+	for (int i = 0; i < te.length; i++)
+	    {
+		for (int j = 0; j < in.length; j++)
+		    {
+			in[j] = te[i].getInput(j);
+		    }
+		diff = Math.max(diff, Math.abs(current.get().getOutput(in)[0] - n.getOutput(te[i])[0]));
+	    }
+
+	System.out.println("Batches read during training: " + total);
+	System.out.println("Largest difference from the network: " + diff);
+    }
+}
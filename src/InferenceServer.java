@@ -0,0 +1,446 @@
+/**
+ * A server that runs saved networks for other processes on the same machine.
+ * The networks are the .net files saved by WorldFrame.
+ * Clients connect over TCP and send requests on a simple binary protocol:
+ * <ul>
+ * <li>a prediction is an int (the index of the network), an int n and then n doubles (the inputs).
+ *     The reply is an int m and then m doubles (the outputs),
+ *     or -1 and a UTF string if the request could not be served.
+ *     A request with a negative n is answered with -1 and the connection closed.</li>
+ * <li>a request with network index -1 and no further data asks for the statistics,
+ *     which come back as a UTF string.</li>
+ * </ul>
+ * Each network has its own batching thread.
+ * Requests that arrive together are gathered into a micro-batch, up to a maximum size
+ * or until the oldest request has waited the maximum time, and run through the network
+ * in one call to <code>InferenceModel.getOutputs</code>.
+ * The server runs snapshots of the networks rather than the networks themselves,
+ * so a network can go on training and new snapshots be swapped in with <code>setModel</code>.
+ * The batching threads read the current snapshot without locking.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class InferenceServer
+{
+    // The network index that asks for the statistics
+    public static final int STATS_REQUEST = -1;
+
+    private final AtomicReferenceArray<InferenceModel> models;
+    private final Batcher[] batchers;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final LatencyRecorder latencies = new LatencyRecorder(10000);
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final long startTime = System.nanoTime();
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    /**
+     * Creates a new InferenceServer.
+     * @param _n The networks to serve
+     * @param _maxBatch The most requests to put in one batch
+     * @param _maxWaitMicros The longest time in microseconds that a request waits for others to join its batch
+     */
+    public InferenceServer(NeuralNetwork[] _n, int _maxBatch, long _maxWaitMicros)
+    {
+	models = new AtomicReferenceArray<InferenceModel>(_n.length);
+	maxBatch = _maxBatch;
+	maxWaitNanos = _maxWaitMicros * 1000L;
+	batchers = new Batcher[_n.length];
+
+	for (int i = 0; i < _n.length; i++)
+	    {
+		models.set(i, new InferenceModel(_n[i]));
+		batchers[i] = new Batcher(i);
+	    }
+    }
+
+    /**
+     * Replaces the model served at an index, for example with a new snapshot of a network still being trained.
+     * Batches already running finish with the old model.
+     * @param _i The index of the model
+     * @param _m The new model, which must take and give as many values as the old one
+     */
+    public void setModel(int _i, InferenceModel _m)
+    {
+	InferenceModel old = models.get(_i);
+
+	if ((_m.getInputs() != old.getInputs()) || (_m.getOutputs() != old.getOutputs()))
+	    throw new IllegalArgumentException("Model " + _i + " takes " + old.getInputs()
+					       + " inputs and gives " + old.getOutputs() + " outputs");
+
+	models.set(_i, _m);
+    }
+
+    /**
+     * A request waiting to be served.
+     */
+    private static class Request
+    {
+	final double[] inputs;
+	final long arrival = System.nanoTime();
+	final CountDownLatch done = new CountDownLatch(1);
+	double[] outputs;
+	String error; // Why the request could not be served, or null
+
+	Request(double[] _i)
+	{
+	    inputs = _i;
+	}
+    }
+
+    /**
+     * Gathers the requests for one network into batches and runs them.
+     */
+    private class Batcher extends Thread
+    {
+	private final int index;
+	private final BlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+
+	Batcher(int _i)
+	{
+	    index = _i;
+	    setDaemon(true);
+	}
+
+	void submit(Request _r)
+	{
+	    queue.add(_r);
+	}
+
+	public void run()
+	{
+	    List<Request> batch = new ArrayList<Request>(maxBatch);
+	    Tuple[] tuples = new Tuple[maxBatch];
+	    double[][] out = new double[maxBatch][models.get(index).getOutputs()];
+	    Request r;
+	    long deadline, left;
+
+	    try
+		{
+		    while (running)
+			{
+			    // Wait for the first request, then for others until the batch is full or time is up
+			    r = queue.poll(100, TimeUnit.MILLISECONDS);
+			    if (r == null)
+				continue;
+
+			    batch.clear();
+			    batch.add(r);
+			    deadline = r.arrival + maxWaitNanos;
+			    queue.drainTo(batch, maxBatch - batch.size());
+			    while (batch.size() < maxBatch)
+				{
+				    left = deadline - System.nanoTime();
+				    if (left <= 0)
+					break;
+				    r = queue.poll(left, TimeUnit.NANOSECONDS);
+				    if (r == null)
+					break;
+				    batch.add(r);
+				    queue.drainTo(batch, maxBatch - batch.size());
+				}
+
+			    for (int i = 0; i < batch.size(); i++)
+				{
+				    tuples[i] = new Tuple(batch.get(i).inputs, out[i]);
+				}
+
+			    // A batch that fails is answered with the error, so its clients do not wait for ever
+			    try
+				{
+				    models.get(index).getOutputs(Arrays.copyOf(tuples, batch.size()), out);
+				    batches.incrementAndGet();
+				    for (int i = 0; i < batch.size(); i++)
+					{
+					    batch.get(i).outputs = out[i].clone();
+					}
+				}
+			    catch (Throwable e)
+				{
+				    for (int i = 0; i < batch.size(); i++)
+					{
+					    batch.get(i).error = "Network " + index + " failed: " + e;
+					}
+				}
+			    for (int i = 0; i < batch.size(); i++)
+				{
+				    batch.get(i).done.countDown();
+				}
+			}
+		}
+	    catch (InterruptedException e)
+		{
+		}
+	}
+    }
+
+    /**
+     * Keeps the latencies of the most recent requests so that percentiles can be found.
+     */
+    private static class LatencyRecorder
+    {
+	private final long[] samples;
+	private long count;
+
+	LatencyRecorder(int _n)
+	{
+	    samples = new long[_n];
+	}
+
+	synchronized void record(long _nanos)
+	{
+	    samples[(int)(count % samples.length)] = _nanos;
+	    count++;
+	}
+
+	/**
+	 * @param _p The percentiles wanted, between 0 and 100
+	 * @return The latencies in microseconds at those percentiles, over the recent requests
+	 */
+	synchronized double[] getPercentiles(double[] _p)
+	{
+	    int n = (int)Math.min(count, samples.length);
+	    long[] sorted = Arrays.copyOf(samples, n);
+	    double[] result = new double[_p.length];
+
+	    Arrays.sort(sorted);
+	    for (int i = 0; i < _p.length; i++)
+		{
+		    if (n > 0)
+			result[i] = sorted[(int)Math.min(n - 1, Math.floor(_p[i] / 100.0 * n))] / 1000.0;
+		}
+
+	    return result;
+	}
+    }
+
+    /**
+     * Starts the batching threads and listens for clients on the loopback address.
+     * @param _port The port to listen on, or 0 for any free port
+     * @return The port being listened on
+     * @throws IOException if the port cannot be opened
+     */
+    public int start(int _port) throws IOException
+    {
+	serverSocket = new ServerSocket(_port, 50, InetAddress.getLoopbackAddress());
+	running = true;
+
+	for (int i = 0; i < batchers.length; i++)
+	    {
+		batchers[i].start();
+	    }
+
+	Thread acceptor = new Thread(new Runnable()
+	    {
+		public void run()
+		{
+		    while (running)
+			{
+			    try
+				{
+				    final Socket s = serverSocket.accept();
+				    connections.execute(new Runnable()
+					{
+					    public void run()
+					    {
+						serve(s);
+					    }
+					});
+				}
+			    catch (IOException e)
+				{
+				}
+			}
+		}
+	    });
+	acceptor.setDaemon(true);
+	acceptor.start();
+
+	return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops listening and stops the batching threads.
+     */
+    public void stop()
+    {
+	running = false;
+	connections.shutdownNow();
+	try
+	    {
+		serverSocket.close();
+	    }
+	catch (IOException e)
+	    {
+	    }
+    }
+
+    /**
+     * Serves the requests of one client until it disconnects.
+     * @param _s The client's socket
+     */
+    private void serve(Socket _s)
+    {
+	try
+	    {
+		_s.setTcpNoDelay(true);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(_s.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(_s.getOutputStream()));
+		int model, n, skipped;
+		long skip;
+		double[] inputs;
+		Request r;
+
+		while (true)
+		    {
+			try
+			    {
+				model = in.readInt();
+			    }
+			catch (EOFException e)
+			    {
+				break;
+			    }
+
+			if (model == STATS_REQUEST)
+			    {
+				out.writeUTF(getStatistics());
+				out.flush();
+				continue;
+			    }
+
+			// Check the request before making room for its inputs
+			n = in.readInt();
+			if ((model < 0) || (model >= models.length()) || (n != models.get(model).getInputs()))
+			    {
+				out.writeInt(-1);
+				if ((model < 0) || (model >= models.length()))
+				    out.writeUTF("No network " + model);
+				else
+				    out.writeUTF("Network " + model + " takes " + models.get(model).getInputs() + " inputs");
+				out.flush();
+
+				// Skip the inputs to stay in step with the client; a negative count cannot be skipped
+				if (n < 0)
+				    break;
+				skip = 8L * n;
+				while (skip > 0)
+				    {
+					skipped = in.skipBytes((int)Math.min(skip, 1 << 20));
+					if (skipped == 0)
+					    {
+						// Wait for more, or fail at the end of the stream
+						in.readByte();
+						skipped = 1;
+					    }
+					skip -= skipped;
+				    }
+				continue;
+			    }
+
+			inputs = new double[n];
+			for (int i = 0; i < n; i++)
+			    {
+				inputs[i] = in.readDouble();
+			    }
+
+			r = new Request(inputs);
+			batchers[model].submit(r);
+			r.done.await();
+			latencies.record(System.nanoTime() - r.arrival);
+			requests.incrementAndGet();
+
+			if (r.error != null)
+			    {
+				out.writeInt(-1);
+				out.writeUTF(r.error);
+			    }
+			else
+			    {
+				out.writeInt(r.outputs.length);
+				for (int i = 0; i < r.outputs.length; i++)
+				    {
+					out.writeDouble(r.outputs[i]);
+				    }
+			    }
+			out.flush();
+		    }
+	    }
+	catch (IOException e)
+	    {
+	    }
+	catch (InterruptedException e)
+	    {
+	    }
+	finally
+	    {
+		try
+		    {
+			_s.close();
+		    }
+		catch (IOException e)
+		    {
+		    }
+	    }
+    }
+
+    /**
+     * Describes the throughput and latency of the server so far.
+     * @return A line of statistics
+     */
+    public String getStatistics()
+    {
+	double seconds = (System.nanoTime() - startTime) / 1e9;
+	double[] p = latencies.getPercentiles(new double[] {50, 90, 99, 99.9});
+	long req = requests.get();
+	long bat = batches.get();
+
+	return "requests " + req
+	    + " batches " + bat
+	    + " mean batch " + ((bat == 0) ? 0.0 : (double)req / bat)
+	    + " throughput " + (req / seconds) + "/s"
+	    + " latency us p50 " + p[0] + " p90 " + p[1] + " p99 " + p[2] + " p99.9 " + p[3];
+    }
+
+    /**
+     * Loads networks and serves them.
+     * Usage: InferenceServer port maxBatch maxWaitMicros file.net [file.net ...]
+     */
+    public static void main(String[] args) throws Exception
+    {
+	if (args.length < 4)
+	    {
+		System.out.println("Usage: InferenceServer port maxBatch maxWaitMicros file.net [file.net ...]");
+		return;
+	    }
+
+	NeuralNetwork[] nets = new NeuralNetwork[args.length - 3];
+	for (int i = 0; i < nets.length; i++)
+	    {
+		ObjectInputStream in = new ObjectInputStream(new FileInputStream(args[i + 3]));
+		nets[i] = (NeuralNetwork)in.readObject();
+		in.close();
+	    }
+
+	InferenceServer server = new InferenceServer(nets, Integer.parseInt(args[1]), Long.parseLong(args[2]));
+	int port = server.start(Integer.parseInt(args[0]));
+	System.out.println("Serving " + nets.length + " networks on port " + port);
+
+	// Print the statistics every ten seconds
+	while (true)
+	    {
+		Thread.sleep(10000);
+		System.out.println(server.getStatistics());
+	    }
+    }
+}
@@ -0,0 +1,377 @@
+/**
+ * Evolves several populations, or islands, at once, each with its own EvolutionEngine on its own thread.
+ * Every migrationInterval generations each island sends copies of its best networks to another,
+ * where they replace children of the next generation.
+ * The copies have their own genomes and weights, so an island never touches a network of another.
+ * With a ring topology each island sends to the next; with a random one the islands are joined
+ * in a new random cycle at each migration, so no island sends to itself.
+ * A single island would only send to itself, so it has no migrations.
+ * The islands wait for one another only at migrations, at a barrier; the migrants are left in one of two
+ * buffers, taken in turn, since no island can be a whole migration ahead of one that has not yet read them.
+ * The networks of all the islands are trained on one pool, with as many threads as the config says,
+ * and share a FitnessCache if the config asks for one.
+ * Each island saves its networks in a directory of its own under the save directory;
+ * only the first trains a fully connected network at the end, if the config asks for one.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class IslandModel
+{
+    /**
+     * Which island each island sends its migrants to.
+     */
+    public enum Topology
+    {
+	RING, RANDOM
+    }
+
+    /**
+     * An island, which runs its engine on its own thread and swaps networks with the others.
+     */
+    private class Island implements Runnable, Migration
+    {
+	private final int index;
+	private final EvolutionEngine engine;
+	private final Thread thread;
+	private long runNanos, waitNanos;
+
+	Island(int _i, EvolutionEngine _e)
+	{
+	    index = _i;
+	    engine = _e;
+	    if (config.getIslands() > 1)
+		engine.setMigration(this);
+	    thread = new Thread(this, "Island " + _i);
+	}
+
+	public void run()
+	{
+	    long start = System.nanoTime();
+
+	    try
+		{
+		    engine.run();
+		}
+	    catch (Throwable t)
+		{
+		    // Stop the others, which would otherwise wait for this island at the next migration
+		    if (failure.compareAndSet(null, t))
+			{
+			    for (int i = 0; i < islands.length; i++)
+				{
+				    if (i != index)
+					islands[i].thread.interrupt();
+				}
+			}
+		}
+	    runNanos = System.nanoTime() - start;
+	}
+
+	public NeuralNetwork[] migrate(int _generation, NeuralNetwork[] _networks, double[] _sSEs)
+	{
+	    if (((_generation + 1) % config.getMigrationInterval() != 0) || (_generation + 1 == config.getGenNum()))
+		return new NeuralNetwork[0];
+
+	    int round = (_generation + 1) / config.getMigrationInterval() - 1;
+	    int m = Math.min(config.getMigrants(), _networks.length);
+	    NeuralNetwork[] out = new NeuralNetwork[m];
+	    boolean[] taken = new boolean[_networks.length];
+	    int best;
+
+	    // The migrants are few, so they are found one at a time
+	    for (int k = 0; k < m; k++)
+		{
+		    best = -1;
+		    for (int i = 0; i < _networks.length; i++)
+			{
+			    if (!taken[i] && ((best < 0) || (_sSEs[i] < _sSEs[best])))
+				best = i;
+			}
+		    taken[best] = true;
+		    out[k] = copy(_networks[best], _generation);
+		}
+	    emigrants[round % 2][index] = out;
+
+	    long start = System.nanoTime();
+	    try
+		{
+		    barrier.await();
+		}
+	    catch (InterruptedException e)
+		{
+		    Thread.currentThread().interrupt();
+		    throw new IllegalStateException("Island " + index + " was stopped", e);
+		}
+	    catch (BrokenBarrierException e)
+		{
+		    throw new IllegalStateException("Island " + index + " was stopped", e);
+		}
+	    waitNanos += System.nanoTime() - start;
+
+	    return emigrants[round % 2][sources[round % 2][index]];
+	}
+    }
+
+    /**
+     * Copies a network to send to another island.
+     * @param _n The network, trained and validated
+     * @param _generation Its generation
+     * @return A network with a copy of its genome, its weights and its cached SSE
+     */
+    private NeuralNetwork copy(NeuralNetwork _n, int _generation)
+    {
+	NeuralNetwork c = config.makeNetwork(new Genome(_n.getGenome()), _generation);
+
+	for (int i = 0; i < c.getNumWeights(); i++)
+	    {
+		c.setWeight(i, _n.getWeight(i));
+	    }
+	c.setCachedSSE(_n.getCachedSSE());
+
+	return c;
+    }
+
+    private final EvolutionConfig config;
+    private final Island[] islands;
+    private final CyclicBarrier barrier;
+    private final ForkJoinPool pool;
+    private final NeuralNetwork[][][] emigrants; // The networks each island sends, for even and odd migrations
+    private final int[][] sources; // The island that each island receives from, for even and odd migrations
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private int round; // The number of migrations that have been made, counted by the barrier
+    private long runNanos;
+
+    /**
+     * Creates a new IslandModel, with an engine for each island.
+     * @param _c The parameters of the run, the same for each island
+     * @param _l The listener of every island, or null for none; it is called on the threads of the islands
+     */
+    public IslandModel(EvolutionConfig _c, EvolutionListener _l)
+    {
+	if (!_c.isValid())
+	    throw new IllegalArgumentException("Check inputs!");
+
+	config = _c;
+	int n = _c.getIslands();
+	islands = new Island[n];
+	emigrants = new NeuralNetwork[2][n][];
+	sources = new int[2][n];
+	barrier = new CyclicBarrier(n, new Runnable()
+	    {
+		// Run by the last island to arrive, before any of them goes on
+		public void run()
+		{
+		    chooseSources(sources[round % 2]);
+		    round++;
+		}
+	    });
+
+	pool = new ForkJoinPool((_c.getThreads() > 0) ? _c.getThreads() : Runtime.getRuntime().availableProcessors());
+	FitnessCache cache = (_c.getCacheSize() > 0) ? new FitnessCache(_c.getCacheSize(), _c.getCacheEviction()) : null;
+	EvolutionConfig c;
+	EvolutionEngine e;
+
+	for (int i = 0; i < n; i++)
+	    {
+		c = _c.copy();
+		if (_c.getSaveDirectory() != null)
+		    {
+			c.setSaveDirectory(new File(_c.getSaveDirectory(), "island" + i));
+			c.getSaveDirectory().mkdirs();
+		    }
+		if (i > 0)
+		    c.setFullyConnected(false);
+		e = new EvolutionEngine(c);
+		e.setPool(pool);
+		e.setCache(cache);
+		e.setListener(_l);
+		islands[i] = new Island(i, e);
+	    }
+    }
+
+    /**
+     * Sets which island each island receives from at a migration.
+     * @param _from The array to fill
+     */
+    private void chooseSources(int[] _from)
+    {
+	int n = _from.length;
+
+	if (config.getTopology() == Topology.RING)
+	    {
+		for (int i = 0; i < n; i++)
+		    {
+			_from[i] = (i + n - 1) % n;
+		    }
+		return;
+	    }
+
+	// Sattolo's shuffle gives a single cycle through all the islands
+	int[] to = new int[n];
+	int j, t;
+	for (int i = 0; i < n; i++)
+	    {
+		to[i] = i;
+	    }
+	for (int i = n - 1; i > 0; i--)
+	    {
+		j = (int)(Math.random() * i);
+		t = to[i];
+		to[i] = to[j];
+		to[j] = t;
+	    }
+	for (int i = 0; i < n; i++)
+	    {
+		_from[to[i]] = i;
+	    }
+    }
+
+    /**
+     * Runs the islands and waits for them all to finish.
+     * @throws InterruptedException if this thread is interrupted while waiting
+     */
+    public void run() throws InterruptedException
+    {
+	long start = System.nanoTime();
+
+	for (int i = 0; i < islands.length; i++)
+	    {
+		islands[i].thread.start();
+	    }
+	for (int i = 0; i < islands.length; i++)
+	    {
+		islands[i].thread.join();
+	    }
+	pool.shutdown();
+	runNanos = System.nanoTime() - start;
+
+	if (failure.get() != null)
+	    throw new IllegalStateException("An island failed", failure.get());
+    }
+
+    /**
+     * @return The number of islands
+     */
+    public int getIslands()
+    {
+	return islands.length;
+    }
+
+    /**
+     * @param _i An island
+     * @return Its engine, from which its results can be had once the run has finished
+     */
+    public EvolutionEngine getEngine(int _i)
+    {
+	return islands[_i].engine;
+    }
+
+    /**
+     * @param _i An island
+     * @return The lowest SSE of the best networks of its generations
+     */
+    public double getBestSSE(int _i)
+    {
+	double[] s = islands[_i].engine.getBestSSEs();
+	double best = s[0];
+
+	for (int g = 1; g < s.length; g++)
+	    {
+		best = Math.min(best, s[g]);
+	    }
+	return best;
+    }
+
+    /**
+     * @param _i An island
+     * @return The networks it trained a second, over the time it ran, leaving out fitness cache hits
+     */
+    public double getThroughput(int _i)
+    {
+	return islands[_i].engine.getTrained() / (islands[_i].runNanos / 1e9);
+    }
+
+    /**
+     * @param _i An island
+     * @return The time it spent waiting for the others at migrations, in milliseconds
+     */
+    public double getWaitMillis(int _i)
+    {
+	return islands[_i].waitNanos / 1e6;
+    }
+
+    /**
+     * @return The time the whole run took, in milliseconds
+     */
+    public double getRunMillis()
+    {
+	return runNanos / 1e6;
+    }
+
+    /**
+     * Runs islands with no display, printing a line for each island at each migration and a summary at the end.
+     * Usage: IslandModel [name=value ...]
+     * The names are those of EvolutionConfig.set, for example islands=4 migrationInterval=5 topology=random
+     */
+    public static void main(String[] args) throws Exception
+    {
+	final EvolutionConfig c = new EvolutionConfig();
+	int eq;
+
+	System.setProperty("java.awt.headless", "true");
+
+	for (int i = 0; i < args.length; i++)
+	    {
+		eq = args[i].indexOf('=');
+		if (eq < 0)
+		    {
+			System.out.println("Usage: IslandModel [name=value ...]");
+			return;
+		    }
+		c.set(args[i].substring(0, eq), args[i].substring(eq + 1));
+	    }
+	if (!c.isValid())
+	    {
+		System.out.println("Check inputs!");
+		return;
+	    }
+
+	IslandModel model = new IslandModel(c, new EvolutionListener()
+	    {
+		public void generationEnded(int _generation, NeuralNetwork[] _ranked)
+		{
+		    if (((_generation + 1) % c.getMigrationInterval() == 0) || (_generation + 1 == c.getGenNum()))
+			System.out.println(Thread.currentThread().getName() + ", generation " + _generation
+					   + ": best SSE " + _ranked[0].getCachedSSE());
+		}
+
+		public void evolutionEnded(EvolutionEngine _e)
+		{
+		}
+	    });
+	model.run();
+
+	int best = 0;
+	for (int i = 0; i < model.getIslands(); i++)
+	    {
+		System.out.println("Island " + i + ": best SSE " + model.getBestSSE(i)
+				   + ", " + (float)model.getThroughput(i) + " networks trained a second, "
+				   + (int)model.getWaitMillis(i) + " ms waiting at migrations");
+		if (model.getBestSSE(i) < model.getBestSSE(best))
+		    best = i;
+	    }
+	if (c.getIslands() > 1)
+	    System.out.println("Best island " + best + ", " + c.getTopology() + " topology, "
+			       + c.getMigrants() + " migrants every " + c.getMigrationInterval() + " generations");
+	else
+	    System.out.println("One island, so no migration");
+	if (model.getEngine(0).getCache() != null)
+	    System.out.println("Fitness cache: " + model.getEngine(0).getCache());
+	System.out.println("Completed in " + (int)model.getRunMillis() + " milliseconds.");
+    }
+}
@@ -0,0 +1,244 @@
+/**
+ * The inner loops that the networks spend their time in.
+ * Each works on a contiguous run of an array. dot and axpy have no branches in their bodies,
+ * so that the JIT compiler can unroll them and, where it can, use SIMD instructions.
+ * maskedDot and maskedAxpy branch on the bits of the mask, and sigmoid on whatever its Activation branches on,
+ * such as the range of the table; both are still kept to one tight loop.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+public class Kernels
+{
+    /**
+     * Finds the dot product of a run of weights and a run of activations.
+     * Four partial sums are kept so that the additions do not wait on each other.
+     * @param _w The weights
+     * @param _wOff The index of the first weight
+     * @param _a The activations
+     * @param _n The number of terms
+     * @return The sum of _w[_wOff + i] * _a[i] for i from 0 to _n - 1
+     */
+    public static double dot(double[] _w, int _wOff, double[] _a, int _n)
+    {
+	double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+	int i = 0;
+
+	for (; i + 3 < _n; i += 4)
+	    {
+		s0 += _w[_wOff + i] * _a[i];
+		s1 += _w[_wOff + i + 1] * _a[i + 1];
+		s2 += _w[_wOff + i + 2] * _a[i + 2];
+		s3 += _w[_wOff + i + 3] * _a[i + 3];
+	    }
+
+	for (; i < _n; i++)
+	    {
+		s0 += _w[_wOff + i] * _a[i];
+	    }
+
+	return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Finds the dot product of a run of weights and a run of activations, counting only the active weights.
+     * The set bits of the mask are visited directly, so inactive weights cost nothing
+     * and the terms are added in order of index.
+     * @param _w The weights
+     * @param _mask The activity of the weights, one bit per weight
+     * @param _wOff The index of the first weight
+     * @param _a The activations
+     * @param _n The number of weights in the run
+     * @return The sum of _w[_wOff + i] * _a[i] over the active weights
+     */
+    public static double maskedDot(double[] _w, long[] _mask, int _wOff, double[] _a, int _n)
+    {
+	double sum = 0.0;
+	int end = _wOff + _n;
+	long bits;
+	int i;
+
+	for (int word = _wOff >>> 6; (word << 6) < end; word++)
+	    {
+		bits = _mask[word];
+
+		// Ignore the bits outside the run
+		if ((word << 6) < _wOff)
+		    bits &= -1L << _wOff;
+		if (((word + 1) << 6) > end)
+		    bits &= ~(-1L << end);
+
+		while (bits != 0)
+		    {
+			i = (word << 6) + Long.numberOfTrailingZeros(bits);
+			sum += _a[i - _wOff] * _w[i];
+			bits &= bits - 1;
+		    }
+	    }
+
+	return sum;
+    }
+
+    /**
+     * The single precision version of maskedDot, for FloatNetwork.
+     * @param _w The weights
+     * @param _mask The activity of the weights, one bit per weight
+     * @param _wOff The index of the first weight
+     * @param _a The activations
+     * @param _n The number of weights in the run
+     * @return The sum of _w[_wOff + i] * _a[i] over the active weights
+     */
+    public static float maskedDot(float[] _w, long[] _mask, int _wOff, float[] _a, int _n)
+    {
+	float sum = 0f;
+	int end = _wOff + _n;
+	long bits;
+	int i;
+
+	for (int word = _wOff >>> 6; (word << 6) < end; word++)
+	    {
+		bits = _mask[word];
+
+		if ((word << 6) < _wOff)
+		    bits &= -1L << _wOff;
+		if (((word + 1) << 6) > end)
+		    bits &= ~(-1L << end);
+
+		while (bits != 0)
+		    {
+			i = (word << 6) + Long.numberOfTrailingZeros(bits);
+			sum += _a[i - _wOff] * _w[i];
+			bits &= bits - 1;
+		    }
+	    }
+
+	return sum;
+    }
+
+    /**
+     * Adds a multiple of one run of an array to another, _y += _w * _x.
+     * @param _w The multiple
+     * @param _x The array to add
+     * @param _xOff The index of the first element of _x
+     * @param _y The array to add to
+     * @param _yOff The index of the first element of _y
+     * @param _n The length of the runs
+     */
+    public static void axpy(double _w, double[] _x, int _xOff, double[] _y, int _yOff, int _n)
+    {
+	for (int i = 0; i < _n; i++)
+	    {
+		_y[_yOff + i] += _x[_xOff + i] * _w;
+	    }
+    }
+
+    /**
+     * Adds a multiple of the active weights of a run to an array, _y[i] += _w[_wOff + i] * _a.
+     * Back propagation uses it to pass the delta of a neuron back to the layer before.
+     * @param _a The multiple
+     * @param _w The weights
+     * @param _mask The activity of the weights, one bit per weight
+     * @param _wOff The index of the first weight
+     * @param _y The array to add to
+     * @param _n The number of weights in the run
+     */
+    public static void maskedAxpy(double _a, double[] _w, long[] _mask, int _wOff, double[] _y, int _n)
+    {
+	int end = _wOff + _n;
+	long bits;
+	int i;
+
+	for (int word = _wOff >>> 6; (word << 6) < end; word++)
+	    {
+		bits = _mask[word];
+
+		if ((word << 6) < _wOff)
+		    bits &= -1L << _wOff;
+		if (((word + 1) << 6) > end)
+		    bits &= ~(-1L << end);
+
+		while (bits != 0)
+		    {
+			i = (word << 6) + Long.numberOfTrailingZeros(bits);
+			_y[i - _wOff] += _w[i] * _a;
+			bits &= bits - 1;
+		    }
+	    }
+    }
+
+    /**
+     * The single precision version of maskedAxpy, for FloatNetwork.
+     * @param _a The multiple
+     * @param _w The weights
+     * @param _mask The activity of the weights, one bit per weight
+     * @param _wOff The index of the first weight
+     * @param _y The array to add to
+     * @param _n The number of weights in the run
+     */
+    public static void maskedAxpy(float _a, float[] _w, long[] _mask, int _wOff, float[] _y, int _n)
+    {
+	int end = _wOff + _n;
+	long bits;
+	int i;
+
+	for (int word = _wOff >>> 6; (word << 6) < end; word++)
+	    {
+		bits = _mask[word];
+
+		if ((word << 6) < _wOff)
+		    bits &= -1L << _wOff;
+		if (((word + 1) << 6) > end)
+		    bits &= ~(-1L << end);
+
+		while (bits != 0)
+		    {
+			i = (word << 6) + Long.numberOfTrailingZeros(bits);
+			_y[i - _wOff] += _w[i] * _a;
+			bits &= bits - 1;
+		    }
+	    }
+    }
+
+    /**
+     * Multiplies a run of deltas by the derivative of the sigmoid, found from the outputs y of their neurons as y * (1 - y).
+     * @param _d The deltas
+     * @param _y The outputs of the neurons
+     * @param _n The number of neurons
+     */
+    public static void sigmoidDerivative(double[] _d, double[] _y, int _n)
+    {
+	for (int i = 0; i < _n; i++)
+	    {
+		_d[i] *= _y[i] * (1.0 - _y[i]);
+	    }
+    }
+
+    /**
+     * The single precision version of sigmoidDerivative, for FloatNetwork.
+     * @param _d The deltas
+     * @param _y The outputs of the neurons
+     * @param _n The number of neurons
+     */
+    public static void sigmoidDerivative(float[] _d, float[] _y, int _n)
+    {
+	for (int i = 0; i < _n; i++)
+	    {
+		_d[i] *= _y[i] * (1f - _y[i]);
+	    }
+    }
+
+    /**
+     * Puts a whole run of weighted sums through the sigmoid function in place.
+     * @param _f The way to calculate the sigmoid
+     * @param _z The weighted sums
+     * @param _off The index of the first one
+     * @param _n The number of them
+     */
+    public static void sigmoid(Activation _f, double[] _z, int _off, int _n)
+    {
+	for (int i = _off; i < _off + _n; i++)
+	    {
+		_z[i] = _f.getSigmoid(_z[i]);
+	    }
+    }
+}
@@ -37,6 +37,18 @@ public class Link implements Serializable
 	this(1.0, -1.0, _a);
     }
 
+    /**
+     * Creates a new Link with a known weight and the default range.
+     * Used by Network to give a view of its weights for drawing.
+     * @param _w The weight of the Link.
+     * @param _a Whether the link is active or not.
+     */
+    public Link(double _w, boolean _a)
+    {
+	this(1.0, -1.0, _a);
+	weight = _w;
+    }
+
     /**
      * Creates a new Link, with default parameters.
      */
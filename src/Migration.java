@@ -0,0 +1,17 @@
+/**
+ * Brings networks into the population of an EvolutionEngine from elsewhere, as between the islands of an IslandModel.
+ * The call is made on the thread running the engine, once each generation after the children have been bred.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+public interface Migration
+{
+    /**
+     * @param _generation The generation that has ended
+     * @param _networks The networks of the generation, in no order; the array is reused by the engine
+     * @param _sSEs The SSE of each network
+     * @return The trained networks arriving, whose genomes replace children of the next generation; none if nothing arrives
+     */
+    public NeuralNetwork[] migrate(int _generation, NeuralNetwork[] _networks, double[] _sSEs);
+}
@@ -0,0 +1,584 @@
+/**
+ * Turns a trained Network into a class of its own.
+ * Once a Genome is chosen and the network trained, the topology and weights are fixed,
+ * so the loops of <code>Network.getOutput</code> can be replaced by straight-line code
+ * with the weights written in as constants.
+ * Inactive links are left out.
+ * A hidden neuron whose inputs are all constant (for example, one with no active incoming links)
+ * has its output worked out here and folded into the neurons it feeds.
+ * Neurons that cannot affect an output are left out altogether.
+ * The class is written as bytecode by a small class file writer and loaded by a class loader of its own,
+ * so it can be unloaded when the model is no longer used.
+ * The hidden values go in a scratch array, given by the caller or kept for each thread, so predict does not allocate.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.io.*;
+import java.util.*;
+
+public class ModelCompiler
+{
+    // Opcodes
+    private static final int ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD_2 = 0x2c, ALOAD_3 = 0x2d;
+    private static final int BIPUSH = 0x10, SIPUSH = 0x11, LDC2_W = 0x14;
+    private static final int DALOAD = 0x31, DASTORE = 0x52;
+    private static final int DADD = 0x63, DMUL = 0x6b;
+    private static final int GETSTATIC = 0xb2, GETFIELD = 0xb4, PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+    private static final int CHECKCAST = 0xc0, IRETURN = 0xac, RETURN = 0xb1;
+
+    // Start a new part once this much code is written, keeping each part below HotSpot's limit of 8000 bytes
+    private static final int PART_SIZE = 7000;
+
+    // Used to give each generated class its own name
+    private static int count = 0;
+
+    /**
+     * Loads one generated class.
+     */
+    private static class Loader extends ClassLoader
+    {
+	Loader()
+	{
+	    super(CompiledModel.class.getClassLoader());
+	}
+
+	Class<?> define(String _name, byte[] _b)
+	{
+	    return defineClass(_name, _b, 0, _b.length);
+	}
+    }
+
+    /**
+     * The constant pool of the class being written.
+     */
+    private static class ConstantPool
+    {
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	private final DataOutputStream out = new DataOutputStream(bytes);
+	private final Map<String, Integer> entries = new HashMap<String, Integer>();
+	private int next = 1;
+
+	private int add(String _key, int _size) throws IOException
+	{
+	    Integer i = entries.get(_key);
+	    if (i != null)
+		return i.intValue();
+
+	    int index = next;
+	    entries.put(_key, index);
+	    next += _size;
+	    if (next > 0xffff)
+		throw new IllegalArgumentException("The network has too many distinct weights to compile");
+	    return index;
+	}
+
+	int utf8(String _s) throws IOException
+	{
+	    int before = next;
+	    int i = add("U" + _s, 1);
+	    if (i == before)
+		{
+		    out.writeByte(1);
+		    out.writeUTF(_s);
+		}
+	    return i;
+	}
+
+	int classRef(String _name) throws IOException
+	{
+	    int name = utf8(_name);
+	    int before = next;
+	    int i = add("C" + _name, 1);
+	    if (i == before)
+		{
+		    out.writeByte(7);
+		    out.writeShort(name);
+		}
+	    return i;
+	}
+
+	int nameAndType(String _name, String _type) throws IOException
+	{
+	    int name = utf8(_name);
+	    int type = utf8(_type);
+	    int before = next;
+	    int i = add("N" + _name + ":" + _type, 1);
+	    if (i == before)
+		{
+		    out.writeByte(12);
+		    out.writeShort(name);
+		    out.writeShort(type);
+		}
+	    return i;
+	}
+
+	int member(int _tag, String _owner, String _name, String _type) throws IOException
+	{
+	    int owner = classRef(_owner);
+	    int nt = nameAndType(_name, _type);
+	    int before = next;
+	    int i = add("M" + _tag + _owner + "." + _name + ":" + _type, 1);
+	    if (i == before)
+		{
+		    out.writeByte(_tag);
+		    out.writeShort(owner);
+		    out.writeShort(nt);
+		}
+	    return i;
+	}
+
+	int doubleConstant(double _d) throws IOException
+	{
+	    long bits = Double.doubleToRawLongBits(_d);
+	    int before = next;
+	    int i = add("D" + bits, 2);
+	    if (i == before)
+		{
+		    out.writeByte(6);
+		    out.writeLong(bits);
+		}
+	    return i;
+	}
+
+	void writeTo(DataOutputStream _d) throws IOException
+	{
+	    out.flush();
+	    _d.writeShort(next);
+	    bytes.writeTo(_d);
+	}
+    }
+
+    /**
+     * Makes the scratch arrays of a generated class, one for each thread that calls it.
+     * It is public only so that the generated classes, which have a class loader of their own, can call it.
+     * @param _n The length of the arrays
+     * @return The arrays
+     */
+    public static ThreadLocal<double[]> newScratch(final int _n)
+    {
+	return new ThreadLocal<double[]>()
+	    {
+		protected double[] initialValue()
+		{
+		    return new double[_n];
+		}
+	    };
+    }
+
+    /**
+     * Compiles a network into a CompiledModel.
+     * The model is a copy; later changes to the network do not affect it.
+     * @param _n The network
+     * @return The compiled model
+     * @throws IllegalArgumentException if the network has more values than the instructions can index
+     */
+    public static CompiledModel compile(Network _n)
+    {
+	try
+	    {
+		String name;
+		synchronized (ModelCompiler.class)
+		    {
+			count++;
+			name = "CompiledNetwork" + count;
+		    }
+		byte[] b = writeClass(_n, name);
+		return (CompiledModel)new Loader().define(name, b).getDeclaredConstructor().newInstance();
+	    }
+	catch (IOException e)
+	    {
+		throw new RuntimeException(e);
+	    }
+	catch (ReflectiveOperationException e)
+	    {
+		throw new RuntimeException(e);
+	    }
+    }
+
+    /**
+     * Writes the class file for a network.
+     * @param _n The network
+     * @param _name The name of the class
+     * @return The bytes of the class file
+     */
+    private static byte[] writeClass(Network _n, String _name) throws IOException
+    {
+	Genome g = _n.getGenome();
+	int nI = g.getInputs();
+	int nH = g.getNeuronsInHiddenLayer();
+	int nL = g.getHiddenLayers();
+	int nO = g.getOutputs();
+	Activation a = _n.getActivation();
+
+	// Work out which hidden neurons are constant, and their values
+	boolean[][] constant = new boolean[nL][nH];
+	double[][] value = new double[nL][nH];
+	for (int l = 0; l < nL; l++)
+	    {
+		for (int n = 0; n < nH; n++)
+		    {
+			boolean c = true;
+			double sum = 0.0;
+			for (int f = 0; f < ((l == 0) ? nI : nH); f++)
+			    {
+				int link = _n.getLinkIndex(l, n, f);
+				if (_n.isActive(link))
+				    {
+					if ((l == 0) || !constant[l - 1][f])
+					    c = false;
+					else
+					    sum += _n.getWeight(link) * value[l - 1][f];
+				    }
+			    }
+			constant[l][n] = c;
+			if (c)
+			    value[l][n] = a.getSigmoid(sum);
+		    }
+	    }
+
+	// Work backwards from the outputs to find the neurons that need computing
+	boolean[][] needed = new boolean[nL][nH];
+	for (int l = nL; l >= 0; l--)
+	    {
+		int neurons = (l == nL) ? nO : nH;
+		for (int n = 0; n < neurons; n++)
+		    {
+			if ((l < nL) && (!needed[l][n] || constant[l][n]))
+			    continue;
+			for (int f = 0; f < ((l == 0) ? nI : nH); f++)
+			    {
+				if ((l > 0) && _n.isActive(_n.getLinkIndex(l, n, f)))
+				    needed[l - 1][f] = true;
+			    }
+		    }
+	    }
+
+	// Give each needed hidden neuron a place in the array of hidden values
+	int nextHidden = 0;
+	int[][] hiddenIndex = new int[nL][nH];
+	for (int l = 0; l < nL; l++)
+	    {
+		for (int n = 0; n < nH; n++)
+		    {
+			if (needed[l][n] && !constant[l][n])
+			    hiddenIndex[l][n] = nextHidden++;
+		    }
+	    }
+
+	ConstantPool cp = new ConstantPool();
+	int activation = cp.member(9, "Activation", a.name(), "LActivation;");
+	int sigmoid = cp.member(10, "Activation", "getSigmoid", "(D)D");
+
+	// The code is split into parts of less than 8000 bytes, as HotSpot will not compile larger methods
+	List<byte[]> parts = new ArrayList<byte[]>();
+	ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+	DataOutputStream code = new DataOutputStream(codeBytes);
+
+	// The hidden neurons, then the outputs
+	for (int l = 0; l <= nL; l++)
+	    {
+		int neurons = (l == nL) ? nO : nH;
+		for (int n = 0; n < neurons; n++)
+		    {
+			if ((l < nL) && (!needed[l][n] || constant[l][n]))
+			    continue;
+
+			if (codeBytes.size() > PART_SIZE)
+			    {
+				code.writeByte(RETURN);
+				code.flush();
+				parts.add(codeBytes.toByteArray());
+				codeBytes.reset();
+			    }
+
+			if (l < nL)
+			    {
+				code.writeByte(ALOAD_1);
+				writeIndex(code, hiddenIndex[l][n]);
+				code.writeByte(GETSTATIC);
+				code.writeShort(activation);
+			    }
+			else
+			    {
+				code.writeByte(ALOAD_2);
+				writeIndex(code, n);
+			    }
+
+			// The constant part of the weighted sum, then each varying term
+			double sum = 0.0;
+			for (int f = 0; f < ((l == 0) ? nI : nH); f++)
+			    {
+				int link = _n.getLinkIndex(l, n, f);
+				if ((l > 0) && _n.isActive(link) && constant[l - 1][f])
+				    sum += _n.getWeight(link) * value[l - 1][f];
+			    }
+			code.writeByte(LDC2_W);
+			code.writeShort(cp.doubleConstant(sum));
+
+			for (int f = 0; f < ((l == 0) ? nI : nH); f++)
+			    {
+				int link = _n.getLinkIndex(l, n, f);
+				if (!_n.isActive(link) || ((l > 0) && constant[l - 1][f]))
+				    continue;
+				code.writeByte((l == 0) ? ALOAD_0 : ALOAD_1);
+				writeIndex(code, (l == 0) ? f : hiddenIndex[l - 1][f]);
+				code.writeByte(DALOAD);
+				code.writeByte(LDC2_W);
+				code.writeShort(cp.doubleConstant(_n.getWeight(link)));
+				code.writeByte(DMUL);
+				code.writeByte(DADD);
+			    }
+
+			if (l < nL)
+			    {
+				code.writeByte(INVOKEVIRTUAL);
+				code.writeShort(sigmoid);
+			    }
+			code.writeByte(DASTORE);
+		    }
+	    }
+	code.writeByte(RETURN);
+	code.flush();
+	parts.add(codeBytes.toByteArray());
+
+	// predict with a scratch array calls each part in turn
+	String partType = "([D[D[D)V";
+	codeBytes.reset();
+	for (int p = 0; p < parts.size(); p++)
+	    {
+		code.writeByte(ALOAD_1);
+		code.writeByte(ALOAD_3);
+		code.writeByte(ALOAD_2);
+		code.writeByte(INVOKESTATIC);
+		code.writeShort(cp.member(10, _name, "part" + p, partType));
+	    }
+	code.writeByte(RETURN);
+	code.flush();
+	byte[] predictScratch = codeBytes.toByteArray();
+
+	// predict without one passes on the scratch array of the calling thread
+	int scratchField = cp.member(9, _name, "scratch", "Ljava/lang/ThreadLocal;");
+	codeBytes.reset();
+	code.writeByte(ALOAD_0);
+	code.writeByte(ALOAD_1);
+	code.writeByte(ALOAD_2);
+	code.writeByte(ALOAD_0);
+	code.writeByte(GETFIELD);
+	code.writeShort(scratchField);
+	code.writeByte(INVOKEVIRTUAL);
+	code.writeShort(cp.member(10, "java/lang/ThreadLocal", "get", "()Ljava/lang/Object;"));
+	code.writeByte(CHECKCAST);
+	code.writeShort(cp.classRef("[D"));
+	code.writeByte(INVOKEVIRTUAL);
+	code.writeShort(cp.member(10, _name, "predict", partType));
+	code.writeByte(RETURN);
+	code.flush();
+	byte[] predict = codeBytes.toByteArray();
+
+	// The constructor makes the scratch arrays
+	codeBytes.reset();
+	code.writeByte(ALOAD_0);
+	code.writeByte(INVOKESPECIAL);
+	code.writeShort(cp.member(10, "java/lang/Object", "<init>", "()V"));
+	code.writeByte(ALOAD_0);
+	writeIndex(code, nextHidden);
+	code.writeByte(INVOKESTATIC);
+	code.writeShort(cp.member(10, "ModelCompiler", "newScratch", "(I)Ljava/lang/ThreadLocal;"));
+	code.writeByte(PUTFIELD);
+	code.writeShort(scratchField);
+	code.writeByte(RETURN);
+	code.flush();
+	byte[] init = codeBytes.toByteArray();
+
+	codeBytes.reset();
+	writeIndex(code, nextHidden);
+	code.writeByte(IRETURN);
+	code.flush();
+	byte[] scratchSize = codeBytes.toByteArray();
+
+	// The rest of the class
+	int thisClass = cp.classRef(_name);
+	int superClass = cp.classRef("java/lang/Object");
+	int iface = cp.classRef("CompiledModel");
+	int initName = cp.utf8("<init>");
+	int initType = cp.utf8("()V");
+	int predictName = cp.utf8("predict");
+	int predictType = cp.utf8("([D[D)V");
+	int scratchName = cp.utf8("scratch");
+	int scratchType = cp.utf8("Ljava/lang/ThreadLocal;");
+	int scratchSizeName = cp.utf8("getScratchSize");
+	int scratchSizeType = cp.utf8("()I");
+	int codeName = cp.utf8("Code");
+	int[] partNames = new int[parts.size()];
+	for (int p = 0; p < parts.size(); p++)
+	    {
+		partNames[p] = cp.utf8("part" + p);
+	    }
+	int partTypeName = cp.utf8(partType);
+
+	ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+	DataOutputStream c = new DataOutputStream(classBytes);
+	c.writeInt(0xcafebabe);
+	c.writeShort(0);
+	c.writeShort(50); // Java 6 class files need no stack map frames
+	cp.writeTo(c);
+	c.writeShort(0x0031); // public final super
+	c.writeShort(thisClass);
+	c.writeShort(superClass);
+	c.writeShort(1);
+	c.writeShort(iface);
+	c.writeShort(1);
+	c.writeShort(0x0012); // private final
+	c.writeShort(scratchName);
+	c.writeShort(scratchType);
+	c.writeShort(0);
+	c.writeShort(4 + parts.size());
+
+	writeMethod(c, 0x0001, initName, initType, codeName, 2, 1, init);
+	writeMethod(c, 0x0001, predictName, predictType, codeName, 4, 3, predict);
+	writeMethod(c, 0x0001, predictName, partTypeName, codeName, 3, 4, predictScratch);
+	writeMethod(c, 0x0001, scratchSizeName, scratchSizeType, codeName, 1, 1, scratchSize);
+	for (int p = 0; p < parts.size(); p++)
+	    {
+		// max stack: an array, an index, an Activation and three doubles
+		writeMethod(c, 0x000a, partNames[p], partTypeName, codeName, 10, 3, parts.get(p));
+	    }
+
+	c.writeShort(0); // No class attributes
+	c.flush();
+
+	return classBytes.toByteArray();
+    }
+
+    /**
+     * Writes a method with only a Code attribute.
+     * @param _c The class file being written
+     * @param _access The access flags
+     * @param _name The constant for the name
+     * @param _type The constant for the descriptor
+     * @param _codeName The constant for "Code"
+     * @param _maxStack The deepest the operand stack gets
+     * @param _maxLocals The number of local variables
+     * @param _code The bytecode
+     */
+    private static void writeMethod(DataOutputStream _c, int _access, int _name, int _type, int _codeName,
+				    int _maxStack, int _maxLocals, byte[] _code) throws IOException
+    {
+	if (_code.length > 65535)
+	    throw new IllegalArgumentException("A neuron of the network has too many active links to compile");
+
+	_c.writeShort(_access);
+	_c.writeShort(_name);
+	_c.writeShort(_type);
+	_c.writeShort(1);
+	_c.writeShort(_codeName);
+	_c.writeInt(12 + _code.length);
+	_c.writeShort(_maxStack);
+	_c.writeShort(_maxLocals);
+	_c.writeInt(_code.length);
+	_c.write(_code);
+	_c.writeShort(0); // No exception table
+	_c.writeShort(0); // No attributes
+    }
+
+    /**
+     * Writes an instruction that pushes an array index or size.
+     * @param _code The code being written
+     * @param _i The index, which SIPUSH limits to 32767
+     */
+    private static void writeIndex(DataOutputStream _code, int _i) throws IOException
+    {
+	if ((_i < 0) || (_i > Short.MAX_VALUE))
+	    throw new IllegalArgumentException("The network is too big to compile: index " + _i);
+
+	if (_i <= 127)
+	    {
+		_code.writeByte(BIPUSH);
+		_code.writeByte(_i);
+	    }
+	else
+	    {
+		_code.writeByte(SIPUSH);
+		_code.writeShort(_i);
+	    }
+    }
+
+    /**
+     * For testing.
+     * Compiles random and fully connected networks, checks them against Network and times both.
+     */
+    public static void main(String[] args)
+    {
+	DataSet ds = new SecondYearData();
+	Tuple[] v = ds.getSample(200);
+	int[] neurons = {5, 10, 20, 30};
+	double[] in = new double[3];
+	double[] out = new double[1];
+
+	for (int full = 0; full < 2; full++)
+	    {
+		for (int j = 0; j < neurons.length; j++)
+		    {
+			Genome g = new Genome(3, neurons[j], 3, 1);
+			if (full == 1)
+			    {
+				for (int k = 0; k < g.getBinStringLength(); k++)
+				    {
+					g.setBit(k, true);
+				    }
+			    }
+			Network n = new Network(g, 0, 0.01);
+			CompiledModel m = compile(n);
+
+			// Check the outputs agree
+			double diff = 0.0;
+			for (int i = 0; i < v.length; i++)
+			    {
+				for (int k = 0; k < in.length; k++)
+				    {
+					in[k] = v[i].getInput(k);
+				    }
+				m.predict(in, out);
+				diff = Math.max(diff, Math.abs(out[0] - n.getOutput(v[i])[0]));
+			    }
+
+			// Time them
+			Workspace w = new Workspace(g);
+			double[] scratch = new double[m.getScratchSize()];
+			long nTime = 0, mTime = 0, start;
+			for (int rep = -500; rep < 500; rep++)
+			    {
+				// The first half warms up the JIT
+				if (rep == 0)
+				    {
+					nTime = 0;
+					mTime = 0;
+				    }
+				start = System.nanoTime();
+				for (int i = 0; i < v.length; i++)
+				    {
+					n.getOutput(v[i], w, out);
+				    }
+				nTime += System.nanoTime() - start;
+
+				start = System.nanoTime();
+				for (int i = 0; i < v.length; i++)
+				    {
+					for (int k = 0; k < in.length; k++)
+					    {
+						in[k] = v[i].getInput(k);
+					    }
+					m.predict(in, out, scratch);
+				    }
+				mTime += System.nanoTime() - start;
+			    }
+
+			System.out.println(((full == 1) ? "Full   " : "Random ") + "3 by " + neurons[j]
+					   + "\tmax difference " + diff
+					   + "\tspeedup " + ((double)nTime / mTime));
+		    }
+	    }
+    }
+}
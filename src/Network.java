@@ -1,28 +1,49 @@
 /**
  * A Network class.
+ * The weights of the links are held in one contiguous array of doubles
+ * and their activity in a packed bit mask, 64 links to a word.
+ * The links into a neuron sit next to each other in the array,
+ * so the index of a link is found from the layer it leads into rather than by a lookup.
  * @author Rob Impey
  * @date 13-iii-03
  */
 
 import java.io.*;
 import java.awt.*;
+import java.util.*;
+import java.util.concurrent.*;
 
-public class Network implements Serializable
+public class Network implements NeuralNetwork
 {
+    // The bounds used by adjustWeight to stop the weights getting extreme values
+    private static final double WEIGHT_LIMIT = 100000;
+
     /**
      * The instance fields.
      */
     private Genome genome;
     private int generation;
-    private Link[] weights;
+    private double[] weights; // The weights of the links
+    private long[] activity; // The activity of the links, one bit per link
+    private int[] layerStarts; // The index of the first link leading into each hidden layer and the output layer
     private double learningRate, sumSqError;
-    private InputNeuron[] inputNeurons;
-    private HiddenNeuron[][] hiddenNeurons;
-    private OutputNeuron[] outputNeurons;
-  
+    private Activation activation; // How the hidden neurons calculate the sigmoid
+    private int batchSize; // The number of examples per weight update, 0 for online training
+    private int asynchronousThreads; // The number of shards for asynchronous online training, 0 or 1 for none
+    private EarlyStopping earlyStopping; // When to stop training early, null to run every epoch
+    private EvaluationSchedule evaluationSchedule; // When to test while training, null to test in full every epoch
+    private Optimizer optimizer; // Turns the back propagation steps into changes to the weights, null for plain steps
+    private transient Checkpoint checkpoint; // Where training is saved, null for nowhere
+    private transient ForkJoinPool pool; // The threads for mini-batch training, null for the shared pool
+    private transient SparseNetwork compiled; // The active links compiled for inference, null when the activity changes
+    private transient boolean weightsChanged; // Whether the weights have changed since they were last compiled
+
     /**
      * Creates a new Network and sets up the weights.
      * The weights are stored in a 1D array.
+     * The links leading into the first hidden layer come first, then those between the hidden layers
+     * and finally those leading into the outputs.
+     * Within a layer, the links into each neuron are stored together.
      * The default range for the weights (1.0 to -1.0) is used.
      * @param _g The Genome.
      * @param _generation The generation in which this Network occurs.
@@ -33,60 +54,24 @@ public class Network implements Serializable
 	genome = _g;
 	generation = _generation;
 	learningRate = _lR;
+	activation = Activation.EXACT;
 
-	// Create the weights
-	weights = new Link[genome.getBinStringLength()];
+	// Create the weights and their activity
+	weights = new double[genome.getBinStringLength()];
+	activity = new long[(weights.length + 63) >>> 6];
 
 	for (int i = 0; i < weights.length; i++)
 	    {
-		weights[i] = new Link(genome.getBit(i));
-	    }
-
-	// Set up the database of neurons and their connections
-	int counter = 0; 
-	inputNeurons = new InputNeuron[genome.getInputs()];
-	hiddenNeurons = new HiddenNeuron[genome.getHiddenLayers()][genome.getNeuronsInHiddenLayer()];
-	// The first hidden layer
-	for (int i = 0; i < genome.getNeuronsInHiddenLayer(); i++)
-	    {
-		hiddenNeurons[0][i] = new HiddenNeuron(genome.getInputs(), genome.getNeuronsInHiddenLayer());
-		for (int j = 0; j < genome.getInputs(); j++)
-		    {		       
-			hiddenNeurons[0][i].setIncomingLink(j, counter);
-			inputNeurons[j] = new InputNeuron(genome.getNeuronsInHiddenLayer());
-			inputNeurons[j].setLink(i, counter);
-			counter++;
-		    }
-	    }
-	
-	// The remaining layers of hidden neurons
-	// NB The outgoing links of the neurons in the previous layer are set up here
-	for (int i = 1; i < genome.getHiddenLayers(); i++) // Loop through the layers of hidden neurons
-	    {
-		for (int j = 0; j < genome.getNeuronsInHiddenLayer(); j++) // Loop through the neurons in this layer
-		    {
-			hiddenNeurons[i][j] = new HiddenNeuron(genome.getNeuronsInHiddenLayer(), genome.getNeuronsInHiddenLayer());
-			for (int k = 0; k < genome.getNeuronsInHiddenLayer(); k++) // Loop through previous layer
-			    {
-				hiddenNeurons[i][j].setIncomingLink(k, counter);
-				hiddenNeurons[i - 1][k].setOutgoingLink(j, counter);
-				counter++;
-			    }
-		    }
+		weights[i] = (Math.random() * 2.0) - 1.0;
+		setActivity(i, genome.getBit(i));
 	    }
 
-	// The outputs
-	// NB The outgoing links of the neurons in the previous layer are set up here
-	outputNeurons = new OutputNeuron[genome.getOutputs()];
-	for (int i = 0; i < genome.getOutputs(); i++) // Loop through the output neurons 
+	// Find where the links into each layer begin
+	layerStarts = new int[genome.getHiddenLayers() + 1];
+	layerStarts[0] = 0;
+	for (int i = 1; i <= genome.getHiddenLayers(); i++)
 	    {
-		outputNeurons[i] = new OutputNeuron(genome.getNeuronsInHiddenLayer());
-		for (int j = 0; j < genome.getNeuronsInHiddenLayer(); j++) // loop through neurons in previous layer
-		    {
-			outputNeurons[i].setLink(j, counter);
-			hiddenNeurons[genome.getHiddenLayers() - 1][j].setOutgoingLink(i, counter);
-			counter++;
-		    }
+		layerStarts[i] = layerStarts[i - 1] + (getFanIn(i - 1) * genome.getNeuronsInHiddenLayer());
 	    }
     }
 
@@ -106,7 +91,7 @@ public class Network implements Serializable
      */
     public double getWeight(int _i)
     {
-	return weights[_i].getWeight();
+	return weights[_i];
     }
 
     /**
@@ -116,7 +101,29 @@ public class Network implements Serializable
      */
     public void setWeight(int _i, double _w)
     {
-	weights[_i].setWeight( _w);
+	weights[_i] = _w;
+	weightsChanged = true;
+    }
+
+    /**
+     * Starts this network from the trained weights of its parents, for Lamarckian evolution.
+     * Each link takes the weight of the parent that supplied its bit of the genome,
+     * if that link was active in that parent and so was trained.
+     * Other links, including those switched on by mutation, keep the random weights they were given.
+     * @param _a The first parent
+     * @param _b The second parent
+     * @param _fromA Whether each bit came from _a, as recorded by <code>Genome.uniformCross</code>
+     */
+    public void inheritWeights(NeuralNetwork _a, NeuralNetwork _b, boolean[] _fromA)
+    {
+	NeuralNetwork parent;
+
+	for (int i = 0; i < _fromA.length; i++)
+	    {
+		parent = _fromA[i] ? _a : _b;
+		if (parent.isActive(i))
+		    setWeight(i, parent.getWeight(i));
+	    }
     }
 
     /**
@@ -129,10 +136,9 @@ public class Network implements Serializable
     {
 	double w = 0;
 
-	for (int i = 0; i < weights.length; i++)
+	for (int i = 0; i < activity.length; i++)
 	    {
-		if (weights[i].isActive())
-		    w++;
+		w += Long.bitCount(activity[i]);
 	    }
 
 	w /= weights.length;
@@ -142,12 +148,45 @@ public class Network implements Serializable
 
     /**
      * Adjusts the weight of the _ith Link by _w.
+     * Stops weights getting extreme values.
      * @param _i The index of the weight to change.
      * @param _w The change for weight _i.
      */
     public void adjustWeight(int _i, double _w)
     {
-	weights[_i].adjustWeight(_w);
+	double w = weights[_i] + _w;
+
+	if (w > WEIGHT_LIMIT)
+	    w = WEIGHT_LIMIT;
+	else if (w < -WEIGHT_LIMIT)
+	    w = -WEIGHT_LIMIT;
+
+	weights[_i] = w;
+	weightsChanged = true;
+    }
+
+    /**
+     * Changes a weight by a back propagation step, through the Optimizer if there is one.
+     * @param _i The index of the weight
+     * @param _s The plain step for weight _i
+     * @param _o The update being made, for the Optimizer
+     */
+    private void step(int _i, double _s, Optimizer.Step _o)
+    {
+	if (optimizer == null)
+	    adjustWeight(_i, _s);
+	else
+	    adjustWeight(_i, optimizer.getChange(_i, _s, _o));
+    }
+
+    /**
+     * Says whether a weight is active or not.
+     * @param _i The index of the weight
+     * @return Whether the _ith weight is active
+     */
+    public boolean isActive(int _i)
+    {
+	return (activity[_i >>> 6] & (1L << _i)) != 0;
     }
 
     /**
@@ -157,7 +196,12 @@ public class Network implements Serializable
      */
     public void setActivity(int _i, boolean _a)
     {
-	weights[_i].setActivity(_a);
+	if (_a)
+	    activity[_i >>> 6] |= (1L << _i);
+	else
+	    activity[_i >>> 6] &= ~(1L << _i);
+
+	compiled = null;
     }
 
     /**
@@ -178,6 +222,154 @@ public class Network implements Serializable
 	learningRate = _lR;
     }
 
+    /**
+     * Sets when train may stop before all its epochs have run.
+     * @param _s The early stopping policy, or null to always run every epoch
+     */
+    public void setEarlyStopping(EarlyStopping _s)
+    {
+	earlyStopping = _s;
+    }
+
+    /**
+     * @return The early stopping policy, or null if there is none
+     */
+    public EarlyStopping getEarlyStopping()
+    {
+	return earlyStopping;
+    }
+
+    /**
+     * Sets when train tests the network.
+     * @param _s The schedule, or null to test with the whole test set every epoch
+     */
+    public void setEvaluationSchedule(EvaluationSchedule _s)
+    {
+	evaluationSchedule = _s;
+    }
+
+    /**
+     * @return The evaluation schedule, or null if the network is tested every epoch
+     */
+    public EvaluationSchedule getEvaluationSchedule()
+    {
+	return evaluationSchedule;
+    }
+
+    /**
+     * Sets how the back propagation steps are turned into changes to the weights.
+     * The Optimizer keeps state for this network, so it should not be shared with another.
+     * @param _o The Optimizer, or null for plain steps
+     */
+    public void setOptimizer(Optimizer _o)
+    {
+	optimizer = _o;
+    }
+
+    /**
+     * @return The Optimizer, or null if plain steps are taken
+     */
+    public Optimizer getOptimizer()
+    {
+	return optimizer;
+    }
+
+    /**
+     * Sets where and how often training saves a checkpoint that it can be resumed from.
+     * @param _c The Checkpoint, or null for none
+     */
+    public void setCheckpoint(Checkpoint _c)
+    {
+	checkpoint = _c;
+    }
+
+    /**
+     * @return The Checkpoint, or null if there is none
+     */
+    public Checkpoint getCheckpoint()
+    {
+	return checkpoint;
+    }
+
+    /**
+     * Returns the number of examples in each mini-batch.
+     * @return The batch size, or 0 if the network is trained online
+     */
+    public int getBatchSize()
+    {
+	return batchSize;
+    }
+
+    /**
+     * Sets how train updates the weights.
+     * With a batch size of 0, the default, the weights are updated after every example.
+     * Otherwise the gradients of each batch of examples are found in parallel and
+     * summed before the weights are updated once, so the same learning rate suits both modes.
+     * @param _b The number of examples in each batch, or 0 for online training
+     */
+    public void setBatchSize(int _b)
+    {
+	batchSize = _b;
+    }
+
+    /**
+     * Returns the number of shards the examples are split into for asynchronous training.
+     * @return The number of shards, or 0 if the network is trained on one thread
+     */
+    public int getAsynchronousThreads()
+    {
+	return asynchronousThreads;
+    }
+
+    /**
+     * Sets online training to run on several threads at once, Hogwild style.
+     * Each epoch, the training set is split into this many shards, and each shard is trained online,
+     * with the same update for each example as on one thread, on its own thread of the training pool.
+     * The threads read and change the weights, and the per-weight state of any Optimizer, without locks,
+     * so they sometimes see each other's changes late or overwrite them;
+     * with sparse updates such as these this costs little accuracy.
+     * Each shard has its own Optimizer.Step, so the learning rate and Adam's bias corrections of an update
+     * are never overwritten by another thread, and Adam counts the updates of every shard atomically.
+     * The results are not repeatable.
+     * Mini-batch training, if set, takes precedence.
+     * @param _t The number of shards, or 0 or 1 to train on one thread
+     */
+    public void setAsynchronousThreads(int _t)
+    {
+	asynchronousThreads = _t;
+    }
+
+    /**
+     * Sets the threads that mini-batch and asynchronous training run on.
+     * Each batch is split into one chunk per thread of the pool,
+     * so the trained weights depend on the parallelism of the pool but not on how the threads are scheduled.
+     * @param _p The pool, or null for a pool shared by all networks with a thread for each processor
+     */
+    public void setTrainingPool(ForkJoinPool _p)
+    {
+	pool = _p;
+    }
+
+    /**
+     * Returns the way the hidden neurons calculate the sigmoid.
+     * @return The activation mode of the network
+     */
+    public Activation getActivation()
+    {
+	return activation;
+    }
+
+    /**
+     * Sets the way the hidden neurons calculate the sigmoid, for both running and training the network.
+     * A fast approximation can be used while evolving and EXACT kept for the final validation.
+     * @param _a The new activation mode
+     */
+    public void setActivation(Activation _a)
+    {
+	activation = _a;
+	compiled = null;
+    }
+
     /**
      * Returns the genome of the network
      * @return The genome for the network
@@ -188,86 +380,206 @@ public class Network implements Serializable
     }
 
     /**
-     * Returns the output of the network for a given Tuple _t.
-     * The output is an array of doubles.
-     * The method builds local arrays of doubles that store the values of the outputs of each neuron.
-     * The hidden neurons have sigmoid activation functions.
-     * The output of the sigmoid function lies in the range 0.0 to 1.0.
-     * The outputs of the function we are trying to approximate lie in the range 0.0 to 8.0.
-     * The output of a neuron in the final layer is the weighted sum of its inputs.
-     * This sum is not put through the sigmoid function. 
-     * @param _t The Tuple
-     * @return The output for the Tuple _t as an array of doubles.
+     * @return The generation in which this Network occurs
      */
-    public double[] getOutput(Tuple _t)
+    public int getGeneration()
     {
-	double[] in = new double[genome.getInputs()]; // The output of the input neurons
-	double[][] hidden = new double[genome.getHiddenLayers()][genome.getNeuronsInHiddenLayer()]; // The outputs of the hidden neurons
-	double[] out = new double[genome.getOutputs()]; // The outputs of the output neurons
+	return generation;
+    }
+
+    /**
+     * Returns the number of links leading into each neuron of a layer.
+     * Layers 0 to hiddenLayers - 1 are the hidden layers and layer hiddenLayers is the output layer.
+     * @param _l The layer
+     * @return The number of neurons in the layer before _l
+     */
+    private int getFanIn(int _l)
+    {
+	if (_l == 0)
+	    return genome.getInputs();
+	else
+	    return genome.getNeuronsInHiddenLayer();
+    }
+
+    /**
+     * Returns the index of the link from neuron _f in the previous layer to neuron _n in layer _l.
+     * @param _l The layer that the link leads into (hiddenLayers for the output layer)
+     * @param _n The neuron in layer _l
+     * @param _f The neuron in the previous layer
+     * @return The index of the link in the array of weights
+     */
+    public int getLinkIndex(int _l, int _n, int _f)
+    {
+	return layerStarts[_l] + (_n * getFanIn(_l)) + _f;
+    }
 
-	double wSI = 0.0; // Used to calculate the weigted sum of the inputs to a neuron
+    /**
+     * Runs a Tuple forwards through the network, leaving the outputs of every neuron in the arrays given.
+     * @param _t The Tuple
+     * @param _in For the outputs of the input neurons
+     * @param _hidden For the outputs of the hidden neurons
+     * @param _out For the outputs of the output neurons
+     */
+    private void propagate(Tuple _t, double[] _in, double[][] _hidden, double[] _out)
+    {
+	int nH = genome.getNeuronsInHiddenLayer();
+	int nL = genome.getHiddenLayers();
+	double wSI; // Used to calculate the weigted sum of the inputs to a neuron
 
 	// Calculate the outputs of the input neurons
-	for (int cIN = 0; cIN < in.length; cIN++) // cIN is current input neuron
+	for (int cIN = 0; cIN < _in.length; cIN++) // cIN is current input neuron
 	    {
-		// in[cIN] = getSigmoid(_t.getInput(cIN));
-		in[cIN] = _t.getInput(cIN);
+		// _in[cIN] = getSigmoid(_t.getInput(cIN));
+		_in[cIN] = _t.getInput(cIN);
 	    }
-	
+
 	// Calculate the outputs of the first layer of hidden neurons
-	for (int cHN = 0; cHN < genome.getNeuronsInHiddenLayer(); cHN++) // cHN is current hidden neuron
+	for (int cHN = 0; cHN < nH; cHN++) // cHN is current hidden neuron
 	    {
 		// Calculate the weighted sum of the inputs to each neuron
-		wSI = 0.0;
-		
-		for (int fIN = 0; fIN < in.length; fIN++) // fIN is from input neuron
-		    {
-			if (weights[hiddenNeurons[0][cHN].getIncomingLink(fIN)].isActive())
-			    wSI += in[fIN] * weights[hiddenNeurons[0][cHN].getIncomingLink(fIN)].getWeight();
-		    }
+		wSI = Kernels.maskedDot(weights, activity, getLinkIndex(0, cHN, 0), _in, _in.length);
 
-		hidden[0][cHN] = getSigmoid(wSI);
+		_hidden[0][cHN] = activation.getSigmoid(wSI);
 	    }
-	
+
 	// Calculate the outputs of the remaining layers of hidden neurons
-	for (int cHL = 1; cHL < genome.getHiddenLayers(); cHL++) // cHL is current hidden layer
+	for (int cHL = 1; cHL < nL; cHL++) // cHL is current hidden layer
 	    {
-		for (int cHN = 0; cHN < genome.getNeuronsInHiddenLayer(); cHN++) // Loop through the neurons in a layer
+		for (int cHN = 0; cHN < nH; cHN++) // Loop through the neurons in a layer
 		    {
 			// Calculate the weighted sum of the inputs to each neuron
-			wSI = 0.0;
-
-			for (int fHN = 0; fHN < genome.getNeuronsInHiddenLayer(); fHN++) // fHN is from hidden neuron
-			    {
-				if (weights[hiddenNeurons[cHL][cHN].getIncomingLink(fHN)].isActive())
-				    wSI += hidden[cHL - 1][fHN] 
-					* weights[hiddenNeurons[cHL][cHN].getIncomingLink(fHN)].getWeight();
-			    }
+			wSI = Kernels.maskedDot(weights, activity, getLinkIndex(cHL, cHN, 0), _hidden[cHL - 1], nH);
 
-			hidden[cHL][cHN] = getSigmoid(wSI);
+			_hidden[cHL][cHN] = activation.getSigmoid(wSI);
 		    }
 	    }
 
 	// Calculating the values of the outputs
-	for (int cON = 0; cON < out.length; cON++) // cON is current output neuron
+	for (int cON = 0; cON < _out.length; cON++) // cON is current output neuron
 	    {
 		// Calculate the weighted sum of the inputs to each neuron
-		wSI = 0.0;
+		wSI = Kernels.maskedDot(weights, activity, getLinkIndex(nL, cON, 0), _hidden[nL - 1], nH);
 
-		for (int fHN = 0; fHN < genome.getNeuronsInHiddenLayer(); fHN++) // fHN is from hidden neuron
-		    {
-			if (weights[outputNeurons[cON].getLink(fHN)].isActive())
-			    wSI += hidden[genome.getHiddenLayers() - 1][fHN] 
-				* weights[outputNeurons[cON].getLink(fHN)].getWeight();
-		    }
+		_out[cON] = wSI;
+	    }
+    }
+
+    /**
+     * Returns the active links of the network compiled for inference.
+     * The compiled form is built when it is first needed and thrown away whenever the activity of a link changes.
+     * When only the weights have changed, they are copied into the existing compiled form,
+     * so training does not allocate a new one every epoch.
+     * The compiled form belongs to this network and changes with it.
+     * @return The compiled network
+     */
+    public SparseNetwork compile()
+    {
+	SparseNetwork c = compiled;
 
-		out[cON] = wSI;
+	if (c == null)
+	    {
+		c = new SparseNetwork(this);
+		compiled = c;
+		weightsChanged = false;
 	    }
+	else if (weightsChanged)
+	    {
+		c.updateWeights(this);
+		weightsChanged = false;
+	    }
+
+	return c;
+    }
+
+    /**
+     * Takes an immutable copy of the network for inference.
+     * The copy can be shared between threads while this network goes on training.
+     * @return The snapshot
+     */
+    public InferenceModel snapshot()
+    {
+	return new InferenceModel(this);
+    }
+
+    /**
+     * Returns the output of the network for a given Tuple _t.
+     * The output is an array of doubles.
+     * The method builds local arrays of doubles that store the values of the outputs of each neuron.
+     * The hidden neurons have sigmoid activation functions.
+     * The output of the sigmoid function lies in the range 0.0 to 1.0.
+     * The outputs of the function we are trying to approximate lie in the range 0.0 to 8.0.
+     * The output of a neuron in the final layer is the weighted sum of its inputs.
+     * This sum is not put through the sigmoid function.
+     * Only the active links are visited, using the compiled form of the network.
+     * The scratch space comes from the Workspace of the calling thread.
+     * @param _t The Tuple
+     * @return The output for the Tuple _t as an array of doubles.
+     */
+    public double[] getOutput(Tuple _t)
+    {
+	double[] out = new double[genome.getOutputs()]; // The outputs of the output neurons
+
+	getOutput(_t, Workspace.get(genome), out);
 
 	return out;
     }
 
-    /** 
+    /**
+     * Finds the output of the network for a given Tuple _t without allocating.
+     * @param _t The Tuple
+     * @param _w The scratch space to use
+     * @param _out For the outputs of the network
+     */
+    public void getOutput(Tuple _t, Workspace _w, double[] _out)
+    {
+	for (int cIN = 0; cIN < _w.in.length; cIN++) // cIN is current input neuron
+	    {
+		_w.in[cIN] = _t.getInput(cIN);
+	    }
+
+	compile().getOutput(_w.in, _w.hidden, _out);
+    }
+
+    /**
+     * Returns the outputs of the network for an array of Tuples.
+     * The Tuples are run through the compiled network in blocks, a layer at a time,
+     * reusing the same buffers for every block.
+     * @param _v The Tuples
+     * @param _out For the outputs; _out[i] receives the output for Tuple _v[i]
+     */
+    public void getOutputs(Tuple[] _v, double[][] _out)
+    {
+	getOutputs(_v, Workspace.get(genome), _out);
+    }
+
+    /**
+     * Finds the outputs of the network for an array of Tuples without allocating.
+     * @param _v The Tuples
+     * @param _w The scratch space to use
+     * @param _out For the outputs; _out[i] receives the output for Tuple _v[i]
+     */
+    public void getOutputs(Tuple[] _v, Workspace _w, double[][] _out)
+    {
+	SparseNetwork c = compile();
+	double[] o;
+	int rows;
+
+	for (int first = 0; first < _v.length; first += SparseNetwork.BLOCK_SIZE)
+	    {
+		rows = Math.min(SparseNetwork.BLOCK_SIZE, _v.length - first);
+		o = c.getOutputs(_v, first, rows, _w.blockA, _w.blockB);
+
+		for (int r = 0; r < rows; r++)
+		    {
+			for (int cON = 0; cON < genome.getOutputs(); cON++)
+			    {
+				_out[first + r][cON] = o[(cON * rows) + r];
+			    }
+		    }
+	    }
+    }
+
+    /**
      * Calculates the error of the network for a given Tuple _t.
      * The error is the target output (of Tuple _t) minus the networks output.
      * @param _t The tuple whose error we want to find.
@@ -275,36 +587,66 @@ public class Network implements Serializable
      */
     public double[] getError(Tuple _t)
     {
-	double[] o, e;
+	double[] e = new double[genome.getOutputs()];
 
-	o = this.getOutput(_t);
-	e = new double[o.length];
+	getError(_t, Workspace.get(genome), e);
 
-	for (int i = 0; i < o.length; i++)
+	return e;
+    }
+
+    /**
+     * Finds the error of the network for a given Tuple _t without allocating.
+     * @param _t The tuple whose error we want to find.
+     * @param _w The scratch space to use
+     * @param _e For the errors of the outputs
+     */
+    public void getError(Tuple _t, Workspace _w, double[] _e)
+    {
+	getOutput(_t, _w, _w.out);
+
+	for (int i = 0; i < _e.length; i++)
 	    {
-		e[i] = _t.getOutput(i) - o[i];
+		_e[i] = _t.getOutput(i) - _w.out[i];
 	    }
-
-	return e;
     }
 
     /**
      * Calculates the average sum of squared errors of the network for a given array of Tuples
+     * The Tuples are run through the network in blocks, as in getOutputs.
      * @param _v The set of Tuples
      * @return The SSE
      */
     public double getSSE(Tuple[] _v)
     {
+	return getSSE(_v, Workspace.get(genome));
+    }
+
+    /**
+     * Calculates the average sum of squared errors of the network for a given array of Tuples without allocating.
+     * @param _v The set of Tuples
+     * @param _w The scratch space to use
+     * @return The SSE
+     */
+    public double getSSE(Tuple[] _v, Workspace _w)
+    {
+	SparseNetwork c = compile();
+	double[] o;
 	double sSE = 0.0;
-	double[] e;
+	double e;
+	int rows;
 
-	for (int i = 0; i < _v.length; i++)
+	for (int first = 0; first < _v.length; first += SparseNetwork.BLOCK_SIZE)
 	    {
-		e = this.getError(_v[i]);
+		rows = Math.min(SparseNetwork.BLOCK_SIZE, _v.length - first);
+		o = c.getOutputs(_v, first, rows, _w.blockA, _w.blockB);
 
-		for (int j = 0; j < e.length; j++)
+		for (int r = 0; r < rows; r++)
 		    {
-			sSE += e[j] * e[j];
+			for (int cON = 0; cON < genome.getOutputs(); cON++)
+			    {
+				e = _v[first + r].getOutput(cON) - o[(cON * rows) + r];
+				sSE += e * e;
+			    }
 		    }
 	    }
 
@@ -313,7 +655,7 @@ public class Network implements Serializable
 
     /**
      * Finds the SSE of the network for a given array of Tuples
-     * @param _v The set of Tuples 
+     * @param _v The set of Tuples
      */
     public void cacheSSE(Tuple[] _v)
     {
@@ -328,10 +670,127 @@ public class Network implements Serializable
 	return sumSqError;
     }
 
-    /** 
+    /**
+     * Keeps an SSE found before, for example by a FitnessCache.
+     * @param _sSE The SSE
+     */
+    public void setCachedSSE(double _sSE)
+    {
+	sumSqError = _sSE;
+    }
+
+    /**
+     * Makes the online back propagation update for one example, as train does for each example of an epoch.
+     * The weights are only read and changed one at a time, so several threads may call this at once
+     * on the same network, each with its own Workspace and Optimizer.Step.
+     * @param _t The example
+     * @param _w The scratch space to use
+     * @param _o The update, for the Optimizer
+     */
+    private void trainExample(Tuple _t, Workspace _w, Optimizer.Step _o)
+    {
+	if (optimizer != null)
+	    optimizer.beginStep(learningRate, _o);
+
+	backPropagate(_t, _w, null, _o);
+    }
+
+    /**
+     * Runs one example forwards through the network and its errors back.
+     * The forward pass leaves the output of every neuron in the Workspace,
+     * and the backward pass uses them without running the network again:
+     * the derivative of the sigmoid at a hidden neuron is found from its output y as y * (1 - y).
+     * Working back a layer at a time, the deltas of the layer before are found from the weights
+     * into a layer before those weights are changed, so every delta comes from the weights the example was run with.
+     * @param _t The example
+     * @param _w The scratch space to use
+     * @param _sum null to step each weight as soon as its change is known,
+     * or an array to which the gradient of the weights (without the learning rate) is added instead
+     * @param _o The update, for the Optimizer, when _sum is null
+     */
+    private void backPropagate(Tuple _t, Workspace _w, double[] _sum, Optimizer.Step _o)
+    {
+	int nH = genome.getNeuronsInHiddenLayer();
+	int nL = genome.getHiddenLayers();
+	int nO = genome.getOutputs();
+	double[] in = _w.in; // The output of the input neurons
+	double[][] hidden = _w.hidden; // The outputs of the hidden neurons
+	double[] out = _w.out; // The outputs of the output neurons
+	double[][] hiddenDeltas = _w.hiddenDeltas;
+	double[] deltas; // The delta values of the current layer
+	double[] previous; // The outputs of the layer before
+	double delta;
+	int row; // The index of the first link into the current neuron
+
+	// The forward pass
+	propagate(_t, in, hidden, out);
+
+	// The output neurons have linear activation functions, y = x.
+	// Therefore, dy/dx = 1
+	// delta_i = error_i, p. 579 of AIMA
+	for (int cON = 0; cON < nO; cON++) // Loop down the output neurons
+	    {
+		_w.outDeltas[cON] = _t.getOutput(cON) - out[cON];
+	    }
+
+	// The backward pass, from the links into the outputs to the links into the first hidden layer
+	for (int cL = nL; cL >= 0; cL--) // cL is the layer the links lead into
+	    {
+		deltas = (cL == nL) ? _w.outDeltas : hiddenDeltas[cL];
+		previous = (cL == 0) ? in : hidden[cL - 1];
+
+		// delta_j = sigDeriv(in_j) * sum_i(w_ji * delta_i), p 580, AIMA
+		if (cL > 0)
+		    {
+			Arrays.fill(hiddenDeltas[cL - 1], 0.0);
+			for (int cN = 0; cN < deltas.length; cN++)
+			    {
+				Kernels.maskedAxpy(deltas[cN], weights, activity, getLinkIndex(cL, cN, 0), hiddenDeltas[cL - 1], nH);
+			    }
+			Kernels.sigmoidDerivative(hiddenDeltas[cL - 1], previous, nH);
+		    }
+
+		// w_ji += lR * out_j * delta_i, p. 579 of AIMA
+		for (int cN = 0; cN < deltas.length; cN++)
+		    {
+			row = getLinkIndex(cL, cN, 0);
+			delta = deltas[cN];
+			for (int fN = 0; fN < previous.length; fN++)
+			    {
+				if (isActive(row + fN))
+				    {
+					if (_sum == null)
+					    step(row + fN, learningRate * delta * previous[fN], _o);
+					else
+					    _sum[row + fN] += delta * previous[fN];
+				    }
+			    }
+		    }
+	    }
+    }
+
+    /**
+     * Finds the gradient of the error of the network for some examples, in the direction that train steps.
+     * This is minus the gradient of half the sum of the squared errors,
+     * and is used to check back propagation against finite differences.
+     * @param _v The examples
+     * @param _g For the gradient of each weight; the entries of inactive links are left at 0
+     */
+    public void getGradient(Tuple[] _v, double[] _g)
+    {
+	Workspace w = Workspace.get(genome);
+
+	Arrays.fill(_g, 0.0);
+	for (int i = 0; i < _v.length; i++)
+	    {
+		backPropagate(_v[i], w, _g, null);
+	    }
+    }
+
+    /**
      * Trains the network with _tr, an array of Tuples, for _e epochs using BP.
      * At the end of each epoch, the network is tested with an array of Tuples, _te.
-     * The MSSE of this test set is recorded in an array of doubles.
+     * The MSSE of this test set is recorded, at the epochs set by the evaluation schedule.
      * @param _tr The training set.
      * @param _te The training set.
      * @param _e The number of epochs to train for.
@@ -339,286 +798,264 @@ public class Network implements Serializable
      */
     public NetworkPerformance train(Tuple[] _tr, Tuple[] _te, int _e)
     {
-	// Variables used to train the network
-       	double[] in = new double[genome.getInputs()]; // The output of the input neurons
-	double[][] hidden = new double[genome.getHiddenLayers()][genome.getNeuronsInHiddenLayer()]; // The outputs of the hidden neurons
-	double[] out = new double[genome.getOutputs()]; // The outputs of the output neurons	
-	double wSI = 0.0; // Used to calculate the weigted sum of the inputs to a neuron
-	double wSD = 0.0; // Used to calculate the weighted sum of the delta values of the neurons in the next layer
-	double[] outDeltas = new double[genome.getOutputs()]; // The delta values of the output neurons
-	double[][] hiddenDeltas = new double[genome.getHiddenLayers()][genome.getNeuronsInHiddenLayer()];
-	
-	// Variables used to test the network
-	double[] e = new double[genome.getOutputs()]; // The errors of the network for the test set
-	double sSE = 0.0; // The sum of the squared errors of the network for the test set
-	double[] sSEs = new double[_e]; // To store the SSEs of the network at the end of each epoch for graph
+	return train(_tr, _te, _e, Workspace.get(genome));
+    }
 
-	for (int currentEpoch = 0; currentEpoch < _e; currentEpoch++) // Loop of training epochs
+    /**
+     * Trains the network as <code>train(_tr, _te, _e)</code> does, taking its scratch space from _w.
+     * @param _tr The training set.
+     * @param _te The training set.
+     * @param _e The number of epochs to train for.
+     * @param _w The scratch space to use
+     * @return a NetworkPerformance object to show how well the Network trained
+     */
+    public NetworkPerformance train(Tuple[] _tr, Tuple[] _te, int _e, Workspace _w)
+    {
+	return train(_tr, new TrainingRecord(this, _te, _e), _w);
+    }
+
+    /**
+     * Carries on training from the last checkpoint, for the rest of the epochs it was started with.
+     * The network must have been made from the same genome and given the same settings,
+     * including the size of the training pool for mini-batches;
+     * the result is then the same as if training had never stopped.
+     * @param _tr The training set.
+     * @param _te The test set.
+     * @return a NetworkPerformance object to show how well the Network trained, from the first epoch
+     * @throws IOException If there is no checkpoint or it does not fit the network
+     */
+    public NetworkPerformance resume(Tuple[] _tr, Tuple[] _te) throws IOException
+    {
+	return train(_tr, TrainingRecord.resume(this, _te), Workspace.get(genome));
+    }
+
+    /**
+     * Trains the network from the first epoch of a record to its last.
+     * @param _tr The training set.
+     * @param _record Tests the network at the end of each epoch
+     * @param _w The scratch space to use
+     * @return a NetworkPerformance object to show how well the Network trained
+     */
+    private NetworkPerformance train(Tuple[] _tr, TrainingRecord _record, Workspace _w)
+    {
+	if (batchSize > 0)
+	    return trainMiniBatch(_tr, _record);
+	if (asynchronousThreads > 1)
+	    return trainAsynchronous(_tr, _record);
+
+	Optimizer.Step update = new Optimizer.Step();
+
+	if (optimizer != null)
+	    optimizer.start(weights.length);
+
+	for (int currentEpoch = _record.getFirstEpoch(); currentEpoch < _record.getEpochs(); currentEpoch++) // Loop of training epochs
 	    {
 		///////////////////////
 		// Train the network //
 		///////////////////////
 		for (int currentExample = 0; currentExample < _tr.length; currentExample++) // Loop for each example
 		    {
-			// COMPUTE THE DELTA VALUES OF THE OUTPUTS FOR THIS EXAMPLE
-			// Calculate the outputs of the input neurons
-			for (int cIN = 0; cIN < in.length; cIN++) // cIN is current input neuron 
-			    {
-				// in[cIN] = getSigmoid(_tr[currentExample].getInput(cIN));
-				in[cIN] = _tr[currentExample].getInput(cIN);
-			    }
-			
-			// Calculate the outputs of the first layer of hidden neurons
-			for (int cHN = 0; cHN < genome.getNeuronsInHiddenLayer(); cHN++) // cHN is current hidden neuron
-			    {
-				// Calculate the weighted sum of the inputs to each neuron
-				wSI = 0.0;
-				
-				for (int fIN = 0; fIN < in.length; fIN++) // fIN is from input neuron
-				    {
-					if (weights[hiddenNeurons[0][cHN].getIncomingLink(fIN)].isActive())
-					    wSI += in[fIN] 
-						* weights[hiddenNeurons[0][cHN].getIncomingLink(fIN)].getWeight();
-				    }
-				
-				hidden[0][cHN] = getSigmoid(wSI);
-			    }
-			
-			// Calculate the outputs of the remaining layers of hidden neurons
-			for (int cHL = 1; cHL < genome.getHiddenLayers(); cHL++) // cHL is current hidden layer
-			    {
-				for (int cHN = 0; cHN< genome.getNeuronsInHiddenLayer(); cHN++) // cHN is current hidden neuron
-				    {
-					// Calculate the weighted sum of the inputs to each neuron
-					wSI = 0.0;
-					
-					for (int fHN = 0; fHN < genome.getNeuronsInHiddenLayer(); fHN++) // fHN is from hidden neuron
-					    {
-						if (weights[hiddenNeurons[cHL][cHN].getIncomingLink(fHN)].isActive())
-						    wSI += hidden[cHL - 1][fHN] 
-							* weights[hiddenNeurons[cHL][cHN].getIncomingLink(fHN)]
-							.getWeight();
-					    }
-					
-					hidden[cHL][cHN] = getSigmoid(wSI);
-				    }
-			    }
-			
-			// Calculating the values of the outputs
-			for (int cON = 0; cON < out.length; cON++) // cON is current output neuron
+			trainExample(_tr[currentExample], _w, update);
+		    } // End of example
+
+		// CALCULATE THE SSE FOR THE EXAMPLES IN THE TEST SET //
+
+		if (_record.endEpoch(currentEpoch))
+		    break;
+	    } // End of loop of epochs
+
+	return _record.getPerformance(generation, _tr.length, learningRate);
+    }
+
+    // The pool used by mini-batch training when a network is not given one
+    private static ForkJoinPool sharedPool;
+
+    /**
+     * Returns the pool shared by networks that were not given one, starting it if need be.
+     * @return The shared pool
+     */
+    private static synchronized ForkJoinPool getSharedPool()
+    {
+	if (sharedPool == null)
+	    sharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+	return sharedPool;
+    }
+
+    /**
+     * Finds the gradient of the squared error over a run of examples, for one chunk of a mini-batch.
+     * Each chunk has its own buffer and scratch space, so the chunks can run at the same time
+     * while the weights are only read.
+     */
+    private class Gradient extends RecursiveAction
+    {
+	final double[] sum = new double[weights.length]; // The summed steps for each weight
+	final Workspace workspace = new Workspace(genome);
+	Tuple[] examples;
+	int from, to; // The examples of this chunk
+
+	protected void compute()
+	{
+	    Arrays.fill(sum, 0.0);
+
+	    for (int currentExample = from; currentExample < to; currentExample++)
+		{
+		    backPropagate(examples[currentExample], workspace, sum, null);
+		}
+	}
+    }
+
+    /**
+     * Trains one shard of the training set online, for asynchronous training.
+     */
+    private class Shard extends RecursiveAction
+    {
+	final Workspace workspace = new Workspace(genome);
+	final Optimizer.Step update = new Optimizer.Step(); // This shard's learning rate and bias corrections
+	Tuple[] examples;
+	int from, to; // The examples of this shard
+
+	protected void compute()
+	{
+	    for (int currentExample = from; currentExample < to; currentExample++)
+		{
+		    trainExample(examples[currentExample], workspace, update);
+		}
+	}
+    }
+
+    /**
+     * Trains the network online on several threads at once, as set by <code>setAsynchronousThreads</code>.
+     * The shards of each epoch are joined before the network is tested.
+     * Each shard begins its updates with its own Optimizer.Step, so a stateful Optimizer such as Adam
+     * races only on its per-weight arrays, as the weights do.
+     * @param _tr The training set.
+     * @param _record Tests the network at the end of each epoch
+     * @return a NetworkPerformance object to show how well the Network trained
+     */
+    private NetworkPerformance trainAsynchronous(Tuple[] _tr, TrainingRecord _record)
+    {
+	ForkJoinPool p = (pool == null) ? getSharedPool() : pool;
+	final Shard[] shards = new Shard[asynchronousThreads];
+
+	for (int s = 0; s < shards.length; s++)
+	    {
+		shards[s] = new Shard();
+	    }
+
+	if (optimizer != null)
+	    optimizer.start(weights.length);
+
+	for (int currentEpoch = _record.getFirstEpoch(); currentEpoch < _record.getEpochs(); currentEpoch++)
+	    {
+		for (int s = 0; s < shards.length; s++)
+		    {
+			shards[s].reinitialize();
+			shards[s].examples = _tr;
+			shards[s].from = (int)((long)_tr.length * s / shards.length);
+			shards[s].to = (int)((long)_tr.length * (s + 1) / shards.length);
+		    }
+		p.invoke(new RecursiveAction()
+		    {
+			protected void compute()
+			{
+			    invokeAll(shards);
+			}
+		    });
+
+		if (_record.endEpoch(currentEpoch))
+		    break;
+	    }
+
+	return _record.getPerformance(generation, _tr.length, learningRate);
+    }
+
+    /**
+     * Trains the network with mini-batches of examples, as set by <code>setBatchSize</code>.
+     * The examples of each batch are split into chunks whose gradients are found on the training pool.
+     * The chunks are then added together in order, so the result does not depend on which thread finished first,
+     * and the weights are updated once for the batch.
+     * @param _tr The training set.
+     * @param _record Tests the network at the end of each epoch
+     * @return a NetworkPerformance object to show how well the Network trained
+     */
+    private NetworkPerformance trainMiniBatch(Tuple[] _tr, TrainingRecord _record)
+    {
+	ForkJoinPool p = (pool == null) ? getSharedPool() : pool;
+	final Gradient[] chunks = new Gradient[p.getParallelism()];
+	Optimizer.Step update = new Optimizer.Step();
+	double step;
+	int size;
+
+	for (int c = 0; c < chunks.length; c++)
+	    {
+		chunks[c] = new Gradient();
+	    }
+
+	if (optimizer != null)
+	    optimizer.start(weights.length);
+
+	for (int currentEpoch = _record.getFirstEpoch(); currentEpoch < _record.getEpochs(); currentEpoch++)
+	    {
+		for (int first = 0; first < _tr.length; first += batchSize)
+		    {
+			size = Math.min(batchSize, _tr.length - first);
+
+			// Share the batch out and find the gradients
+			for (int c = 0; c < chunks.length; c++)
 			    {
-				// Calculate the weighted sum of the inputs to each neuron
-				wSI = 0.0;
-				
-				for (int fHN = 0; fHN < genome.getNeuronsInHiddenLayer(); fHN++) // loop through left layer
-				    {
-					if (weights[outputNeurons[cON].getLink(fHN)].isActive())
-					    wSI += hidden[genome.getHiddenLayers() - 1][fHN] 
-						* weights[outputNeurons[cON].getLink(fHN)].getWeight();
-				    }
-				
-				out[cON] = wSI;
+				chunks[c].reinitialize();
+				chunks[c].examples = _tr;
+				chunks[c].from = first + (int)((long)size * c / chunks.length);
+				chunks[c].to = first + (int)((long)size * (c + 1) / chunks.length);
 			    }
-		       	
-			// Calculate output delta values
-			// The output neurons have linear activation functions, y = x.
-			// Therefore, dy/dx = 1
-			// delta_i = error_i, p. 579 of AIMA
-			for (int cON = 0; cON < genome.getOutputs(); cON++) // Loop down the output neurons
+			p.invoke(new RecursiveAction()
 			    {
-				outDeltas[cON] = _tr[currentExample].getOutput(cON) - out[cON];
-			    }
-			
-			// UPDATE THE WEIGHTS OF THE LINKS LEADING TO THE OUTPUT LAYER
-			// w_ji += lR * out_j * delta_i , see p. 579 of AIMA
-			for (int cON = 0; cON < genome.getOutputs(); cON++) // Loop down the output neurons
+				protected void compute()
+				{
+				    invokeAll(chunks);
+				}
+			    });
+
+			// Add the chunks up in order and update the weights
+			if (optimizer != null)
+			    optimizer.beginStep(learningRate, update);
+			for (int i = 0; i < weights.length; i++)
 			    {
-				for(int fHN = 0; fHN < genome.getNeuronsInHiddenLayer(); fHN++) // down the last hidden layer
+				if (isActive(i))
 				    {
-					if (weights[outputNeurons[cON].getLink(fHN)].isActive())
+					step = 0.0;
+					for (int c = 0; c < chunks.length; c++)
 					    {
-						weights[outputNeurons[cON].getLink(fHN)]
-						    .adjustWeight(learningRate
-								  * outDeltas[cON] 
-								  * hidden[genome.getHiddenLayers() - 1][fHN]);
+						step += chunks[c].sum[i];
 					    }
+					step(i, learningRate * step, update);
 				    }
 			    }
-			
-			// THE HIDDEN NEURONS UPDATE
-			
-			// Calculate the delta values for the neurons in the last hidden layer
-			// delta_j = sigDeriv(inj) * sum_i(w_ji * delta_i), p 580, AIMA
-			for (int cHN = 0; cHN < genome.getNeuronsInHiddenLayer(); cHN++) // Down rightmost hidden layer
-			    {
-				// Estimate the effect this neuron will have on neurons in following layers
-				wSD = 0.0;
-				
-				for (int tON = 0; tON < genome.getOutputs(); tON++) // tON is to output neuron
-				    {
-					if (weights[hiddenNeurons[genome.getHiddenLayers() - 1][cHN]
-						    .getOutgoingLink(tON)].isActive())
-					    wSD += weights[hiddenNeurons[genome.getHiddenLayers() - 1][cHN]
-							   .getOutgoingLink(tON)].getWeight() 
-						* outDeltas[tON];
-				    }
-				
-				// Calculate the input to this neuron
-				wSI = 0.0;
-				for (int fHN = 0; fHN < genome.getNeuronsInHiddenLayer(); fHN++)
-				    {
-					if (weights[hiddenNeurons[genome.getHiddenLayers() - 1][cHN]
-						    .getIncomingLink(fHN)].isActive())
-					    wSI += weights[hiddenNeurons[genome.getHiddenLayers() - 1][cHN]
-							   .getIncomingLink(fHN)].getWeight() 
-						* hidden[genome.getHiddenLayers() - 2][fHN]; 
-				    }
-				
-				hiddenDeltas[genome.getHiddenLayers() - 1][cHN] = getSigmoidDerivative(wSI) * wSD;
-			    }				         
-			
-			// Update the incoming weights to the last hidden layer
-			// w_kj += lR * out_k * delta_j, see p. 580, AIMA
-			for (int cHN = 0; cHN < genome.getNeuronsInHiddenLayer(); cHN++)
-			    {
-				wSI = 0.0; // We want to know the input to this neuron
-				for (int fHN = 0; fHN < genome.getNeuronsInHiddenLayer(); fHN++)
-				    {
-					if (weights[hiddenNeurons[genome.getHiddenLayers() - 1][cHN]
-						    .getIncomingLink(fHN)].isActive())
-					    wSI += weights[hiddenNeurons[genome.getHiddenLayers() - 1][cHN]
-							   .getIncomingLink(cHN)].getWeight() 
-						* hidden[genome.getHiddenLayers() - 2][fHN]; 
+		    }
 
-				    }
+		if (_record.endEpoch(currentEpoch))
+		    break;
+	    }
 
-				// Update the weights
-				for (int fHN = 0; fHN < genome.getNeuronsInHiddenLayer(); fHN++)
-				    {
-					if (weights[hiddenNeurons[genome.getHiddenLayers() - 1][cHN]
-						    .getIncomingLink(fHN)].isActive())
-					    {
-						weights[hiddenNeurons[genome.getHiddenLayers() - 1][cHN].getIncomingLink(fHN)]
-						    .adjustWeight(learningRate
-								  * hiddenDeltas[genome.getHiddenLayers() - 1][cHN]
-								  * wSI);
-					    }
-				    }
-			    }
-			
-			// Calculate the delta values for the middle hidden layers
-			for (int cHL = genome.getHiddenLayers() - 2; cHL >= 1; cHL--) // cHL is current hidden layer
-			    {
-				for (int cHN = 0; cHN < genome.getNeuronsInHiddenLayer(); cHN++) // down hidden layer
-				    {
-					// Estimate the effect this neuron will have on neurons in following layers
-					wSD = 0.0;
-					
-					for (int tHN = 0; tHN < genome.getNeuronsInHiddenLayer(); tHN++) // tHN is to hidden neuron
-					    {
-						if (weights[hiddenNeurons[cHL][cHN].getOutgoingLink(tHN)].isActive())
-						    wSD += weights[hiddenNeurons[cHL][cHN].getOutgoingLink(tHN)]
-							.getWeight() 
-							* hiddenDeltas[cHL + 1][tHN];
-					    }
-					
-					// Calculate the input to this neuron
-					wSI = 0.0;
-					for (int fHN = 0; fHN < genome.getNeuronsInHiddenLayer(); fHN++)
-					    {
-						if (weights[hiddenNeurons[cHL][cHN].getIncomingLink(fHN)].isActive())
-						    wSI += weights[hiddenNeurons[cHL][cHN].getIncomingLink(fHN)]
-							.getWeight() 
-							* hidden[cHL - 1][fHN]; 
-					    }
-					
-					hiddenDeltas[cHL][cHN] = getSigmoidDerivative(wSI) * wSD;
-				    }
-			    } 
-			
-			// Update the incoming weights of the middle hidden layers
-			for (int cHL = genome.getHiddenLayers() - 2; cHL >= 1; cHL--) // Move leftward 
-			    {
-				for (int cHN = 0; cHN < genome.getNeuronsInHiddenLayer(); cHN++) // Down this hidden layer
-				    {
-					wSI = 0.0; // We want to know the input to this neuron
-					for (int fHN = 0; fHN < genome.getNeuronsInHiddenLayer(); fHN++)
-					    {
-						if (weights[hiddenNeurons[cHL][cHN].getIncomingLink(fHN)].isActive())
-						    {
-							wSI += weights[hiddenNeurons[cHL][cHN].getIncomingLink(fHN)]
-							    .getWeight() 
-							    * hidden[cHL - 1][fHN]; 					
-						    }
-					    }
-					
-					// Update the weights
-					for (int fHN = 0; fHN < genome.getNeuronsInHiddenLayer(); fHN++)
-					    {
-						if (weights[hiddenNeurons[cHL][cHN].getIncomingLink(fHN)].isActive())
-						    weights[hiddenNeurons[cHL][cHN].getIncomingLink(fHN)]
-							.adjustWeight(learningRate
-								      * hiddenDeltas[cHL][cHN]
-								      * wSI);
-					    }
-				    }
-			    }
-			
-			// Calculate the delta values for the first hidden layer
-			for (int cHN = 0; cHN < genome.getNeuronsInHiddenLayer(); cHN++) // down first hidden layer
-			    {
-				// Estimate the effect this neuron will have on neurons in following layers
-				wSD = 0.0;
-				
-				for (int tHN = 0; tHN < genome.getOutputs(); tHN++) // down next hidden layer layer
-				    {
-					if (weights[hiddenNeurons[0][cHN].getOutgoingLink(tHN)].isActive())
-					    wSD += weights[hiddenNeurons[0][cHN].getOutgoingLink(tHN)].getWeight() 
-						* hiddenDeltas[1][tHN];
-				    }
-				
-				// Calculate the input to this neuron
-				wSI = 0.0;
-				for (int fIN = 0; fIN < genome.getInputs(); fIN++) // down input layer
-				    {
-					if (weights[hiddenNeurons[0][cHN].getIncomingLink(fIN)].isActive())
-					    wSI += weights[hiddenNeurons[0][cHN].getIncomingLink(fIN)].getWeight() 
-						* in[fIN]; 
-				    }
-				
-				hiddenDeltas[0][cHN] = getSigmoidDerivative(wSI) * wSD;
-			    }
-			
-			// Update the incoming weights of the first hidden layer 
-			for (int cHN = 0; cHN < genome.getNeuronsInHiddenLayer(); cHN++) // down first hidden layer
-			    {
-				wSI = 0.0; // We want to know the input to this neuron
-				for (int fIN = 0; fIN < genome.getInputs(); fIN++)
-				    {
-					if (weights[hiddenNeurons[0][cHN].getIncomingLink(fIN)].isActive())
-					    wSI += weights[hiddenNeurons[0][cHN].getIncomingLink(fIN)].getWeight() 
-						* hidden[0][cHN]; 
-				    }
-				
-				for (int fIN = 0; fIN < genome.getInputs(); fIN++)
-				    {
-					if (weights[hiddenNeurons[0][cHN].getIncomingLink(fIN)].isActive())
-					    {
-						weights[hiddenNeurons[0][cHN].getIncomingLink(fIN)]
-						    .adjustWeight(learningRate
-								  * hiddenDeltas[0][cHN]
-								  * wSI);
-					    }
-				    }
-			    }		    
-		    } // End of example
-		
-		// CALCULATE THE SSE FOR THE EXAMPLES IN THE TEST SET //
-		
-		sSEs[currentEpoch] = this.getSSE(_te);
-	    } // End of loop of epochs
-	
-	return new NetworkPerformance(genome, generation, _e, _tr.length, _te.length, learningRate, sSEs);
+	return _record.getPerformance(generation, _tr.length, learningRate);
+    }
+
+    /**
+     * Builds a Link for each weight so that the network can be drawn.
+     * The Links are copies; changing them does not change the network.
+     * @return An array of Links matching the weights of the network
+     */
+    private Link[] getLinks()
+    {
+	Link[] links = new Link[weights.length];
+
+	for (int i = 0; i < links.length; i++)
+	    {
+		links[i] = new Link(weights[i], isActive(i));
+	    }
+
+	return links;
     }
 
     /**
@@ -630,19 +1067,19 @@ public class Network implements Serializable
      */
     public NetworkFrame getDiagram(String _t)
     {
-	return new NetworkFrame(_t, genome, weights);
+	return new NetworkFrame(_t, genome, getLinks());
     }
-    
-    /** 
+
+    /**
      * Returns a NetworkFrame to represent the network.
      * The NetworkFrame constructor takes the dimensions of the network and the array of links.
      * @return A diagram of the network.
      */
     public NetworkFrame getDiagram()
     {
-	return new NetworkFrame(("Network from generation " + generation), genome, weights);
+	return new NetworkFrame(("Network from generation " + generation), genome, getLinks());
     }
-    
+
     /**
      * Returns the sigmoid of a number.
      * To avoid overflow problems, the input to the function is bounded.
@@ -653,10 +1090,10 @@ public class Network implements Serializable
     public static double getSigmoid(double _d)
     {
 	double out;
-	
+
 	if (_d < -709.0)
 	    out = 0.0;
-	else 
+	else
 	    if (_d > 36.0)
 		out = 1.0;
 	    else
@@ -665,33 +1102,6 @@ public class Network implements Serializable
 	return out;
     }
 
-    /**
-     * Returns the sigmoid derivative of a number.
-     * Like <code>getSigmoid</code>, the input to this function is bounded.
-     * @param _d The input
-     * @return The derivative of the sigmoid of _d
-     */
-    public static double getSigmoidDerivative(double _d)
-    {
-	double out;
-
-	if (_d < -709.0)
-	    out = 0.0;
-	else 
-	    if (_d > 745.0)
-		out = 0.0;
-	    else
-		/*
-		out = Math.exp(-1.0 * _d) 
-		    / ((1 + Math.exp(-1.0 * _d)) 
-		       * (1 + Math.exp(-1.0 * _d)));
-		       */
-		// out = getSigmoid(_d) * (1.0 - getSigmoid(_d));
-		out = getSigmoid(1.0 - getSigmoid(_d));
-
-	return out;
-    }
-
     /**
      * For testing
      */
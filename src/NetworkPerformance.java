@@ -12,9 +12,13 @@ public class NetworkPerformance implements Serializable
 {
     // The details of a Network
     private Genome genome;
-    private int generation, epochs, trainSetSize, testSetSize;
+    private int generation, epochs, stopEpoch, trainSetSize, testSetSize;
     private double learningRate, mSSEIntegral;
-    private double[] mSSEs;
+    private double[] mSSEs; // For every epoch
+    private int[] evaluatedEpochs; // The epochs at which the network was tested
+    private double[] evaluatedMSSEs; // The MSSEs found at those epochs
+    private int[] subsampleEpochs; // The epochs at which the network was tested on a subsample only
+    private double[] subsampleMSSEs; // The MSSEs of the subsample at those epochs
 
     /**
      * Creates a new instance of NetworkPerformance
@@ -27,14 +31,92 @@ public class NetworkPerformance implements Serializable
      * @param _m The array of the MSSEs of the Network with the test set.
      */
     public NetworkPerformance(Genome _g, int _generation, int _e, int _tr, int _te, double _lR, double[] _m)
+	{
+	    this(_g, _generation, _e, _e, _tr, _te, _lR, getEpochs(_m.length), _m);
+	}
+
+    /**
+     * @param _n A number of epochs
+     * @return The epochs from 0 to _n - 1
+     */
+    private static int[] getEpochs(int _n)
+    {
+	int[] at = new int[_n];
+
+	for (int i = 0; i < _n; i++)
+	    {
+		at[i] = i;
+	    }
+
+	return at;
+    }
+
+    /**
+     * Creates a new instance of NetworkPerformance from MSSEs found at only some epochs.
+     * The curve is filled in between those epochs by straight lines
+     * and carried forward after the last of them, which covers training that stopped early,
+     * so that the graph and the integral can be compared with those of a Network tested every epoch.
+     * @param _g The Network's genome.
+     * @param _generation The generation in which this Network occured.
+     * @param _e The number of epochs for which this Network was to be trained.
+     * @param _stop The number of epochs for which it was trained.
+     * @param _tr The size of the training set.
+     * @param _te The size of the test set.
+     * @param _lR The learning rate.
+     * @param _at The epochs at which the Network was tested, in increasing order.
+     * @param _m The MSSEs of the Network with the test set at those epochs.
+     */
+    public NetworkPerformance(Genome _g, int _generation, int _e, int _stop, int _tr, int _te, double _lR, int[] _at, double[] _m)
+	{
+	    this(_g, _generation, _e, _stop, _tr, _te, _lR, _at, _m, new int[0], new double[0]);
+	}
+
+    /**
+     * Creates a new instance of NetworkPerformance from MSSEs found at only some epochs,
+     * with those of a subsample of the test set found between them.
+     * The subsample MSSEs are kept as a series of their own and play no part in the curve or its integral.
+     * @param _g The Network's genome.
+     * @param _generation The generation in which this Network occured.
+     * @param _e The number of epochs for which this Network was to be trained.
+     * @param _stop The number of epochs for which it was trained.
+     * @param _tr The size of the training set.
+     * @param _te The size of the test set.
+     * @param _lR The learning rate.
+     * @param _at The epochs at which the Network was tested with the whole test set, in increasing order.
+     * @param _m The MSSEs of the Network with the test set at those epochs.
+     * @param _subAt The epochs at which the Network was tested with the subsample only, in increasing order.
+     * @param _subM The MSSEs of the Network with the subsample at those epochs.
+     */
+    public NetworkPerformance(Genome _g, int _generation, int _e, int _stop, int _tr, int _te, double _lR, int[] _at, double[] _m,
+			      int[] _subAt, double[] _subM)
 	{
 	    genome = _g;
 	    generation = _generation;
 	    epochs = _e;
+	    stopEpoch = _stop;
 	    trainSetSize = _tr;
 	    testSetSize = _te;
 	    learningRate = _lR;
-	    mSSEs = _m;
+	    evaluatedEpochs = _at;
+	    evaluatedMSSEs = _m;
+	    subsampleEpochs = _subAt;
+	    subsampleMSSEs = _subM;
+
+	    // Fill in the curve for every epoch
+	    mSSEs = new double[_e];
+	    int k = 0;
+	    for (int i = 0; (i < mSSEs.length) && (_m.length > 0); i++)
+		{
+		    while ((k < _at.length - 1) && (_at[k + 1] <= i))
+			{
+			    k++;
+			}
+
+		    if ((i <= _at[k]) || (k == _at.length - 1))
+			mSSEs[i] = _m[k];
+		    else
+			mSSEs[i] = _m[k] + ((_m[k + 1] - _m[k]) * (i - _at[k]) / (_at[k + 1] - _at[k]));
+		}
 
 	    // Calculate the area under the curve of test performance
 	    // This caching will save repeated calculations
@@ -55,6 +137,48 @@ public class NetworkPerformance implements Serializable
 	return genome;
     }
 
+    /**
+     * Returns the number of epochs for which the network was trained.
+     * This is less than the number asked for when training stopped early.
+     * @return The number of epochs run
+     */
+    public int getStopEpoch()
+    {
+	return stopEpoch;
+    }
+
+    /**
+     * @return The epochs at which the network was tested with the whole test set
+     */
+    public int[] getEvaluatedEpochs()
+    {
+	return evaluatedEpochs;
+    }
+
+    /**
+     * @return The MSSEs found at the epochs given by getEvaluatedEpochs
+     */
+    public double[] getEvaluatedMSSEs()
+    {
+	return evaluatedMSSEs;
+    }
+
+    /**
+     * @return The epochs at which the network was tested on a subsample of the test set only
+     */
+    public int[] getSubsampleEpochs()
+    {
+	return subsampleEpochs;
+    }
+
+    /**
+     * @return The MSSEs of the subsample at the epochs given by getSubsampleEpochs
+     */
+    public double[] getSubsampleMSSEs()
+    {
+	return subsampleMSSEs;
+    }
+
     /**
      * Returns a graph the shows how the network's performance changed during training
      * @param _t The title of the graph
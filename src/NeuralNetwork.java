@@ -0,0 +1,193 @@
+/**
+ * What the evolution needs from a network, whatever it uses to store its numbers.
+ * Network keeps its weights and activations as doubles; FloatNetwork keeps them as floats.
+ * Both are laid out the same way, so weight _i of one is link _i of the other.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.io.*;
+
+public interface NeuralNetwork extends Serializable
+{
+    /**
+     * @return The genome of the network
+     */
+    public Genome getGenome();
+
+    /**
+     * @return The maximum number of links there could be in the network
+     */
+    public int getNumWeights();
+
+    /**
+     * @param _i The index of the weight we want
+     * @return The weight of the _ith Link.
+     */
+    public double getWeight(int _i);
+
+    /**
+     * @param _i The index of the weight to be changed
+     * @param _w The new weight
+     */
+    public void setWeight(int _i, double _w);
+
+    /**
+     * @param _i The index of the weight
+     * @return Whether the _ith weight is active
+     */
+    public boolean isActive(int _i);
+
+    /**
+     * @param _i The index of the weight to change
+     * @param _a The new activity of the _ith weight
+     */
+    public void setActivity(int _i, boolean _a);
+
+    /**
+     * @return The percentage of active weights in the network.
+     */
+    public double getPercentActWeights();
+
+    /**
+     * Starts this network from the trained weights of its parents, for Lamarckian evolution.
+     * Each link takes the weight of the parent that supplied its bit of the genome,
+     * if that link was active in that parent and so was trained.
+     * Other links keep the random weights they were given.
+     * @param _a The first parent
+     * @param _b The second parent
+     * @param _fromA Whether each bit came from _a, as recorded by <code>Genome.uniformCross</code>
+     */
+    public void inheritWeights(NeuralNetwork _a, NeuralNetwork _b, boolean[] _fromA);
+
+    /**
+     * @return The learning rate of the network.
+     */
+    public double getLearningRate();
+
+    /**
+     * @param _lR The new learning rate of the network.
+     */
+    public void setLearningRate(double _lR);
+
+    /**
+     * @return The way the hidden neurons calculate the sigmoid
+     */
+    public Activation getActivation();
+
+    /**
+     * @param _a The new way for the hidden neurons to calculate the sigmoid
+     */
+    public void setActivation(Activation _a);
+
+    /**
+     * @param _t The Tuple
+     * @return The output for the Tuple _t as an array of doubles.
+     */
+    public double[] getOutput(Tuple _t);
+
+    /**
+     * @param _t The tuple whose error we want to find.
+     * @return The target outputs of _t minus the outputs of the network
+     */
+    public double[] getError(Tuple _t);
+
+    /**
+     * @param _v The set of Tuples
+     * @return The average sum of squared errors of the network for _v
+     */
+    public double getSSE(Tuple[] _v);
+
+    /**
+     * Finds the SSE of the network for a given array of Tuples and keeps it.
+     * @param _v The set of Tuples
+     */
+    public void cacheSSE(Tuple[] _v);
+
+    /**
+     * @return The SSE kept by cacheSSE
+     */
+    public double getCachedSSE();
+
+    /**
+     * Keeps an SSE found before, for a network given the weights it was found with.
+     * @param _sSE The SSE
+     */
+    public void setCachedSSE(double _sSE);
+
+    /**
+     * Sets when training may stop before all its epochs have run.
+     * @param _s The early stopping policy, or null to always run every epoch
+     */
+    public void setEarlyStopping(EarlyStopping _s);
+
+    /**
+     * @return The early stopping policy, or null if there is none
+     */
+    public EarlyStopping getEarlyStopping();
+
+    /**
+     * Sets when training tests the network.
+     * @param _s The schedule, or null to test with the whole test set every epoch
+     */
+    public void setEvaluationSchedule(EvaluationSchedule _s);
+
+    /**
+     * @return The evaluation schedule, or null if the network is tested every epoch
+     */
+    public EvaluationSchedule getEvaluationSchedule();
+
+    /**
+     * Sets how the back propagation steps are turned into changes to the weights.
+     * The Optimizer keeps state for this network, so it should not be shared with another.
+     * @param _o The Optimizer, or null for plain steps
+     */
+    public void setOptimizer(Optimizer _o);
+
+    /**
+     * @return The Optimizer, or null if plain steps are taken
+     */
+    public Optimizer getOptimizer();
+
+    /**
+     * Sets where and how often training saves a checkpoint that it can be resumed from.
+     * @param _c The Checkpoint, or null for none
+     */
+    public void setCheckpoint(Checkpoint _c);
+
+    /**
+     * @return The Checkpoint, or null if there is none
+     */
+    public Checkpoint getCheckpoint();
+
+    /**
+     * Trains the network with _tr for _e epochs using BP, testing it with _te at the end of each epoch.
+     * @param _tr The training set.
+     * @param _te The test set.
+     * @param _e The number of epochs to train for.
+     * @return a NetworkPerformance object to show how well the Network trained
+     */
+    public NetworkPerformance train(Tuple[] _tr, Tuple[] _te, int _e);
+
+    /**
+     * Carries on training from the last checkpoint, for the rest of the epochs it was started with.
+     * The network must have been made from the same genome and given the same settings;
+     * the result is then the same as if training had never stopped.
+     * @param _tr The training set.
+     * @param _te The test set.
+     * @return a NetworkPerformance object to show how well the Network trained, from the first epoch
+     * @throws IOException If there is no checkpoint or it does not fit the network
+     */
+    public NetworkPerformance resume(Tuple[] _tr, Tuple[] _te) throws IOException;
+
+    /**
+     * @param _t The title of the diagram
+     * @return A diagram of the network.
+     */
+    public NetworkFrame getDiagram(String _t);
+
+    /**
+     * @return A diagram of the network.
+     */
+    public NetworkFrame getDiagram();
+}
@@ -0,0 +1,320 @@
+/**
+ * Turns the plain back propagation step for each weight into the change that is made to it.
+ * The plain step is the learning rate times the delta of a neuron times the input along the link,
+ * as in <code>Network.train</code>.
+ * An Optimizer keeps whatever it needs about past steps in arrays with one entry per weight,
+ * so each network being trained needs its own; <code>copy</code> gives a new Optimizer with the same settings.
+ * The state is kept from one call of train to the next, and can be saved in a Checkpoint.
+ * What belongs to a single update, such as its learning rate, is kept in a Step that the caller owns,
+ * so that threads updating the same network at once each have their own.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.io.*;
+import java.util.concurrent.atomic.*;
+
+public abstract class Optimizer implements Serializable
+{
+    /**
+     * One update of the weights, as set up by beginStep and used by getChange.
+     */
+    public static class Step
+    {
+	double learningRate; // The learning rate of the update
+	double correction1 = 1.0, correction2 = 1.0; // For Adam, 1 - beta^t for the update
+    }
+
+    /**
+     * Gets ready to train a network, keeping any state that fits it.
+     * @param _n The number of weights in the network
+     */
+    public abstract void start(int _n);
+
+    /**
+     * Called before each update of the weights, once per example or once per mini-batch.
+     * @param _lR The learning rate of the network
+     * @param _s The update, owned by the calling thread
+     */
+    public void beginStep(double _lR, Step _s)
+    {
+	_s.learningRate = _lR;
+    }
+
+    /**
+     * @param _i The index of the weight
+     * @param _step The plain back propagation step for the weight
+     * @param _s The update, as set up by beginStep
+     * @return The change to make to the weight
+     */
+    public abstract double getChange(int _i, double _step, Step _s);
+
+    /**
+     * @return A new Optimizer with the same settings and no state
+     */
+    public abstract Optimizer copy();
+
+    /**
+     * Writes the state kept about past steps, for a Checkpoint.
+     * @param _out Where to write it
+     */
+    public abstract void writeState(DataOutput _out) throws IOException;
+
+    /**
+     * Reads back the state written by writeState.
+     * @param _in Where to read it from
+     */
+    public abstract void readState(DataInput _in) throws IOException;
+
+    /**
+     * Writes an array of state, which may be null if training has not started.
+     */
+    protected static void writeArray(DataOutput _out, double[] _a) throws IOException
+    {
+	_out.writeInt((_a == null) ? -1 : _a.length);
+	for (int i = 0; (_a != null) && (i < _a.length); i++)
+	    {
+		_out.writeDouble(_a[i]);
+	    }
+    }
+
+    /**
+     * Reads back an array written by writeArray.
+     */
+    protected static double[] readArray(DataInput _in) throws IOException
+    {
+	int n = _in.readInt();
+	double[] a = (n < 0) ? null : new double[n];
+
+	for (int i = 0; i < n; i++)
+	    {
+		a[i] = _in.readDouble();
+	    }
+
+	return a;
+    }
+
+    /**
+     * Makes an Optimizer from its name, with its settings after colons,
+     * for example "adam", "momentum:0.9" or "rmsprop:0.9:1e-8".
+     * @param _s The name and settings
+     * @return The Optimizer, or null for plain steps
+     */
+    public static Optimizer forName(String _s)
+    {
+	String[] p = _s.trim().toLowerCase().split(":");
+	double a = (p.length > 1) ? Double.parseDouble(p[1]) : Double.NaN;
+	double b = (p.length > 2) ? Double.parseDouble(p[2]) : Double.NaN;
+	double c = (p.length > 3) ? Double.parseDouble(p[3]) : Double.NaN;
+
+	if (p[0].equals("sgd") || p[0].equals("plain"))
+	    return null;
+	if (p[0].equals("momentum"))
+	    return new Momentum(Double.isNaN(a) ? 0.9 : a);
+	if (p[0].equals("nesterov"))
+	    return new Nesterov(Double.isNaN(a) ? 0.9 : a);
+	if (p[0].equals("rmsprop"))
+	    return new RMSProp(Double.isNaN(a) ? 0.9 : a, Double.isNaN(b) ? 1e-8 : b);
+	if (p[0].equals("adam"))
+	    return new Adam(Double.isNaN(a) ? 0.9 : a, Double.isNaN(b) ? 0.999 : b, Double.isNaN(c) ? 1e-8 : c);
+
+	throw new IllegalArgumentException("No optimizer called " + p[0]);
+    }
+
+    /**
+     * The names that forName understands.
+     */
+    public static final String[] NAMES = {"sgd", "momentum", "nesterov", "rmsprop", "adam"};
+
+    /**
+     * Classical momentum: each change is the step plus a fraction of the last change.
+     */
+    public static class Momentum extends Optimizer
+    {
+	protected final double mu;
+	protected double[] velocity;
+
+	public Momentum(double _mu)
+	{
+	    mu = _mu;
+	}
+
+	public void start(int _n)
+	{
+	    if ((velocity == null) || (velocity.length != _n))
+		velocity = new double[_n];
+	}
+
+	public double getChange(int _i, double _step, Step _s)
+	{
+	    velocity[_i] = (mu * velocity[_i]) + _step;
+	    return velocity[_i];
+	}
+
+	public Optimizer copy()
+	{
+	    return new Momentum(mu);
+	}
+
+	public void writeState(DataOutput _out) throws IOException
+	{
+	    writeArray(_out, velocity);
+	}
+
+	public void readState(DataInput _in) throws IOException
+	{
+	    velocity = readArray(_in);
+	}
+
+	public String toString()
+	{
+	    return "momentum:" + mu;
+	}
+    }
+
+    /**
+     * Nesterov momentum, in the form that needs no look-ahead pass:
+     * the change is the step plus the momentum of the velocity after this step.
+     */
+    public static class Nesterov extends Momentum
+    {
+	public Nesterov(double _mu)
+	{
+	    super(_mu);
+	}
+
+	public double getChange(int _i, double _step, Step _s)
+	{
+	    velocity[_i] = (mu * velocity[_i]) + _step;
+	    return (mu * velocity[_i]) + _step;
+	}
+
+	public Optimizer copy()
+	{
+	    return new Nesterov(mu);
+	}
+
+	public String toString()
+	{
+	    return "nesterov:" + mu;
+	}
+    }
+
+    /**
+     * RMSProp: each step is divided by a running root mean square of the recent steps of its weight,
+     * then scaled by the learning rate.
+     */
+    public static class RMSProp extends Optimizer
+    {
+	private final double rho, epsilon;
+	private double[] meanSquare;
+
+	public RMSProp(double _rho, double _epsilon)
+	{
+	    rho = _rho;
+	    epsilon = _epsilon;
+	}
+
+	public void start(int _n)
+	{
+	    if ((meanSquare == null) || (meanSquare.length != _n))
+		meanSquare = new double[_n];
+	}
+
+	public double getChange(int _i, double _step, Step _s)
+	{
+	    // The steps include the learning rate, so epsilon is scaled to match
+	    meanSquare[_i] = (rho * meanSquare[_i]) + ((1.0 - rho) * _step * _step);
+	    return _s.learningRate * _step / (Math.sqrt(meanSquare[_i]) + (_s.learningRate * epsilon));
+	}
+
+	public Optimizer copy()
+	{
+	    return new RMSProp(rho, epsilon);
+	}
+
+	public void writeState(DataOutput _out) throws IOException
+	{
+	    writeArray(_out, meanSquare);
+	}
+
+	public void readState(DataInput _in) throws IOException
+	{
+	    meanSquare = readArray(_in);
+	}
+
+	public String toString()
+	{
+	    return "rmsprop:" + rho + ":" + epsilon;
+	}
+    }
+
+    /**
+     * Adam: running means of the steps and of their squares, corrected for starting at zero.
+     */
+    public static class Adam extends Optimizer
+    {
+	private final double beta1, beta2, epsilon;
+	private double[] mean, meanSquare;
+	private final AtomicLong t = new AtomicLong(); // The number of updates so far, counted by every thread
+
+	public Adam(double _b1, double _b2, double _epsilon)
+	{
+	    beta1 = _b1;
+	    beta2 = _b2;
+	    epsilon = _epsilon;
+	}
+
+	public void start(int _n)
+	{
+	    if ((mean == null) || (mean.length != _n))
+		{
+		    mean = new double[_n];
+		    meanSquare = new double[_n];
+		    t.set(0);
+		}
+	}
+
+	public void beginStep(double _lR, Step _s)
+	{
+	    long n = t.incrementAndGet();
+
+	    super.beginStep(_lR, _s);
+	    _s.correction1 = 1.0 - Math.pow(beta1, n);
+	    _s.correction2 = 1.0 - Math.pow(beta2, n);
+	}
+
+	public double getChange(int _i, double _step, Step _s)
+	{
+	    mean[_i] = (beta1 * mean[_i]) + ((1.0 - beta1) * _step);
+	    meanSquare[_i] = (beta2 * meanSquare[_i]) + ((1.0 - beta2) * _step * _step);
+
+	    // The steps include the learning rate, so epsilon is scaled to match
+	    return _s.learningRate * (mean[_i] / _s.correction1) / (Math.sqrt(meanSquare[_i] / _s.correction2) + (_s.learningRate * epsilon));
+	}
+
+	public Optimizer copy()
+	{
+	    return new Adam(beta1, beta2, epsilon);
+	}
+
+	public void writeState(DataOutput _out) throws IOException
+	{
+	    _out.writeLong(t.get());
+	    writeArray(_out, mean);
+	    writeArray(_out, meanSquare);
+	}
+
+	public void readState(DataInput _in) throws IOException
+	{
+	    t.set(_in.readLong());
+	    mean = readArray(_in);
+	    meanSquare = readArray(_in);
+	}
+
+	public String toString()
+	{
+	    return "adam:" + beta1 + ":" + beta2 + ":" + epsilon;
+	}
+    }
+}
@@ -0,0 +1,324 @@
+/**
+ * Trains one Network with several worker processes, each holding a shard of the training set.
+ * The workers are ParameterWorkers, which connect over TCP on the loopback address.
+ * When they have all connected, each is sent the genome, the training settings and its shard.
+ * Then, every round, the server sends the current weights to every worker,
+ * each worker trains its copy on its shard for a number of local epochs,
+ * and the server averages the weights that come back, weighted by the sizes of the shards,
+ * and tests the network.
+ * All the workers train at once; the server only waits for the slowest.
+ * <p>
+ * The protocol is binary. Weights are sent as a count and then the weights of the active links only,
+ * in order, as doubles; both ends know which links are active from the genome.
+ * Before each round the server sends ROUND, or DONE when training has finished.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+public class ParameterServer
+{
+    // What the server sends before each round
+    public static final int ROUND = 1, DONE = 0;
+
+    private final Network network;
+    private final Socket[] sockets;
+    private final DataInputStream[] ins;
+    private final DataOutputStream[] outs;
+    private ServerSocket serverSocket;
+    private long roundNanos, waitNanos; // The time spent in rounds, and waiting for the workers in them
+
+    /**
+     * Creates a new ParameterServer.
+     * @param _n The network to train, whose genome, learning rate, activation and Optimizer the workers copy
+     * @param _workers The number of workers
+     */
+    public ParameterServer(Network _n, int _workers)
+    {
+	network = _n;
+	sockets = new Socket[_workers];
+	ins = new DataInputStream[_workers];
+	outs = new DataOutputStream[_workers];
+    }
+
+    /**
+     * Listens for workers on the loopback address.
+     * @param _port The port to listen on, or 0 for any free port
+     * @return The port being listened on
+     * @throws IOException if the port cannot be opened
+     */
+    public int start(int _port) throws IOException
+    {
+	serverSocket = new ServerSocket(_port, 50, InetAddress.getLoopbackAddress());
+
+	return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Writes the weights of the active links of a network.
+     * @param _out Where to write them
+     * @param _n The network
+     */
+    public static void writeWeights(DataOutput _out, NeuralNetwork _n) throws IOException
+    {
+	int active = 0;
+
+	for (int i = 0; i < _n.getNumWeights(); i++)
+	    {
+		if (_n.isActive(i))
+		    active++;
+	    }
+
+	_out.writeInt(active);
+	for (int i = 0; i < _n.getNumWeights(); i++)
+	    {
+		if (_n.isActive(i))
+		    _out.writeDouble(_n.getWeight(i));
+	    }
+    }
+
+    /**
+     * Reads the weights written by writeWeights and adds them, scaled, to a sum.
+     * @param _in Where to read them from
+     * @param _n The network, for which links are active
+     * @param _sum For the sum of the weights, one entry per link
+     * @param _scale What to multiply the weights by
+     */
+    public static void addWeights(DataInput _in, NeuralNetwork _n, double[] _sum, double _scale) throws IOException
+    {
+	int active = _in.readInt();
+
+	for (int i = 0; i < _n.getNumWeights(); i++)
+	    {
+		if (_n.isActive(i))
+		    {
+			if (active-- == 0)
+			    throw new IOException("Too few weights");
+			_sum[i] += _scale * _in.readDouble();
+		    }
+	    }
+	if (active != 0)
+	    throw new IOException("Too many weights");
+    }
+
+    /**
+     * Reads the weights written by writeWeights into a network.
+     * @param _in Where to read them from
+     * @param _n The network
+     */
+    public static void readWeights(DataInput _in, NeuralNetwork _n) throws IOException
+    {
+	double[] w = new double[_n.getNumWeights()];
+
+	addWeights(_in, _n, w, 1.0);
+	for (int i = 0; i < w.length; i++)
+	    {
+		if (_n.isActive(i))
+		    _n.setWeight(i, w[i]);
+	    }
+    }
+
+    /**
+     * Waits for the workers to connect and sends each its settings and its shard of the training set.
+     * @param _tr The training set
+     * @param _localEpochs The number of epochs each worker trains for in a round
+     */
+    private void connect(Tuple[] _tr, int _localEpochs) throws IOException
+    {
+	Genome g = network.getGenome();
+	Optimizer o = network.getOptimizer();
+	int from, to;
+
+	for (int w = 0; w < sockets.length; w++)
+	    {
+		sockets[w] = serverSocket.accept();
+		sockets[w].setTcpNoDelay(true);
+		ins[w] = new DataInputStream(new BufferedInputStream(sockets[w].getInputStream()));
+		outs[w] = new DataOutputStream(new BufferedOutputStream(sockets[w].getOutputStream()));
+
+		outs[w].writeInt(g.getInputs());
+		outs[w].writeInt(g.getNeuronsInHiddenLayer());
+		outs[w].writeInt(g.getHiddenLayers());
+		outs[w].writeInt(g.getOutputs());
+		for (int i = 0; i < g.getBinStringLength(); i++)
+		    {
+			outs[w].writeBoolean(g.getBit(i));
+		    }
+		outs[w].writeDouble(network.getLearningRate());
+		outs[w].writeUTF(network.getActivation().name());
+		outs[w].writeUTF((o == null) ? "sgd" : o.toString());
+		outs[w].writeInt(_localEpochs);
+
+		// The shard
+		from = (int)((long)_tr.length * w / sockets.length);
+		to = (int)((long)_tr.length * (w + 1) / sockets.length);
+		outs[w].writeInt(to - from);
+		for (int t = from; t < to; t++)
+		    {
+			for (int i = 0; i < g.getInputs(); i++)
+			    {
+				outs[w].writeDouble(_tr[t].getInput(i));
+			    }
+			for (int i = 0; i < g.getOutputs(); i++)
+			    {
+				outs[w].writeDouble(_tr[t].getOutput(i));
+			    }
+		    }
+		outs[w].flush();
+	    }
+    }
+
+    /**
+     * Trains the network with the workers, which must connect once this is called.
+     * The network is tested after every round, as if each round were one epoch of
+     * <code>Network.train</code> ending at the last of its local epochs,
+     * so its EarlyStopping works as it does there.
+     * The network must not have a Checkpoint: the Optimizer state that a resumed run would need
+     * lives on the workers, and there is no way to resume training on them.
+     * @param _tr The training set, which is split between the workers
+     * @param _te The test set
+     * @param _rounds The number of rounds
+     * @param _localEpochs The number of epochs each worker trains for in a round
+     * @return a NetworkPerformance object to show how well the Network trained
+     * @throws IOException if a worker fails
+     * @throws IllegalStateException if the network has a Checkpoint
+     */
+    public NetworkPerformance train(Tuple[] _tr, Tuple[] _te, int _rounds, int _localEpochs) throws IOException
+    {
+	if (network.getCheckpoint() != null)
+	    throw new IllegalStateException("A ParameterServer cannot checkpoint, as the workers hold the Optimizer state");
+
+	TrainingRecord record = new TrainingRecord(network, _te, _rounds * _localEpochs);
+	double[] sum = new double[network.getNumWeights()];
+	long start, sent;
+	int from, to;
+
+	connect(_tr, _localEpochs);
+
+	for (int round = 0; round < _rounds; round++)
+	    {
+		start = System.nanoTime();
+
+		// Send the weights out, so the workers all train at once
+		for (int w = 0; w < sockets.length; w++)
+		    {
+			outs[w].writeInt(ROUND);
+			writeWeights(outs[w], network);
+			outs[w].flush();
+		    }
+		sent = System.nanoTime();
+
+		// Average what comes back, in order so that the result does not depend on which finished first
+		Arrays.fill(sum, 0.0);
+		for (int w = 0; w < sockets.length; w++)
+		    {
+			from = (int)((long)_tr.length * w / sockets.length);
+			to = (int)((long)_tr.length * (w + 1) / sockets.length);
+			addWeights(ins[w], network, sum, (double)(to - from) / _tr.length);
+		    }
+		for (int i = 0; i < sum.length; i++)
+		    {
+			if (network.isActive(i))
+			    network.setWeight(i, sum[i]);
+		    }
+
+		waitNanos += System.nanoTime() - sent;
+		roundNanos += System.nanoTime() - start;
+
+		if (record.endEpoch(((round + 1) * _localEpochs) - 1))
+		    break;
+	    }
+
+	for (int w = 0; w < sockets.length; w++)
+	    {
+		outs[w].writeInt(DONE);
+		outs[w].flush();
+	    }
+
+	return record.getPerformance(network.getGeneration(), _tr.length, network.getLearningRate());
+    }
+
+    /**
+     * @return The time spent in rounds and the part of it spent waiting for the workers
+     */
+    public String getStatistics()
+    {
+	return "rounds " + (roundNanos / 1000000) + " ms, waiting for workers " + (waitNanos / 1000000) + " ms";
+    }
+
+    /**
+     * Stops listening and disconnects the workers.
+     */
+    public void stop()
+    {
+	try
+	    {
+		for (int w = 0; w < sockets.length; w++)
+		    {
+			if (sockets[w] != null)
+			    sockets[w].close();
+		    }
+		serverSocket.close();
+	    }
+	catch (IOException e)
+	    {
+	    }
+    }
+
+    /**
+     * Trains a network with workers in other JVMs on this machine, started here,
+     * and then trains a copy in this JVM for as many epochs for comparison.
+     * Usage: ParameterServer [workers rounds localEpochs]
+     */
+    public static void main(String[] args) throws Exception
+    {
+	int workers = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+	int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 50;
+	int localEpochs = (args.length > 2) ? Integer.parseInt(args[2]) : 2;
+	DataSet ds = new SecondYearData();
+	Tuple[] tr = ds.getSample(200);
+	Tuple[] te = ds.getSample(200);
+
+	Genome g = new Genome(3, 10, 3, 1);
+	Network n = new Network(g, 0, 0.01);
+	Network single = new Network(g, 0, 0.01);
+	for (int i = 0; i < n.getNumWeights(); i++)
+	    {
+		single.setWeight(i, n.getWeight(i));
+	    }
+
+	ParameterServer server = new ParameterServer(n, workers);
+	int port = server.start(0);
+
+	// Start the workers with the same class path as this JVM
+	Process[] processes = new Process[workers];
+	for (int w = 0; w < workers; w++)
+	    {
+		processes[w] = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+						  "-cp", System.getProperty("java.class.path"),
+						  "ParameterWorker", "" + port)
+		    .inheritIO().start();
+	    }
+
+	long start = System.nanoTime();
+	NetworkPerformance p = server.train(tr, te, rounds, localEpochs);
+	double seconds = (System.nanoTime() - start) / 1e9;
+	server.stop();
+	for (int w = 0; w < workers; w++)
+	    {
+		processes[w].waitFor();
+	    }
+
+	start = System.nanoTime();
+	single.train(tr, te, rounds * localEpochs);
+	double singleSeconds = (System.nanoTime() - start) / 1e9;
+
+	System.out.println(workers + " workers, " + rounds + " rounds of " + localEpochs + " epochs: test SSE "
+			   + n.getSSE(te) + " in " + seconds + " s (" + server.getStatistics() + ")");
+	System.out.println("One JVM, " + (rounds * localEpochs) + " epochs: test SSE "
+			   + single.getSSE(te) + " in " + singleSeconds + " s");
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * A worker for ParameterServer, run in its own JVM.
+ * It builds a Network from the settings the server sends, keeps its shard of the training set,
+ * and each round trains its network from the weights it is sent and sends the new weights back.
+ * The Optimizer, if any, keeps its state on the worker from one round to the next.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.io.*;
+import java.net.*;
+
+public class ParameterWorker
+{
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * Connects to a server on this machine.
+     * @param _port The port of the server
+     * @throws IOException if the server cannot be reached
+     */
+    public ParameterWorker(int _port) throws IOException
+    {
+	socket = new Socket(InetAddress.getLoopbackAddress(), _port);
+	socket.setTcpNoDelay(true);
+	in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+	out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Reads the settings and the shard, then trains in rounds until the server says it is done.
+     * @return The number of rounds trained
+     * @throws IOException if the server fails
+     */
+    public int run() throws IOException
+    {
+	Genome g = new Genome(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+	for (int i = 0; i < g.getBinStringLength(); i++)
+	    {
+		g.setBit(i, in.readBoolean());
+	    }
+	Network n = new Network(g, 0, in.readDouble());
+	n.setActivation(Activation.valueOf(in.readUTF()));
+	n.setOptimizer(Optimizer.forName(in.readUTF()));
+	int localEpochs = in.readInt();
+
+	Tuple[] shard = new Tuple[in.readInt()];
+	double[] inputs, outputs;
+	for (int t = 0; t < shard.length; t++)
+	    {
+		inputs = new double[g.getInputs()];
+		outputs = new double[g.getOutputs()];
+		for (int i = 0; i < inputs.length; i++)
+		    {
+			inputs[i] = in.readDouble();
+		    }
+		for (int i = 0; i < outputs.length; i++)
+		    {
+			outputs[i] = in.readDouble();
+		    }
+		shard[t] = new Tuple(inputs, outputs);
+	    }
+
+	// The server tests the network, so the worker's test set is empty
+	Tuple[] none = new Tuple[0];
+	int rounds = 0;
+
+	while (in.readInt() == ParameterServer.ROUND)
+	    {
+		ParameterServer.readWeights(in, n);
+		n.train(shard, none, localEpochs);
+		ParameterServer.writeWeights(out, n);
+		out.flush();
+		rounds++;
+	    }
+
+	return rounds;
+    }
+
+    /**
+     * Disconnects from the server.
+     */
+    public void close() throws IOException
+    {
+	socket.close();
+    }
+
+    /**
+     * Usage: ParameterWorker port
+     */
+    public static void main(String[] args) throws Exception
+    {
+	if (args.length < 1)
+	    {
+		System.out.println("Usage: ParameterWorker port");
+		return;
+	    }
+
+	ParameterWorker w = new ParameterWorker(Integer.parseInt(args[0]));
+	w.run();
+	w.close();
+    }
+}
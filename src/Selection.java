@@ -0,0 +1,283 @@
+/**
+ * Chooses the parents of the next generation from the SSEs of the networks of this one.
+ * Lower SSEs are fitter.
+ * <code>prepare</code> is called once a generation and <code>next</code> once for each parent.
+ * The SSEs are kept in a plain array indexed as the networks are, so nothing need be sorted or boxed.
+ * A Selection keeps state between the two calls, so each run needs its own; forName makes a new one from a name.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.util.*;
+
+public abstract class Selection
+{
+    /**
+     * Gets ready to choose parents from a generation.
+     * @param _sSE The SSE of each network
+     * @param _selectRate The percentage of the generation that may be parents, for those strategies that use it
+     */
+    public abstract void prepare(double[] _sSE, int _selectRate);
+
+    /**
+     * @return The index of a parent
+     */
+    public abstract int next();
+
+    /**
+     * Makes a Selection from a name, with an optional tournament size after a colon, as in "tournament:4".
+     * @param _s The name
+     * @return A new Selection
+     */
+    public static Selection forName(String _s)
+    {
+	String[] p = _s.trim().toLowerCase().split(":");
+
+	if (p[0].equals("top"))
+	    return new TopK();
+	if (p[0].equals("tournament"))
+	    return new Tournament((p.length > 1) ? Integer.parseInt(p[1]) : 2);
+	if (p[0].equals("rank"))
+	    return new Roulette(true);
+	if (p[0].equals("roulette"))
+	    return new Roulette(false);
+
+	throw new IllegalArgumentException("No selection called " + p[0]);
+    }
+
+    /**
+     * The names that forName understands.
+     */
+    public static final String[] NAMES = {"top", "tournament", "rank", "roulette"};
+
+    /**
+     * Choose at random from the fittest selectRate percent, as evolution always has.
+     * They are found with a heap of the k fittest so far, in O(n log k), rather than by sorting them all.
+     */
+    public static class TopK extends Selection
+    {
+	private int[] heap = new int[0]; // The indices of the k fittest, the least fit of them at the top
+	private int k;
+
+	public void prepare(double[] _sSE, int _selectRate)
+	{
+	    k = Math.max(1, Math.min(_sSE.length, (int)Math.ceil(_sSE.length * _selectRate / 100.0)));
+	    if (heap.length < k)
+		heap = new int[k];
+
+	    for (int i = 0; i < _sSE.length; i++)
+		{
+		    if (i < k)
+			{
+			    // Fill the heap, sifting each new index up
+			    int c = i;
+			    heap[c] = i;
+			    while ((c > 0) && (_sSE[heap[c]] > _sSE[heap[(c - 1) / 2]]))
+				{
+				    swap(c, (c - 1) / 2);
+				    c = (c - 1) / 2;
+				}
+			}
+		    else if (_sSE[i] < _sSE[heap[0]])
+			{
+			    // Replace the least fit of the k and sift it down
+			    heap[0] = i;
+			    siftDown(_sSE, 0, k);
+			}
+		}
+	}
+
+	private void siftDown(double[] _sSE, int _c, int _n)
+	{
+	    int l, m;
+
+	    while ((l = (2 * _c) + 1) < _n)
+		{
+		    m = ((l + 1 < _n) && (_sSE[heap[l + 1]] > _sSE[heap[l]])) ? l + 1 : l;
+		    if (_sSE[heap[m]] <= _sSE[heap[_c]])
+			break;
+		    swap(_c, m);
+		    _c = m;
+		}
+	}
+
+	private void swap(int _a, int _b)
+	{
+	    int t = heap[_a];
+	    heap[_a] = heap[_b];
+	    heap[_b] = t;
+	}
+
+	public int next()
+	{
+	    return heap[(int)(Math.random() * k)];
+	}
+
+	public String toString()
+	{
+	    return "top";
+	}
+    }
+
+    /**
+     * Tournament selection: the fittest of a few networks drawn at random.
+     * The size of the tournament sets the pressure, so the select rate is not used.
+     */
+    public static class Tournament extends Selection
+    {
+	private final int size;
+	private double[] sSE;
+
+	/**
+	 * @param _s The number of networks in each tournament
+	 */
+	public Tournament(int _s)
+	{
+	    if (_s < 1)
+		throw new IllegalArgumentException("A tournament needs at least one network");
+
+	    size = _s;
+	}
+
+	public void prepare(double[] _sSE, int _selectRate)
+	{
+	    sSE = _sSE;
+	}
+
+	public int next()
+	{
+	    int best = (int)(Math.random() * sSE.length);
+	    int c;
+
+	    for (int i = 1; i < size; i++)
+		{
+		    c = (int)(Math.random() * sSE.length);
+		    if (sSE[c] < sSE[best])
+			best = c;
+		}
+
+	    return best;
+	}
+
+	public String toString()
+	{
+	    return "tournament:" + size;
+	}
+    }
+
+    /**
+     * Roulette wheel selection, each network being chosen with a probability proportional to a weight:
+     * its rank counted from the least fit (rank selection), or 1 / SSE (fitness proportionate).
+     * The wheel is set up by Vose's alias method in O(n), after which each draw is O(1).
+     * Finding the ranks sorts a copy of the SSEs, so rank selection prepares in O(n log n).
+     */
+    public static class Roulette extends Selection
+    {
+	private final boolean rank;
+	private double[] probability = new double[0]; // The chance of keeping the column drawn
+	private int[] alias = new int[0]; // The index to take otherwise
+	private int n;
+
+	/**
+	 * @param _rank Whether to weight by rank rather than by 1 / SSE
+	 */
+	public Roulette(boolean _rank)
+	{
+	    rank = _rank;
+	}
+
+	public void prepare(double[] _sSE, int _selectRate)
+	{
+	    n = _sSE.length;
+	    if (probability.length < n)
+		{
+		    probability = new double[n];
+		    alias = new int[n];
+		}
+
+	    double[] sorted = rank ? _sSE.clone() : null;
+	    double total = 0.0;
+
+	    if (rank)
+		Arrays.sort(sorted);
+	    for (int i = 0; i < n; i++)
+		{
+		    // Networks with equal SSEs share the rank of the first of them
+		    if (rank)
+			probability[i] = n - lowerBound(sorted, _sSE[i]);
+		    else
+			probability[i] = 1.0 / Math.max(_sSE[i], Double.MIN_NORMAL);
+		    total += probability[i];
+		}
+
+	    // Scale so the mean is 1 and split the columns into those below and above it
+	    int[] small = new int[n], large = new int[n];
+	    int s = 0, l = 0, a, b;
+	    for (int i = 0; i < n; i++)
+		{
+		    probability[i] *= n / total;
+		    if (probability[i] < 1.0)
+			small[s++] = i;
+		    else
+			large[l++] = i;
+		}
+
+	    // Top up each small column from a large one
+	    while ((s > 0) && (l > 0))
+		{
+		    a = small[--s];
+		    b = large[--l];
+		    alias[a] = b;
+		    probability[b] -= 1.0 - probability[a];
+		    if (probability[b] < 1.0)
+			small[s++] = b;
+		    else
+			large[l++] = b;
+		}
+
+	    // What is left is 1 but for rounding
+	    while (l > 0)
+		{
+		    probability[large[--l]] = 1.0;
+		}
+	    while (s > 0)
+		{
+		    probability[small[--s]] = 1.0;
+		}
+	}
+
+	/**
+	 * Finds the first place in a sorted array that holds a value, which Arrays.binarySearch does not promise.
+	 * Values are compared as Arrays.sort orders them.
+	 * @param _a The sorted array
+	 * @param _v The value, which is in the array
+	 * @return The lowest index of _v
+	 */
+	private static int lowerBound(double[] _a, double _v)
+	{
+	    int low = 0, high = _a.length, mid;
+
+	    while (low < high)
+		{
+		    mid = (low + high) >>> 1;
+		    if (Double.compare(_a[mid], _v) < 0)
+			low = mid + 1;
+		    else
+			high = mid;
+		}
+	    return low;
+	}
+
+	public int next()
+	{
+	    int i = (int)(Math.random() * n);
+
+	    return (Math.random() < probability[i]) ? i : alias[i];
+	}
+
+	public String toString()
+	{
+	    return rank ? "rank" : "roulette";
+	}
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * A compiled form of a Network for fast inference.
+ * Only the active links are kept.
+ * For each layer, the links into each neuron are listed in compressed sparse rows:
+ * the indexes of the neurons they come from and their weights,
+ * so a forward pass touches nothing but active links.
+ * A layer in which most links are active is instead kept as full rows, with zero for the inactive weights,
+ * so that its weighted sums can be found with the dense kernels in Kernels.
+ * A SparseNetwork is a copy; it only follows later changes to the weights of the Network it was built from
+ * when <code>updateWeights</code> is called.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+public class SparseNetwork
+{
+    // The most rows that getOutputs will take at once
+    public static final int BLOCK_SIZE = 64;
+
+    // The fraction of active links above which a layer is kept as full rows
+    private static final double DENSE_THRESHOLD = 0.75;
+
+    // The shape of the network
+    private final int inputs, neuronsInHiddenLayer, hiddenLayers, outputs;
+    private final Activation activation; // How the hidden neurons calculate the sigmoid
+
+    // For each layer (the hidden layers then the output layer)
+    private final int[][] rowStarts; // Where the links into each neuron begin in sources and values
+    private final int[][] sources; // The neuron in the previous layer that each link comes from
+    private final double[][] values; // The weight of each link
+    private final int[][] links; // The index of each link in the Network, -1 for the padding in a dense layer
+    private final boolean[] dense; // Whether each layer is kept as full rows
+
+    /**
+     * Compiles a Network, or a FloatNetwork.
+     * @param _n The network to compile
+     */
+    public SparseNetwork(NeuralNetwork _n)
+    {
+	Genome g = _n.getGenome();
+
+	inputs = g.getInputs();
+	neuronsInHiddenLayer = g.getNeuronsInHiddenLayer();
+	hiddenLayers = g.getHiddenLayers();
+	outputs = g.getOutputs();
+	activation = _n.getActivation();
+
+	rowStarts = new int[hiddenLayers + 1][];
+	sources = new int[hiddenLayers + 1][];
+	values = new double[hiddenLayers + 1][];
+	links = new int[hiddenLayers + 1][];
+	dense = new boolean[hiddenLayers + 1];
+
+	int link = 0; // The index of the current link in the Network
+	int fanIn, neurons, active;
+
+	for (int l = 0; l <= hiddenLayers; l++)
+	    {
+		fanIn = (l == 0) ? inputs : neuronsInHiddenLayer;
+		neurons = (l == hiddenLayers) ? outputs : neuronsInHiddenLayer;
+
+		// Count the active links into this layer
+		active = 0;
+		for (int i = 0; i < neurons * fanIn; i++)
+		    {
+			if (_n.isActive(link + i))
+			    active++;
+		    }
+
+		dense[l] = active >= DENSE_THRESHOLD * neurons * fanIn;
+		if (dense[l])
+		    active = neurons * fanIn;
+
+		rowStarts[l] = new int[neurons + 1];
+		sources[l] = new int[active];
+		values[l] = new double[active];
+		links[l] = new int[active];
+
+		// Fill in the rows
+		active = 0;
+		for (int n = 0; n < neurons; n++)
+		    {
+			rowStarts[l][n] = active;
+			for (int f = 0; f < fanIn; f++)
+			    {
+				if (_n.isActive(link))
+				    {
+					sources[l][active] = f;
+					values[l][active] = _n.getWeight(link);
+					links[l][active] = link;
+					active++;
+				    }
+				else if (dense[l])
+				    {
+					sources[l][active] = f;
+					links[l][active] = -1;
+					active++;
+				    }
+				link++;
+			    }
+		    }
+		rowStarts[l][neurons] = active;
+	    }
+    }
+
+    /**
+     * Copies the current weights of the active links from the Network this was compiled from.
+     * The activity of the links must not have changed since it was compiled.
+     * @param _n The Network this was compiled from
+     */
+    public void updateWeights(NeuralNetwork _n)
+    {
+	for (int l = 0; l < values.length; l++)
+	    {
+		for (int k = 0; k < values[l].length; k++)
+		    {
+			if (links[l][k] >= 0)
+			    values[l][k] = _n.getWeight(links[l][k]);
+		    }
+	    }
+    }
+
+    /**
+     * Tells you how many links were kept.
+     * @return The number of active links in the compiled network
+     */
+    public int getNumActiveLinks()
+    {
+	int n = 0;
+
+	for (int l = 0; l < links.length; l++)
+	    {
+		for (int k = 0; k < links[l].length; k++)
+		    {
+			if (links[l][k] >= 0)
+			    n++;
+		    }
+	    }
+
+	return n;
+    }
+
+    /**
+     * Tells you the width of the widest layer, including the inputs.
+     * A buffer for getOutputs needs room for this many neurons times BLOCK_SIZE rows.
+     * @return The number of neurons in the widest layer
+     */
+    public int getWidth()
+    {
+	return Math.max(inputs, Math.max(neuronsInHiddenLayer, outputs));
+    }
+
+    /**
+     * Finds the weighted sum of the inputs to one neuron.
+     * @param _l The layer of the neuron
+     * @param _n The neuron
+     * @param _a The outputs of the previous layer
+     * @return The weighted sum of the inputs to neuron _n of layer _l
+     */
+    private double getWeightedSum(int _l, int _n, double[] _a)
+    {
+	if (dense[_l])
+	    return Kernels.dot(values[_l], rowStarts[_l][_n], _a, rowStarts[_l][_n + 1] - rowStarts[_l][_n]);
+
+	int[] s = sources[_l];
+	double[] v = values[_l];
+	double wSI = 0.0;
+
+	for (int k = rowStarts[_l][_n]; k < rowStarts[_l][_n + 1]; k++)
+	    {
+		wSI += _a[s[k]] * v[k];
+	    }
+
+	return wSI;
+    }
+
+    /**
+     * Runs the outputs of the input neurons through the network.
+     * The hidden neurons have sigmoid activation functions, calculated the way the Network was set to,
+     * and the output neurons are linear, as in <code>Network.getOutput</code>.
+     * @param _in The outputs of the input neurons
+     * @param _hidden For the outputs of the hidden neurons
+     * @param _out For the outputs of the output neurons
+     */
+    public void getOutput(double[] _in, double[][] _hidden, double[] _out)
+    {
+	// The first hidden layer
+	for (int cHN = 0; cHN < neuronsInHiddenLayer; cHN++)
+	    {
+		_hidden[0][cHN] = getWeightedSum(0, cHN, _in);
+	    }
+	Kernels.sigmoid(activation, _hidden[0], 0, neuronsInHiddenLayer);
+
+	// The remaining hidden layers
+	for (int cHL = 1; cHL < hiddenLayers; cHL++)
+	    {
+		for (int cHN = 0; cHN < neuronsInHiddenLayer; cHN++)
+		    {
+			_hidden[cHL][cHN] = getWeightedSum(cHL, cHN, _hidden[cHL - 1]);
+		    }
+		Kernels.sigmoid(activation, _hidden[cHL], 0, neuronsInHiddenLayer);
+	    }
+
+	// The outputs
+	for (int cON = 0; cON < outputs; cON++)
+	    {
+		_out[cON] = getWeightedSum(hiddenLayers, cON, _hidden[hiddenLayers - 1]);
+	    }
+    }
+
+    /**
+     * Runs a block of Tuples through the network together, a layer at a time.
+     * Each layer is a product of its matrix of weights with the matrix of outputs of the previous layer,
+     * so each weight is read once for the whole block.
+     * The outputs of a layer are stored neuron by neuron, with the rows of the block side by side.
+     * The two buffers take turns to hold the outputs of each layer.
+     * @param _v The Tuples
+     * @param _first The index of the first Tuple in the block
+     * @param _rows The number of Tuples in the block, no more than BLOCK_SIZE
+     * @param _a A buffer of at least getWidth() * _rows doubles
+     * @param _b A second buffer of the same size
+     * @return The buffer holding the outputs; output cON of row r is at cON * _rows + r
+     */
+    public double[] getOutputs(Tuple[] _v, int _first, int _rows, double[] _a, double[] _b)
+    {
+	double[] from = _a, to = _b, swap;
+	int neurons;
+	int[] s;
+	double[] v;
+
+	// The outputs of the input neurons
+	for (int cIN = 0; cIN < inputs; cIN++)
+	    {
+		for (int r = 0; r < _rows; r++)
+		    {
+			from[(cIN * _rows) + r] = _v[_first + r].getInput(cIN);
+		    }
+	    }
+
+	for (int l = 0; l <= hiddenLayers; l++)
+	    {
+		neurons = (l == hiddenLayers) ? outputs : neuronsInHiddenLayer;
+		s = sources[l];
+		v = values[l];
+
+		for (int n = 0; n < neurons; n++)
+		    {
+			for (int r = 0; r < _rows; r++)
+			    {
+				to[(n * _rows) + r] = 0.0;
+			    }
+
+			// Add in each link for every row of the block
+			for (int k = rowStarts[l][n]; k < rowStarts[l][n + 1]; k++)
+			    {
+				Kernels.axpy(v[k], from, s[k] * _rows, to, n * _rows, _rows);
+			    }
+		    }
+
+		// The hidden neurons have sigmoid activation functions
+		if (l < hiddenLayers)
+		    Kernels.sigmoid(activation, to, 0, neurons * _rows);
+
+		swap = from;
+		from = to;
+		to = swap;
+	    }
+
+	return from;
+    }
+}
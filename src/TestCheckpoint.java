@@ -0,0 +1,97 @@
+/**
+ * A main method to check that training resumed from a checkpoint gives the same results,
+ * to the bit, as training that was never stopped, and to time the cost of the checkpoints.
+ * Each case trains a network with checkpoints, then resumes a fresh network from the last one
+ * and compares the weights and test curves.
+ * Usage: TestCheckpoint [epochs every]
+ * @author Rob Impey
+ */
+
+import java.io.*;
+import java.util.*;
+
+public class TestCheckpoint
+{
+    public static void main(String[] args) throws IOException
+    {
+	DataSet ds = new SecondYearData();
+	int epochs = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+	int every = (args.length > 1) ? Integer.parseInt(args[1]) : 30;
+	File file = File.createTempFile("checkpoint", ".bin");
+	file.deleteOnExit();
+
+	Tuple[] tr = ds.getSample(200);
+	Tuple[] te = ds.getSample(200);
+	Genome g = new Genome(3, 10, 3, 1);
+	String[] cases = {"sgd", "momentum", "adam", "adam stop", "adam stop subsample", "adam batch", "float adam stop"};
+
+	for (int c = 0; c < cases.length; c++)
+	    {
+		NeuralNetwork whole = makeNetwork(g, cases[c]);
+		NeuralNetwork resumed = makeNetwork(g, cases[c]);
+
+		whole.setCheckpoint(new Checkpoint(file, every));
+		NetworkPerformance p1 = whole.train(tr, te, epochs);
+		whole.getCheckpoint().flush();
+
+		resumed.setCheckpoint(new Checkpoint(file, every));
+		NetworkPerformance p2 = resumed.resume(tr, te);
+
+		boolean same = (p1.getStopEpoch() == p2.getStopEpoch())
+		    && Arrays.equals(p1.getEvaluatedEpochs(), p2.getEvaluatedEpochs())
+		    && Arrays.equals(p1.getEvaluatedMSSEs(), p2.getEvaluatedMSSEs())
+		    && Arrays.equals(p1.getSubsampleEpochs(), p2.getSubsampleEpochs())
+		    && Arrays.equals(p1.getSubsampleMSSEs(), p2.getSubsampleMSSEs());
+		for (int i = 0; i < whole.getNumWeights(); i++)
+		    {
+			if (Double.doubleToLongBits(whole.getWeight(i)) != Double.doubleToLongBits(resumed.getWeight(i)))
+			    same = false;
+		    }
+		System.out.println(cases[c] + ": " + (same ? "identical" : "DIFFERENT")
+				   + " after " + p1.getStopEpoch() + " epochs, checkpoint of " + file.length() + " bytes");
+	    }
+
+	// The cost of a checkpoint every epoch, compared with none
+	long[] time = new long[2];
+	for (int rep = 0; rep < 3; rep++)
+	    {
+		for (int k = 0; k < 2; k++)
+		    {
+			NeuralNetwork n = makeNetwork(g, "adam");
+			n.setCheckpoint((k == 0) ? null : new Checkpoint(file, 1));
+			long start = System.nanoTime();
+			n.train(tr, te, epochs);
+			if (k == 1)
+			    n.getCheckpoint().flush();
+			time[k] = System.nanoTime() - start;
+		    }
+	    }
+	System.out.println("No checkpoints: " + (time[0] / 1000000) + " ms, a checkpoint every epoch: " + (time[1] / 1000000) + " ms");
+    }
+
+    /**
+     * @return A network for a case, with weights that depend only on the genome
+     */
+    private static NeuralNetwork makeNetwork(Genome _g, String _case)
+    {
+	NeuralNetwork n = _case.startsWith("float") ? new FloatNetwork(_g, 0, 0.01) : new Network(_g, 0, 0.01);
+	Random r = new Random(1);
+
+	for (int i = 0; i < n.getNumWeights(); i++)
+	    {
+		n.setWeight(i, (r.nextDouble() * 2.0) - 1.0);
+	    }
+	if (_case.contains("momentum"))
+	    n.setOptimizer(Optimizer.forName("momentum"));
+	if (_case.contains("adam"))
+	    n.setOptimizer(Optimizer.forName("adam"));
+	if (_case.contains("stop"))
+	    n.setEarlyStopping(new EarlyStopping(20, 0.0, true));
+	if (_case.contains("subsample"))
+	    n.setEvaluationSchedule(EvaluationSchedule.every(5).withSubsample(50));
+	if (_case.contains("batch"))
+	    ((Network)n).setBatchSize(16);
+
+	return n;
+    }
+}
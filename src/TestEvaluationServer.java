@@ -0,0 +1,100 @@
+/**
+ * A main method to check that an EvaluationServer gets every result back when a worker dies,
+ * and to time batches of different sizes of small tasks.
+ * The workers are started in JVMs on this machine.
+ * Usage: TestEvaluationServer [workers networks]
+ * @author Rob Impey
+ */
+
+import java.io.*;
+
+public class TestEvaluationServer
+{
+    public static void main(String[] args) throws Exception
+    {
+	int workers = (args.length > 0) ? Integer.parseInt(args[0]) : 3;
+	int count = (args.length > 1) ? Integer.parseInt(args[1]) : 60;
+	EvolutionConfig c = new EvolutionConfig();
+	EvaluationServer server = new EvaluationServer(c, 1);
+	int port = server.start(0, true);
+
+	Process[] processes = new Process[workers];
+	for (int w = 0; w < workers; w++)
+	    {
+		processes[w] = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+						  "-cp", System.getProperty("java.class.path"),
+						  "EvaluationWorker", "localhost", "" + port, "1")
+		    .inheritIO().start();
+	    }
+	while (server.getWorkers() < workers)
+	    {
+		Thread.sleep(10);
+	    }
+
+	// Small tasks, in batches of different sizes
+	int[] sizes = {1, 4, 16};
+	for (int s = 0; s < sizes.length; s++)
+	    {
+		server.setBatchSize(sizes[s]);
+		long nanos = evaluate(server, c, count, 1);
+		System.out.println("Batches of " + sizes[s] + ": " + count + " networks of 1 epoch in " + nanos / 1000000 + " ms");
+	    }
+
+	// Kill a worker; its tasks should go to the others
+	server.setBatchSize(1);
+	processes[0].destroy();
+	processes[0].waitFor();
+	long nanos = evaluate(server, c, count, 20);
+	System.out.println("After killing a worker: " + count + " networks of 20 epochs in " + nanos / 1000000 + " ms, "
+			   + ((server.getLost() == 1) ? "worker lost, " + server.getReassigned() + " tasks reassigned"
+			      : server.getLost() + " workers lost - WRONG"));
+
+	server.stop();
+	for (int w = 1; w < workers; w++)
+	    {
+		processes[w].waitFor();
+	    }
+
+	// Every connection should close once its worker has gone
+	for (int i = 0; (i < 100) && (server.getWorkers() > 0); i++)
+	    {
+		Thread.sleep(10);
+	    }
+	if (server.getWorkers() > 0)
+	    System.out.println(server.getWorkers() + " workers still counted - WRONG");
+	System.out.println(server.getStatistics());
+    }
+
+    /**
+     * Evaluates networks with random genomes and checks that each has an SSE.
+     * @return The time it took in nanoseconds
+     */
+    private static long evaluate(EvaluationServer _s, EvolutionConfig _c, int _count, int _epochs) throws IOException
+    {
+	NeuralNetwork[] n = new NeuralNetwork[_count];
+	int[] epochs = new int[_count];
+	long[] nanos = new long[_count];
+
+	for (int i = 0; i < _count; i++)
+	    {
+		n[i] = _c.makeNetwork(new Genome(3, _c.getNeuronsInHidden(), _c.getHiddenLayers(), 1), 0);
+		n[i].setCachedSSE(Double.NaN);
+		epochs[i] = _epochs;
+	    }
+
+	long start = System.nanoTime();
+	_s.evaluate(n, epochs, nanos);
+	long time = System.nanoTime() - start;
+
+	int missing = 0;
+	for (int i = 0; i < _count; i++)
+	    {
+		if (Double.isNaN(n[i].getCachedSSE()))
+		    missing++;
+	    }
+	if (missing > 0)
+	    System.out.println(missing + " networks have no SSE - WRONG");
+
+	return time;
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * A main method to compare FloatNetwork with Network.
+ * Each pair of networks starts from the same weights and trains on the same data.
+ * The validation SSE of each, the difference between them and the time each took to train are printed.
+ * @author Rob Impey
+ */
+
+public class TestFloatNetwork
+{
+    public static void main(String[] args)
+    {
+	DataSet ds = new SecondYearData();
+	int epochs = 200;
+	int[] hiddenLayers = {2, 3, 4};
+	int[] neuronsInHidden = {5, 10, 20, 30};
+
+	Tuple[] tr = ds.getSample(100);
+	Tuple[] te = ds.getSample(100);
+	Tuple[] v = ds.getSample(100);
+
+	// Let the JIT compiler see both classes before timing them
+	Genome warmGenome = new Genome(3, 10, 3, 1);
+	for (int i = 0; i < 5; i++)
+	    {
+		Network warm = new Network(warmGenome, 0, 0.01);
+		warm.train(tr, te, epochs);
+		new FloatNetwork(warm, 0).train(tr, te, epochs);
+	    }
+
+	System.out.println("Shape\t\tDouble SSE\tFloat SSE\tDifference\tDouble ms\tFloat ms\tSpeedup");
+
+	for (int i = 0; i < hiddenLayers.length; i++)
+	    {
+		for (int j = 0; j < neuronsInHidden.length; j++)
+		    {
+			Genome g = new Genome(3, neuronsInHidden[j], hiddenLayers[i], 1);
+			for (int k = 0; k < g.getBinStringLength(); k++)
+			    {
+				g.setBit(k, true);
+			    }
+
+			Network d = new Network(g, 0, 0.01);
+			FloatNetwork f = new FloatNetwork(d, 0);
+
+			long start = System.nanoTime();
+			d.train(tr, te, epochs);
+			long dTime = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			f.train(tr, te, epochs);
+			long fTime = System.nanoTime() - start;
+
+			double dSSE = d.getSSE(v);
+			double fSSE = f.getSSE(v);
+
+			System.out.println("" + hiddenLayers[i] + " by " + neuronsInHidden[j]
+					   + "\t\t" + (float)dSSE
+					   + "\t" + (float)fSSE
+					   + "\t" + (float)Math.abs(dSSE - fSSE)
+					   + "\t" + (dTime / 1000000)
+					   + "\t\t" + (fTime / 1000000)
+					   + "\t\t" + ((double)dTime / fTime));
+		    }
+	    }
+    }
+}
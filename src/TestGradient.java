@@ -0,0 +1,84 @@
+/**
+ * A main method to check back propagation against finite differences.
+ * For each weight of some random networks, the gradient found by <code>Network.getGradient</code>
+ * is compared with the change in half the sum of squared errors when the weight is moved a little either way.
+ * The largest relative difference is printed for each network; it should be below 1e-3.
+ * The networks are random, and a weight whose gradient is near zero loses digits to rounding in the differences,
+ * so the largest difference varies from run to run; it is mostly below 1e-5. A mistake in back propagation gives
+ * differences near 1.
+ * @author Rob Impey
+ */
+
+public class TestGradient
+{
+    /**
+     * @param _n The network
+     * @param _v The examples
+     * @return Half the sum of the squared errors of _n for _v
+     */
+    private static double getHalfSSE(Network _n, Tuple[] _v)
+    {
+	double e = 0.0;
+	double[] d;
+
+	for (int i = 0; i < _v.length; i++)
+	    {
+		d = _n.getError(_v[i]);
+		for (int j = 0; j < d.length; j++)
+		    {
+			e += 0.5 * d[j] * d[j];
+		    }
+	    }
+
+	return e;
+    }
+
+    public static void main(String[] args)
+    {
+	DataSet ds = new SecondYearData();
+	Tuple[] v = ds.getSample(20);
+	double h = 1e-5;
+	int[] hiddenLayers = {1, 2, 3, 4};
+	int[] neuronsInHidden = {3, 10};
+	double bound = 1e-3;
+
+	System.out.println("Shape\tLinks\tLargest relative difference");
+
+	for (int i = 0; i < hiddenLayers.length; i++)
+	    {
+		for (int j = 0; j < neuronsInHidden.length; j++)
+		    {
+			Network n = new Network(new Genome(3, neuronsInHidden[j], hiddenLayers[i], 1), 0, 0.01);
+			double[] g = new double[n.getNumWeights()];
+			double worst = 0.0;
+			int links = 0;
+
+			n.getGradient(v, g);
+
+			for (int k = 0; k < g.length; k++)
+			    {
+				if (!n.isActive(k))
+				    continue;
+				links++;
+
+				double w = n.getWeight(k);
+				n.setWeight(k, w + h);
+				double up = getHalfSSE(n, v);
+				n.setWeight(k, w - h);
+				double down = getHalfSSE(n, v);
+				n.setWeight(k, w);
+
+				// train steps down the gradient, so getGradient gives minus the slope
+				double numeric = -(up - down) / (2.0 * h);
+				double scale = Math.max(1e-8, Math.abs(numeric) + Math.abs(g[k]));
+				worst = Math.max(worst, Math.abs(numeric - g[k]) / scale);
+			    }
+
+			System.out.println("" + hiddenLayers[i] + " by " + neuronsInHidden[j]
+					   + "\t" + links
+					   + "\t" + worst
+					   + ((worst < bound) ? "" : "\tWRONG"));
+		    }
+	    }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * A main method to measure asynchronous (Hogwild) online training.
+ * Each network starts from the same weights and trains on the whole of the data
+ * with 1, 2, 4 and 8 threads, and the time, speedup and final test SSE of each are printed.
+ * The speedup can be no more than the number of processors.
+ * Usage: TestHogwild [epochs neuronsInHiddenLayer]
+ * @author Rob Impey
+ */
+
+import java.util.concurrent.*;
+
+public class TestHogwild
+{
+    public static void main(String[] args)
+    {
+	DataSet ds = new SecondYearData();
+	int epochs = (args.length > 0) ? Integer.parseInt(args[0]) : 50;
+	int neurons = (args.length > 1) ? Integer.parseInt(args[1]) : 30;
+	int[] threads = {1, 2, 4, 8};
+
+	Tuple[] tr = ds.getSample(ds.getLength());
+	Tuple[] te = ds.getSample(200);
+
+	Genome g = new Genome(3, neurons, 3, 1);
+	for (int k = 0; k < g.getBinStringLength(); k++)
+	    {
+		g.setBit(k, true);
+	    }
+	Network start = new Network(g, 0, 0.001);
+
+	// Let the JIT compiler see both ways of training first
+	for (int w = 0; w < 2; w++)
+	    {
+		Network warm = new Network(g, 0, 0.001);
+		warm.setAsynchronousThreads(w * 2);
+		warm.train(tr, te, 100);
+	    }
+
+	System.out.println("Processors: " + Runtime.getRuntime().availableProcessors());
+	System.out.println("Threads\tms\tSpeedup\tTest SSE");
+
+	long oneThread = 0;
+	for (int t = 0; t < threads.length; t++)
+	    {
+		ForkJoinPool pool = new ForkJoinPool(threads[t]);
+		Network n = new Network(g, 0, start.getLearningRate());
+		for (int i = 0; i < start.getNumWeights(); i++)
+		    {
+			n.setWeight(i, start.getWeight(i));
+		    }
+		n.setAsynchronousThreads(threads[t]);
+		n.setTrainingPool(pool);
+
+		long s = System.nanoTime();
+		n.train(tr, te, epochs);
+		long time = System.nanoTime() - s;
+		if (t == 0)
+		    oneThread = time;
+
+		System.out.println("" + threads[t]
+				   + "\t" + (time / 1000000)
+				   + "\t" + (float)((double)oneThread / time)
+				   + "\t" + (float)n.getSSE(te));
+		pool.shutdown();
+	    }
+    }
+}
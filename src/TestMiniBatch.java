@@ -0,0 +1,70 @@
+/**
+ * A main method to compare mini-batch training with online training.
+ * Each network starts from the same weights and trains on the whole of the data.
+ * Training the same batch size twice on pools of the same size should give identical weights.
+ * @author Rob Impey
+ */
+
+import java.util.concurrent.*;
+
+public class TestMiniBatch
+{
+    public static void main(String[] args)
+    {
+	DataSet ds = new SecondYearData();
+	int epochs = 100;
+	int[] batchSizes = {0, 16, 64, 256};
+	int[] threads = {1, 2, 4};
+
+	Tuple[] tr = ds.getSample(ds.getLength());
+	Tuple[] te = ds.getSample(200);
+
+	Genome g = new Genome(3, 20, 3, 1);
+	for (int k = 0; k < g.getBinStringLength(); k++)
+	    {
+		g.setBit(k, true);
+	    }
+	Network start = new Network(g, 0, 0.001);
+
+	System.out.println("Batch\tThreads\tTest SSE\tRepeatable\tms");
+
+	for (int b = 0; b < batchSizes.length; b++)
+	    {
+		for (int t = 0; t < ((batchSizes[b] == 0) ? 1 : threads.length); t++)
+		    {
+			ForkJoinPool pool = new ForkJoinPool(threads[t]);
+			Network[] n = new Network[2];
+			long time = 0;
+
+			for (int r = 0; r < n.length; r++)
+			    {
+				n[r] = new Network(g, 0, start.getLearningRate());
+				for (int i = 0; i < start.getNumWeights(); i++)
+				    {
+					n[r].setWeight(i, start.getWeight(i));
+				    }
+				n[r].setBatchSize(batchSizes[b]);
+				n[r].setTrainingPool(pool);
+
+				long s = System.nanoTime();
+				n[r].train(tr, te, epochs);
+				time = System.nanoTime() - s;
+			    }
+
+			boolean same = true;
+			for (int i = 0; i < start.getNumWeights(); i++)
+			    {
+				if (n[0].getWeight(i) != n[1].getWeight(i))
+				    same = false;
+			    }
+
+			System.out.println("" + batchSizes[b]
+					   + "\t" + ((batchSizes[b] == 0) ? 1 : threads[t])
+					   + "\t" + (float)n[0].getSSE(te)
+					   + "\t" + same
+					   + "\t\t" + (time / 1000000));
+			pool.shutdown();
+		    }
+	    }
+    }
+}
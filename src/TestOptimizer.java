@@ -0,0 +1,69 @@
+/**
+ * A main method to compare the Optimizers.
+ * Each network starts from the same weights and trains on the same data,
+ * and the number of epochs each takes to reach a target test SSE is printed.
+ * Usage: TestOptimizer [learningRate epochs optimizer ...]
+ * The optimizers are named as for <code>Optimizer.forName</code>.
+ * @author Rob Impey
+ */
+
+import java.util.*;
+
+public class TestOptimizer
+{
+    public static void main(String[] args)
+    {
+	DataSet ds = new SecondYearData();
+	double learningRate = (args.length > 0) ? Double.parseDouble(args[0]) : 0.01;
+	int epochs = (args.length > 1) ? Integer.parseInt(args[1]) : 300;
+	String[] names = (args.length > 2) ? Arrays.copyOfRange(args, 2, args.length) : Optimizer.NAMES;
+
+	Tuple[] tr = ds.getSample(200);
+	Tuple[] te = ds.getSample(200);
+
+	Genome g = new Genome(3, 10, 3, 1);
+	for (int k = 0; k < g.getBinStringLength(); k++)
+	    {
+		g.setBit(k, true);
+	    }
+	Network start = new Network(g, 0, learningRate);
+
+	// The target is the SSE that plain steps reach by the end
+	double[] sSEs = new double[names.length];
+	int[] reached = new int[names.length];
+	double target = Double.NaN;
+
+	for (int o = 0; o < names.length; o++)
+	    {
+		Network n = new Network(g, 0, learningRate);
+		for (int i = 0; i < start.getNumWeights(); i++)
+		    {
+			n.setWeight(i, start.getWeight(i));
+		    }
+		n.setOptimizer(Optimizer.forName(names[o]));
+
+		double[] curve = new double[epochs];
+		for (int e = 0; e < epochs; e++)
+		    {
+			n.train(tr, te, 1);
+			curve[e] = n.getSSE(te);
+		    }
+		sSEs[o] = curve[epochs - 1];
+		if (o == 0)
+		    target = sSEs[0];
+
+		reached[o] = -1;
+		for (int e = 0; (e < epochs) && (reached[o] < 0); e++)
+		    {
+			if (curve[e] <= target)
+			    reached[o] = e + 1;
+		    }
+	    }
+
+	System.out.println("Optimizer\tFinal SSE\tEpochs to reach " + (float)target);
+	for (int o = 0; o < names.length; o++)
+	    {
+		System.out.println(names[o] + "\t\t" + (float)sSEs[o] + "\t" + ((reached[o] < 0) ? "never" : ("" + reached[o])));
+	    }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * A main method to check the Selections and to time them against the selection sort that evolution used to do.
+ * Each Selection draws from random SSEs; the share of draws that fall in the fittest fifth is printed,
+ * and top-k is checked to draw only from the fittest selectRate percent.
+ * Usage: TestSelection [population draws]
+ * @author Rob Impey
+ */
+
+import java.util.*;
+
+public class TestSelection
+{
+    public static void main(String[] args)
+    {
+	int n = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+	int draws = (args.length > 1) ? Integer.parseInt(args[1]) : 1000000;
+	int selectRate = 50;
+	double[] sSE = new double[n];
+
+	for (int i = 0; i < n; i++)
+	    {
+		sSE[i] = Math.random();
+	    }
+	double[] sorted = sSE.clone();
+	Arrays.sort(sorted);
+	double fifth = sorted[n / 5], cut = sorted[(int)Math.ceil(n * selectRate / 100.0) - 1];
+
+	// The old way: a selection sort of the whole generation
+	double[] s = sSE.clone();
+	long start = System.nanoTime();
+	int m;
+	double t;
+	for (int i = 0; i < n; i++)
+	    {
+		m = i;
+		for (int j = i + 1; j < n; j++)
+		    {
+			if (s[j] < s[m])
+			    m = j;
+		    }
+		t = s[i];
+		s[i] = s[m];
+		s[m] = t;
+	    }
+	System.out.println("selection sort: prepare " + (System.nanoTime() - start) / 1000 + " us");
+
+	String[] names = {"top", "tournament:2", "tournament:4", "rank", "roulette"};
+	for (int c = 0; c < names.length; c++)
+	    {
+		Selection selection = Selection.forName(names[c]);
+		start = System.nanoTime();
+		selection.prepare(sSE, selectRate);
+		long prepare = System.nanoTime() - start;
+
+		int inFifth = 0, outside = 0, p;
+		start = System.nanoTime();
+		for (int d = 0; d < draws; d++)
+		    {
+			p = selection.next();
+			if (sSE[p] < fifth)
+			    inFifth++;
+			if (sSE[p] > cut)
+			    outside++;
+		    }
+		long draw = System.nanoTime() - start;
+
+		System.out.println(selection + ": prepare " + prepare / 1000 + " us, "
+				   + (float)draw / draws + " ns a draw, "
+				   + (float)inFifth / draws * 100 + "% from the fittest fifth"
+				   + ((c == 0) ? ((outside == 0) ? ", none outside the top " + selectRate + "%" : ", " + outside + " outside the top " + selectRate + "% - WRONG") : ""));
+	    }
+    }
+}
@@ -0,0 +1,307 @@
+/**
+ * Tests a network at the end of its training epochs and records the results.
+ * The network's EvaluationSchedule decides when it is tested, in full or on a subsample,
+ * and its EarlyStopping decides whether training should stop.
+ * The two kinds of test are recorded apart: only the full tests make the test curve and go to EarlyStopping,
+ * so neither mixes the SSEs of the whole test set with those of its first few Tuples.
+ * At the end, the record gives the NetworkPerformance for the run.
+ * If the network has a Checkpoint, the record saves everything needed to carry on training
+ * every so many epochs, and <code>resume</code> reads it back.
+ * Training has no randomness of its own, the examples being taken in order,
+ * so a resumed run gives the same results to the bit as one that was never stopped,
+ * except for asynchronous training, which never repeats exactly.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+import java.io.*;
+import java.util.*;
+
+public class TrainingRecord
+{
+    // The start of every checkpoint file, "CGPC", and the version of the layout that follows
+    private static final int MAGIC = 0x43475043, VERSION = 2;
+
+    private final NeuralNetwork network;
+    private final Tuple[] test, subsample; // subsample is null when there is none
+    private final int epochs;
+    private final EvaluationSchedule schedule; // null to test in full every epoch
+    private final EarlyStopping.Run stopping; // null to run every epoch
+    private final Checkpoint checkpoint; // null for no checkpoints
+    private final int[] at; // The epochs tested in full
+    private final double[] sSEs; // The test SSEs at those epochs
+    private final int[] subAt; // The epochs tested on the subsample only
+    private final double[] subSSEs; // The subsample SSEs at those epochs
+    private int points, subPoints, stopEpoch;
+    private int firstEpoch; // The epoch to start from, which is not 0 when resuming
+
+    /**
+     * Starts a record of training.
+     * @param _n The network being trained
+     * @param _te The test set
+     * @param _e The number of epochs to train for
+     */
+    public TrainingRecord(NeuralNetwork _n, Tuple[] _te, int _e)
+    {
+	network = _n;
+	test = _te;
+	epochs = _e;
+	schedule = _n.getEvaluationSchedule();
+	stopping = (_n.getEarlyStopping() == null) ? null : _n.getEarlyStopping().start(_n);
+	checkpoint = _n.getCheckpoint();
+	at = new int[_e + 1];
+	sSEs = new double[_e + 1];
+	subAt = new int[_e];
+	subSSEs = new double[_e];
+	stopEpoch = _e;
+
+	if ((schedule != null) && (schedule.getSubsample() > 0) && (schedule.getSubsample() < _te.length))
+	    subsample = Arrays.copyOf(_te, schedule.getSubsample());
+	else
+	    subsample = null;
+    }
+
+    /**
+     * Carries on a record of training from the network's last checkpoint.
+     * The network is given the weights and Optimizer state that were saved,
+     * and must have the same genome and training settings as when they were.
+     * @param _n The network being trained
+     * @param _te The test set
+     * @return The record, whose first epoch is the one after the checkpoint
+     * @throws IOException If there is no checkpoint or it does not fit the network
+     */
+    public static TrainingRecord resume(NeuralNetwork _n, Tuple[] _te) throws IOException
+    {
+	if (_n.getCheckpoint() == null)
+	    throw new IOException("The network has no checkpoint");
+
+	try (DataInputStream in = _n.getCheckpoint().open())
+	    {
+		if ((in.readInt() != MAGIC) || (in.readInt() != VERSION))
+		    throw new IOException("Not a checkpoint: " + _n.getCheckpoint().getFile());
+
+		TrainingRecord record = new TrainingRecord(_n, _te, in.readInt());
+		record.readState(in);
+		return record;
+	    }
+    }
+
+    /**
+     * @return The epoch to start training from
+     */
+    public int getFirstEpoch()
+    {
+	return firstEpoch;
+    }
+
+    /**
+     * @return The number of epochs to train for
+     */
+    public int getEpochs()
+    {
+	return epochs;
+    }
+
+    /**
+     * @return The training settings that must match for a checkpoint to be resumed
+     */
+    private String getSettings()
+    {
+	String s = network.getLearningRate() + "LR " + network.getOptimizer() + " " + network.getEarlyStopping() + " " + schedule;
+
+	// Only a Network trains in mini-batches or on several threads
+	if (network instanceof Network)
+	    s += " batch " + ((Network)network).getBatchSize() + " threads " + ((Network)network).getAsynchronousThreads();
+
+	return s;
+    }
+
+    /**
+     * Writes everything needed to carry on training after an epoch.
+     * @param _next The epoch to carry on from
+     * @return The checkpoint
+     */
+    private byte[] getState(int _next)
+    {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	DataOutputStream out = new DataOutputStream(bytes);
+	int n = network.getNumWeights();
+	long bits;
+
+	try
+	    {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(epochs);
+		out.writeInt(_next);
+		out.writeUTF(getSettings());
+
+		// The activity, one bit per link, so a checkpoint is not resumed by another network
+		out.writeInt(n);
+		for (int i = 0; i < n; i += 64)
+		    {
+			bits = 0L;
+			for (int j = i; (j < i + 64) && (j < n); j++)
+			    {
+				if (network.isActive(j))
+				    bits |= 1L << j;
+			    }
+			out.writeLong(bits);
+		    }
+		for (int i = 0; i < n; i++)
+		    {
+			out.writeDouble(network.getWeight(i));
+		    }
+
+		if (network.getOptimizer() != null)
+		    network.getOptimizer().writeState(out);
+
+		// The test results so far
+		out.writeInt(points);
+		for (int i = 0; i < points; i++)
+		    {
+			out.writeInt(at[i]);
+			out.writeDouble(sSEs[i]);
+		    }
+		out.writeInt(subPoints);
+		for (int i = 0; i < subPoints; i++)
+		    {
+			out.writeInt(subAt[i]);
+			out.writeDouble(subSSEs[i]);
+		    }
+
+		if (stopping != null)
+		    stopping.writeState(out);
+
+		out.flush();
+	    }
+	catch (IOException e)
+	    {
+		// Writing to memory does not fail
+		throw new IllegalStateException(e);
+	    }
+
+	return bytes.toByteArray();
+    }
+
+    /**
+     * Reads back what getState wrote, after the number of epochs.
+     * @param _in The checkpoint
+     */
+    private void readState(DataInput _in) throws IOException
+    {
+	int n = network.getNumWeights();
+	long bits;
+
+	firstEpoch = _in.readInt();
+	if (!_in.readUTF().equals(getSettings()))
+	    throw new IOException("The checkpoint was made with other training settings");
+
+	if (_in.readInt() != n)
+	    throw new IOException("The checkpoint is for another network");
+	for (int i = 0; i < n; i += 64)
+	    {
+		bits = _in.readLong();
+		for (int j = i; (j < i + 64) && (j < n); j++)
+		    {
+			if (network.isActive(j) != ((bits & (1L << j)) != 0))
+			    throw new IOException("The checkpoint is for another network");
+		    }
+	    }
+	for (int i = 0; i < n; i++)
+	    {
+		network.setWeight(i, _in.readDouble());
+	    }
+
+	if (network.getOptimizer() != null)
+	    network.getOptimizer().readState(_in);
+
+	points = _in.readInt();
+	for (int i = 0; i < points; i++)
+	    {
+		at[i] = _in.readInt();
+		sSEs[i] = _in.readDouble();
+	    }
+	subPoints = _in.readInt();
+	for (int i = 0; i < subPoints; i++)
+	    {
+		subAt[i] = _in.readInt();
+		subSSEs[i] = _in.readDouble();
+	    }
+
+	if (stopping != null)
+	    stopping.readState(_in);
+    }
+
+    /**
+     * Tests the network, if the schedule says to, at the end of an epoch,
+     * then makes a checkpoint if one is due and training is to carry on.
+     * @param _epoch The epoch that has just finished
+     * @return Whether training should stop
+     */
+    public boolean endEpoch(int _epoch)
+    {
+	if (test(_epoch))
+	    return true;
+
+	if ((checkpoint != null) && checkpoint.isDue(_epoch + 1, epochs))
+	    checkpoint.save(getState(_epoch + 1));
+
+	return false;
+    }
+
+    /**
+     * Tests the network, if the schedule says to.
+     * A test on the subsample is only recorded; it cannot stop training.
+     * @param _epoch The epoch that has just finished
+     * @return Whether training should stop
+     */
+    private boolean test(int _epoch)
+    {
+	if ((schedule != null) && !schedule.isFull(_epoch, epochs))
+	    {
+		if (subsample != null)
+		    {
+			subAt[subPoints] = _epoch;
+			subSSEs[subPoints] = network.getSSE(subsample);
+			subPoints++;
+		    }
+		return false;
+	    }
+
+	double sSE = network.getSSE(test);
+
+	at[points] = _epoch;
+	sSEs[points] = sSE;
+	points++;
+
+	if ((stopping != null) && stopping.stop(_epoch, sSE))
+	    {
+		stopEpoch = stopping.getStopEpoch();
+
+		// The network may have been given back its best weights
+		if (stopping.getFinalSSE() != sSE)
+		    {
+			at[points] = _epoch + 1;
+			sSEs[points] = stopping.getFinalSSE();
+			points++;
+		    }
+		return true;
+	    }
+
+	return false;
+    }
+
+    /**
+     * @param _generation The generation of the network
+     * @param _tr The size of the training set
+     * @param _lR The learning rate
+     * @return The performance of the network over the training recorded
+     */
+    public NetworkPerformance getPerformance(int _generation, int _tr, double _lR)
+    {
+	return new NetworkPerformance(network.getGenome(), _generation, epochs, stopEpoch, _tr, test.length, _lR,
+				      Arrays.copyOf(at, points), Arrays.copyOf(sSEs, points),
+				      Arrays.copyOf(subAt, subPoints), Arrays.copyOf(subSSEs, subPoints));
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * The scratch arrays that a Network needs to run and train.
+ * A Workspace is sized from the dimensions in a Genome
+ * and can be used with any Network of the same shape, one call at a time.
+ * Passing a Workspace to the Network methods that take one means those methods allocate nothing.
+ * The methods that do not take one borrow the Workspace of the calling thread from <code>get</code>.
+ * @author Rob Impey
+ * @date 17-x-26
+ */
+
+public class Workspace
+{
+    // Each thread keeps the last Workspace it was lent
+    private static final ThreadLocal<Workspace> local = new ThreadLocal<Workspace>();
+
+    // The shape of the networks this Workspace is for
+    private final int inputs, neuronsInHiddenLayer, hiddenLayers, outputs;
+
+    // The scratch arrays
+    final double[] in; // The outputs of the input neurons
+    final double[][] hidden; // The outputs of the hidden neurons
+    final double[] out; // The outputs of the output neurons
+    final double[] outDeltas; // The delta values of the output neurons
+    final double[][] hiddenDeltas; // The delta values of the hidden neurons
+    final double[] blockA, blockB; // The buffers for a block of rows in getOutputs
+
+    /**
+     * Creates a new Workspace for networks with the dimensions of a Genome.
+     * @param _g The Genome
+     */
+    public Workspace(Genome _g)
+    {
+	inputs = _g.getInputs();
+	neuronsInHiddenLayer = _g.getNeuronsInHiddenLayer();
+	hiddenLayers = _g.getHiddenLayers();
+	outputs = _g.getOutputs();
+
+	in = new double[inputs];
+	hidden = new double[hiddenLayers][neuronsInHiddenLayer];
+	out = new double[outputs];
+	outDeltas = new double[outputs];
+	hiddenDeltas = new double[hiddenLayers][neuronsInHiddenLayer];
+
+	int width = Math.max(inputs, Math.max(neuronsInHiddenLayer, outputs));
+	blockA = new double[width * SparseNetwork.BLOCK_SIZE];
+	blockB = new double[width * SparseNetwork.BLOCK_SIZE];
+    }
+
+    /**
+     * Says whether this Workspace is the right size for the networks of a Genome.
+     * @param _g The Genome
+     * @return Whether this Workspace can be used with _g
+     */
+    public boolean fits(Genome _g)
+    {
+	return (inputs == _g.getInputs())
+	    && (neuronsInHiddenLayer == _g.getNeuronsInHiddenLayer())
+	    && (hiddenLayers == _g.getHiddenLayers())
+	    && (outputs == _g.getOutputs());
+    }
+
+    /**
+     * Returns the Workspace of the calling thread, making a new one if the last one does not fit.
+     * The Workspace must not be used by two calls at once, so it should not be held on to.
+     * @param _g The Genome of the network that needs the Workspace
+     * @return A Workspace that fits _g
+     */
+    public static Workspace get(Genome _g)
+    {
+	Workspace w = local.get();
+
+	if ((w == null) || !w.fits(_g))
+	    {
+		w = new Workspace(_g);
+		local.set(w);
+	    }
+
+	return w;
+    }
+}
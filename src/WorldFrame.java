@@ -21,6 +21,17 @@ public class WorldFrame extends JFrame
     // GUI stuff
     private JLabel popSizeLabel, genNumLabel, hiddenLayersLabel, neuronsInHiddenLabel, epochsLabel, learningRateLabel, trainSizeLabel, testSizeLabel, validSizeLabel, selectRateLabel, mutateRateLabel;
     private JTextField popSizeIn, genNumIn, hiddenLayersIn, neuronsInHiddenIn, epochsIn, learningRateIn, trainSizeIn, testSizeIn, validSizeIn, selectRateIn, mutateRateIn;
+    private JLabel activationLabel;
+    private JComboBox<Activation> activationIn;
+    private JCheckBox singlePrecisionIn;
+    private JLabel optimizerLabel;
+    private JComboBox<String> optimizerIn;
+    private JLabel patienceLabel, minImprovementLabel, testEveryLabel;
+    private JTextField patienceIn, minImprovementIn, testEveryIn;
+    private JCheckBox restoreBestIn;
+    private JCheckBox inheritWeightsIn;
+    private JLabel inheritedEpochsLabel;
+    private JTextField inheritedEpochsIn;
     private JButton startButton;
 
     /**
@@ -63,6 +74,12 @@ public class WorldFrame extends JFrame
 
 	epochsLabel = new JLabel(" Epochs: ");
 	learningRateLabel = new JLabel(" Learning rate: ");
+	activationLabel = new JLabel(" Sigmoid: ");
+	optimizerLabel = new JLabel(" Optimizer: ");
+	patienceLabel = new JLabel(" Patience (0 for none): ");
+	minImprovementLabel = new JLabel(" Minimum improvement: ");
+	testEveryLabel = new JLabel(" Test every (epochs): ");
+	inheritedEpochsLabel = new JLabel(" Epochs when inherited: ");
 
 	trainSizeLabel = new JLabel(" Size of training set: ");
 	testSizeLabel = new JLabel(" Size of test set: ");
@@ -108,6 +125,42 @@ public class WorldFrame extends JFrame
         learningRateIn.setMinimumSize(new Dimension(40, 22));
         learningRateIn.setPreferredSize(new Dimension(40, 22));
 
+	activationIn = new JComboBox<Activation>(Activation.values());
+	activationIn.setSelectedItem(Activation.EXACT);
+
+	singlePrecisionIn = new JCheckBox("Single precision");
+
+	optimizerIn = new JComboBox<String>(Optimizer.NAMES);
+	optimizerIn.setEditable(true); // So that settings can be given, as in "momentum:0.95"
+
+	patienceIn = new JTextField();
+	patienceIn.setText("" + 0);
+	patienceIn.setMaximumSize(new Dimension(40, 22));
+        patienceIn.setMinimumSize(new Dimension(40, 22));
+        patienceIn.setPreferredSize(new Dimension(40, 22));
+
+	minImprovementIn = new JTextField();
+	minImprovementIn.setText("" + 0.0);
+	minImprovementIn.setMaximumSize(new Dimension(40, 22));
+        minImprovementIn.setMinimumSize(new Dimension(40, 22));
+        minImprovementIn.setPreferredSize(new Dimension(40, 22));
+
+	restoreBestIn = new JCheckBox("Restore best weights");
+
+	testEveryIn = new JTextField();
+	testEveryIn.setText("" + 1);
+	testEveryIn.setMaximumSize(new Dimension(40, 22));
+        testEveryIn.setMinimumSize(new Dimension(40, 22));
+        testEveryIn.setPreferredSize(new Dimension(40, 22));
+
+	inheritWeightsIn = new JCheckBox("Inherit weights");
+
+	inheritedEpochsIn = new JTextField();
+	inheritedEpochsIn.setText("" + 50);
+	inheritedEpochsIn.setMaximumSize(new Dimension(40, 22));
+        inheritedEpochsIn.setMinimumSize(new Dimension(40, 22));
+        inheritedEpochsIn.setPreferredSize(new Dimension(40, 22));
+
 	trainSizeIn = new JTextField();
 	trainSizeIn.setText("" + 100);
 	trainSizeIn.setMaximumSize(new Dimension(40, 22));
@@ -179,6 +232,39 @@ public class WorldFrame extends JFrame
 	learningRatePanel.add(learningRateIn);
 	networkParametersPanel.add(learningRatePanel);
 
+	JPanel activationPanel = new JPanel();
+	activationPanel.add(activationLabel);
+	activationPanel.add(activationIn);
+	networkParametersPanel.add(activationPanel);
+	networkParametersPanel.add(singlePrecisionIn);
+
+	JPanel optimizerPanel = new JPanel();
+	optimizerPanel.add(optimizerLabel);
+	optimizerPanel.add(optimizerIn);
+	networkParametersPanel.add(optimizerPanel);
+
+	JPanel patiencePanel = new JPanel();
+	patiencePanel.add(patienceLabel);
+	patiencePanel.add(patienceIn);
+	networkParametersPanel.add(patiencePanel);
+
+	JPanel minImprovementPanel = new JPanel();
+	minImprovementPanel.add(minImprovementLabel);
+	minImprovementPanel.add(minImprovementIn);
+	networkParametersPanel.add(minImprovementPanel);
+	networkParametersPanel.add(restoreBestIn);
+
+	JPanel testEveryPanel = new JPanel();
+	testEveryPanel.add(testEveryLabel);
+	testEveryPanel.add(testEveryIn);
+	networkParametersPanel.add(testEveryPanel);
+	networkParametersPanel.add(inheritWeightsIn);
+
+	JPanel inheritedEpochsPanel = new JPanel();
+	inheritedEpochsPanel.add(inheritedEpochsLabel);
+	inheritedEpochsPanel.add(inheritedEpochsIn);
+	networkParametersPanel.add(inheritedEpochsPanel);
+
 	JPanel trainSizePanel = new JPanel();
 	trainSizePanel.add(trainSizeLabel);
 	trainSizePanel.add(trainSizeIn);
@@ -226,330 +312,124 @@ public class WorldFrame extends JFrame
     }
 
     /**
-     * Where the evolution occurs.
+     * Starts the evolution with the parameters set in the boxes.
+     * The run is made by an EvolutionEngine on a thread of its own, so the window keeps responding,
+     * and the networks and graphs are shown on the event thread as the engine reports them.
      */
     private class EvolutionAction implements ActionListener
     {
-	// Parameters for the evolutionary run
-	private int popSize, genNum, hiddenLayers, neuronsInHidden, epochs, trainSize, testSize, validSize, selectRate, mutateRate;
-	private double learningRate;
-	
 	/**
 	 * Evolution with the parameters set in the boxes
 	 */
 	public void actionPerformed(ActionEvent _e)
 	{
-	    // Start a stop watch
-	    long startTime = System.currentTimeMillis();
-
 	    // Read the variables
-	    popSize = Integer.parseInt(popSizeIn.getText());
-	    genNum = Integer.parseInt(genNumIn.getText());
-	    hiddenLayers = Integer.parseInt(hiddenLayersIn.getText());
-	    neuronsInHidden = Integer.parseInt(neuronsInHiddenIn.getText());
-	    epochs = Integer.parseInt(epochsIn.getText());
-	    learningRate = Double.parseDouble(learningRateIn.getText());
-	    trainSize = Integer.parseInt(trainSizeIn.getText());
-	    testSize = Integer.parseInt(testSizeIn.getText());
-	    validSize = Integer.parseInt(validSizeIn.getText());
-	    selectRate = Integer.parseInt(selectRateIn.getText());
-	    mutateRate = Integer.parseInt(mutateRateIn.getText());
-	    
+	    final EvolutionConfig c = new EvolutionConfig();
+	    c.setPopSize(Integer.parseInt(popSizeIn.getText()));
+	    c.setGenNum(Integer.parseInt(genNumIn.getText()));
+	    c.setHiddenLayers(Integer.parseInt(hiddenLayersIn.getText()));
+	    c.setNeuronsInHidden(Integer.parseInt(neuronsInHiddenIn.getText()));
+	    c.setEpochs(Integer.parseInt(epochsIn.getText()));
+	    c.setLearningRate(Double.parseDouble(learningRateIn.getText()));
+	    c.setTrainSize(Integer.parseInt(trainSizeIn.getText()));
+	    c.setTestSize(Integer.parseInt(testSizeIn.getText()));
+	    c.setValidSize(Integer.parseInt(validSizeIn.getText()));
+	    c.setSelectRate(Integer.parseInt(selectRateIn.getText()));
+	    c.setMutateRate(Integer.parseInt(mutateRateIn.getText()));
+	    c.setActivation((Activation)activationIn.getSelectedItem());
+	    c.setSinglePrecision(singlePrecisionIn.isSelected());
+	    c.setOptimizer(Optimizer.forName((String)optimizerIn.getSelectedItem()));
+	    c.setPatience(Integer.parseInt(patienceIn.getText()));
+	    c.setMinImprovement(Double.parseDouble(minImprovementIn.getText()));
+	    c.setRestoreBest(restoreBestIn.isSelected());
+	    c.setTestEvery(Integer.parseInt(testEveryIn.getText()));
+	    c.setInheritWeights(inheritWeightsIn.isSelected());
+	    c.setInheritedEpochs(Integer.parseInt(inheritedEpochsIn.getText()));
+
 	    // Check for valid inputs
-	    if ((popSize < 1)
-		|| (genNum < 1)
-		|| (hiddenLayers < 2)
-		|| (neuronsInHidden < 1)
-		|| (epochs < 1)
-		|| (trainSize < 1)
-		|| (trainSize > 200)
-		|| (testSize < 1)
-		|| (testSize > 200)
-		|| (validSize < 1)
-		|| (validSize > 200)
-		|| (selectRate < 1)
-		|| (selectRate > 100)
-		|| (mutateRate < 1)
-		|| (mutateRate > 100))
-		System.out.println("Check inputs!");
-	    else
+	    if (!c.isValid())
 		{
-		    
-		    ObjectOutputStream out; // For saving objects
-		    
-		    // Set up the data sets
-		    DataSet dS = new SecondYearData();
-		    Tuple[] train, test, valid;
-		    
-		    // START OF EVOLUTION
-		    
-		    Genome[] parentGenomes, childrenGenomes;
-		    Network[] candidateNets;
-		    NetworkPerformance[] candidatePerformances;
-		    Network[] bestNets = new Network[genNum]; // An array of the best networks from each generation
-		    double[] bestSSEs = new double[genNum];// An array of the SSEs of the best network in each generation
-		    
-		    // GENERATE THE INITIAL POPULATION OF NETWORKS
-		    
-		    // Create initial genomes
-		    parentGenomes = new Genome[popSize];
-		    for (int i = 0; i < popSize; i++)
-			{
-			    parentGenomes[i] = new Genome(3, neuronsInHidden, hiddenLayers, 1);
-			}
-		    
-		    // Set up the arrays of best and children genomes
-		    // We select the percentage specified by the user
-		    childrenGenomes = new Genome[popSize];
-		    
-		    // Set up the array of networks
-		    candidateNets = new Network[popSize];
-		    
-		    // Set up the array to store the training performance of the networks
-		    candidatePerformances = new NetworkPerformance[popSize];
-		    
-		    // Variables used for sorting
-		    int tempIndex;
-		    Network tempNet;
-		    
-		    // variables for the best in every twentieth generation
-		    Network bIG;
-		    NetworkFrame bIGD;
-		    GraphFrame bIGG;
-		    
-		    // Variables used to select genomes in the good candidates array at random
-		    int p1, p2;
-		    
-		    for (int generation = 0; generation < genNum; generation++) // Loop of generations
-			{
-			    // Create the networks from the current parent genomes
-			    for (int i = 0; i < popSize; i++)
-				{
-				    candidateNets[i] = new Network(parentGenomes[i], generation, learningRate);
-				}
-			    
-			    // Train the networks
-			    // Note that the training and test sets are different random selections
-			    // for each network
-			    for(int net = 0; net < popSize; net++)
-				{
-				    train = dS.getSample(trainSize);
-				    test = dS.getSample(testSize);
-				    candidatePerformances[net] = candidateNets[net].train(train, test, epochs);
-				} 
-			    
-			    // Select the networks with the best fitness
-			    // The best fitness is the lowest SSE for an array of Tuples
-			    // Select the percentage chosen by the user
-			    
-			    // First, find the SSE of the networks for a validation set of Tuples
-			    for (int net = 0; net < popSize; net++)
-				{
-				    valid = dS.getSample(validSize);
-				    candidateNets[net].cacheSSE(valid);
-				}
-			    
-			    // Sort the candidate networks according to the cached SSEs 
-			    // Selection sorting is used because the arrays are in random order to start with
-			    for (int i = 0; i < candidateNets.length; i++)
-				{
-				    tempIndex = i;
-				    for (int j = i + 1; j < candidateNets.length; j++)
-					{
-					    if (candidateNets[j].getCachedSSE() 
-						< candidateNets[tempIndex].getCachedSSE())
-						tempIndex = j;
-					}
-				    tempNet = candidateNets[i];
-				    candidateNets[i] = candidateNets[tempIndex];
-				    candidateNets[tempIndex] = tempNet;
-				}
+		    System.out.println("Check inputs!");
+		    return;
+		}
 
-			    // FOR TESTING
-			    if (candidateNets[0].getCachedSSE() > candidateNets[1].getCachedSSE())
-				System.out.println("You have a sorting error!");
-			    
-			    // Store the best network in this generation
-			    bestNets[generation] = candidateNets[0];
-			    
-			    // Every 20 generations and the final generation, display the best network and save it
-			    if ((generation  % 20 == 0) || (generation + 1 == genNum))
-				{
-				    bIG = candidateNets[0];
-				    bIGD = bIG.getDiagram();
-				    bIGD.show();
-				    
-				    try
+	    final long startTime = System.currentTimeMillis();
+	    final EvolutionEngine engine = new EvolutionEngine(c);
+	    engine.setListener(new EvolutionListener()
+		{
+		    public void generationEnded(int _generation, NeuralNetwork[] _ranked)
+		    {
+			// Every 20 generations and the final generation, display the best network
+			if ((_generation % 20 == 0) || (_generation + 1 == c.getGenNum()))
+			    {
+				final NeuralNetwork bIG = _ranked[0];
+				SwingUtilities.invokeLater(new Runnable()
+				    {
+					public void run()
 					{
-					    out = new ObjectOutputStream(new FileOutputStream("nets/" 
-											      + popSize + "P"
-											      + genNum + "G"
-											      + hiddenLayers + "HL"
-											      + neuronsInHidden + "NIH"
-											      + epochs + "E"
-											      + learningRate + "LR"
-											      + trainSize + "TR"
-											      + testSize + "TE"
-											      + selectRate + "S"
-											      + mutateRate + "M"
-											      + generation + "G"
-											      + ".net"));
-					    out.writeObject(bIG);
-					    out.close(); 
+					    bIG.getDiagram().show();
 					}
-				    catch(Exception e)
-					{
-					}				    
-				}
-			    	    
-			    // Apply crossover to create children
-			    // Parents within the best selectRate percentage combine at random
-			    // NB selectRate will be less than 100
-			    for (int i = 0; i < popSize; i++)
-				{
-				    p1 = (int)(Math.random() * ((popSize * selectRate) / 100.0));
-				    p2 = (int)(Math.random() * ((popSize * selectRate) / 100.0));
-				    
-				    childrenGenomes[i] = candidateNets[p1].getGenome()
-					.uniformCross(candidateNets[p2].getGenome());
-				}
-			    
-			    // Mutate the children's genomes
-			    for (int i = 0; i < childrenGenomes.length; i++)
-				{
-				    childrenGenomes[i].mutate(mutateRate);
-				}
+				    });
+			    }
+		    }
 
-			    // The children become the parents of the next generation
-			    for (int i = 0; i < popSize; i++)
+		    public void evolutionEnded(EvolutionEngine _e)
+		    {
+			_e.printTable(System.out);
+			SwingUtilities.invokeLater(new Runnable()
+			    {
+				public void run()
 				{
-				    parentGenomes[i] = childrenGenomes[i];
+				    showResults(engine);
+
+				    // Stop the watch
+				    System.out.println("Completed in " + (System.currentTimeMillis() - startTime) + " milliseconds.");
+				    startButton.setEnabled(true);
 				}
-			}
-		    
-		    // Show the change in performance of the best network in each generation
-		    for (int i = 0; i < bestNets.length; i++)
-			{
-			    bestSSEs[i] = bestNets[i].getCachedSSE();
-			}
-
-		    GraphFrame ePGF = new GraphFrame(("Evolution of "
-						      + hiddenLayers + " by "
-						      + neuronsInHidden + " Networks"), 
-						     "Generation", "SSE", bestSSEs, new Color(27, 137, 91));    
-
-		    ePGF.show();
-		    
-		    // Save the graph of the evolutionary progress
-		    EvolutionPerformance eP = new EvolutionPerformance(("Evolution of " + hiddenLayers + " by " 
-									+ neuronsInHidden + " Networks"), bestSSEs);
-		    try
-			{
-			    out = new ObjectOutputStream(new FileOutputStream("nets/" 
-									      + popSize + "P"
-									      + genNum + "G"
-									      + hiddenLayers + "HL"
-									      + neuronsInHidden + "NIH"
-									      + epochs + "E"
-									      + learningRate + "LR"
-									      + trainSize + "TR"
-									      + testSize + "TE"
-									      + selectRate + "S"
-									      + mutateRate + "M"
-									      + ".evo"));
-			    out.writeObject(eP);
-			    out.close(); 
-			}
-		    catch(Exception e)
-			{
-			}
-
-		    // Print a table of the SSEs over generations 
-		    // and the number of active links in the best network of each generation
-		    // The print out is Latex friendly
-		    System.out.println();
-		    System.out.println("\\begin{table}");
-		    System.out.println("\\begin{center}");
-		    System.out.println("\\begin{tabular}{|c|c|c|}");
-		    System.out.println("\\hline");
-		    System.out.println("Generation & SSE & \\% Active Links \\\\");
-		    System.out.println("\\hline");
-		    for (int i = 0; i < bestNets.length; i++)
-			{
-			    System.out.println("" + i + " & " 
-					       + bestNets[i].getCachedSSE() + " & " 
-					       + (int)(bestNets[i].getPercentActWeights() * 100)
-					       + " \\\\");
-			}
-		    System.out.println("\\hline");
-		    System.out.println("\\end{tabular}");
-		    System.out.println("\\end{center}");
-		    System.out.println("\\caption{Evolution of " + hiddenLayers + " by " + neuronsInHidden + " networks}");
-		    System.out.println("\\end{table}");
-		    System.out.println();
-
-		    // Set up a fully connected network, train it, show the performance and save it
-		    Genome fullGenome = new Genome(3, neuronsInHidden, hiddenLayers, 1);
-		    for (int i = 0; i < fullGenome.getBinStringLength(); i++)
-			{
-			    fullGenome.setBit(i, true);
-			}
-		    
-		    Network fullNet = new Network(fullGenome, -1, learningRate);
-		    train = dS.getSample(trainSize);
-		    test = dS.getSample(testSize);
-		    NetworkPerformance fullPerformance = fullNet.train(train, test, epochs);
-		    
-		    NetworkFrame fullFrame = fullNet.getDiagram(("Fully connected " 
-								 + hiddenLayers + " by "
-								 + neuronsInHidden + " Network"));
-		    fullFrame.show();
-		    
-		    GraphFrame fullGraph = fullPerformance.getGraph(("Fully connected " 
-								     + hiddenLayers + " by "
-								     + neuronsInHidden + " Network"));
-		    fullGraph.show();
-		    
-		    try
-			{
-			    // Save fully connected network
-			    out = new ObjectOutputStream(new FileOutputStream("nets/" 
-									      + hiddenLayers + "HL"
-									      + neuronsInHidden + "NIH"
-									      + epochs + "E"
-									      + learningRate + "LR"
-									      + trainSize + "TR"
-									      + testSize + "TE"
-									      + "full"
-									      + ".net"));
-			    out.writeObject(fullNet);
-			    out.close();
-			    
-			    // Save its performance
-			    out = new ObjectOutputStream(new FileOutputStream("nets/" 
-									      + hiddenLayers + "HL"
-									      + neuronsInHidden + "NIH"
-									      + epochs + "E"
-									      + learningRate + "LR"
-									      + trainSize + "TR"
-									      + testSize + "TE"
-									      + "full"
-									      + ".per"));
-			    out.writeObject(fullPerformance);
-			    out.close();
-			}
-		    catch (Exception e)
-			{
-			}
-		}
-	    // Stop the watch
-	    long endTime = System.currentTimeMillis();
-	    long calcTime = endTime - startTime;
+			    });
+		    }
+		});
 
-	    System.out.println("Completed in " +calcTime + " milliseconds.");
+	    startButton.setEnabled(false);
+	    Thread t = new Thread(new Runnable()
+		{
+		    public void run()
+		    {
+			engine.run();
+		    }
+		}, "Evolution");
+	    t.setDaemon(true);
+	    t.start();
 	}
     }
 
+    /**
+     * Shows the change in performance of the best network in each generation,
+     * and the fully connected network.
+     * @param _engine The engine that has finished its run
+     */
+    private void showResults(EvolutionEngine _engine)
+    {
+	EvolutionConfig c = _engine.getConfig();
+
+	GraphFrame ePGF = new GraphFrame(_engine.getTitle(),
+					 "Generation", "SSE", _engine.getBestSSEs(), new Color(27, 137, 91));
+	ePGF.show();
+
+	if (_engine.getFullNet() != null)
+	    {
+		NetworkFrame fullFrame = _engine.getFullNet().getDiagram(("Fully connected "
+									  + c.getHiddenLayers() + " by "
+									  + c.getNeuronsInHidden() + " Network"));
+		fullFrame.show();
+
+		GraphFrame fullGraph = _engine.getFullPerformance().getGraph(("Fully connected "
+									      + c.getHiddenLayers() + " by "
+									      + c.getNeuronsInHidden() + " Network"));
+		fullGraph.show();
+	    }
+    }
+
     /**
      * For opening old networks.
      */
@@ -586,7 +466,7 @@ public class WorldFrame extends JFrame
 
 		if (_p.endsWith(".net"))
 		    {
-			Network n = (Network)in.readObject();
+			NeuralNetwork n = (NeuralNetwork)in.readObject();
 			NetworkFrame nF = n.getDiagram();
 			nF.show();
 		    }